@@ -2,6 +2,8 @@ package com.financemanager.ai;
 
 import com.financemanager.model.Transaction;
 import com.financemanager.model.BudgetManager;
+import com.financemanager.model.TransactionManager;
+import com.financemanager.model.TransactionQuery;
 import java.time.*;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -9,6 +11,7 @@ import java.util.stream.Collectors;
 /**
  * 支出分析器类
  * 负责分析用户的消费习惯，提供支出洞察和预算建议
+ * 所有金额按分累加为 long，结果没有浮点误差；返回 Double 的方法在最后才换算为元
  */
 public class ExpenseAnalyzer {
     private static final int MONTHS_TO_ANALYZE = 6; // 分析最近6个月的数据
@@ -24,38 +27,57 @@ public class ExpenseAnalyzer {
             return "暂无交易数据可供分析。";
         }
         
-        // 计算总收入和总支出
-        double totalIncome = transactions.stream()
-                .filter(t -> !t.isExpense())
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-                
-        double totalExpense = transactions.stream()
-                .filter(Transaction::isExpense)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-        
-        // 获取月度支出趋势
-        Map<YearMonth, Double> monthlyTrend = analyzeMonthlyTrend(transactions);
-        
-        // 获取支出类别分布
-        Map<String, Double> categoryDistribution = analyzeCategoryDistribution(transactions);
-        
-        // 检测异常支出
-        List<Transaction> abnormalExpenses = detectAbnormalExpenses(transactions);
+        // 计算总收入和总支出（分）
+        long totalIncome = 0;
+        long totalExpense = 0;
+        for (Transaction t : transactions) {
+            if (t.isExpense()) {
+                totalExpense += t.getAmountCents();
+            } else {
+                totalIncome += t.getAmountCents();
+            }
+        }
         
+        return statistics(totalIncome, totalExpense, analyzeMonthlyTrendCents(transactions),
+                analyzeCategoryDistribution(transactions), detectAbnormalExpenses(transactions));
+    }
+    
+    /**
+     * 获取基本统计数据：合计、月度趋势和类别分布来自交易管理器的聚合，异常支出逐月检测，不取出全部交易
+     * @param transactionManager 交易管理器
+     * @return 基本统计信息
+     */
+    public String getBasicStatistics(TransactionManager transactionManager) {
+        if (transactionManager.getTransactionCount() == 0) {
+            return "暂无交易数据可供分析。";
+        }
+        Map<YearMonth, Long> monthlyTrend = transactionManager.getMonthlyTotalsCents(true);
+        long totalExpense = 0;
+        for (long cents : monthlyTrend.values()) {
+            totalExpense += cents;
+        }
+        long totalIncome = 0;
+        for (long cents : transactionManager.getMonthlyTotalsCents(false).values()) {
+            totalIncome += cents;
+        }
+        return statistics(totalIncome, totalExpense, monthlyTrend,
+                analyzeCategoryDistribution(transactionManager), detectAbnormalExpenses(transactionManager));
+    }
+    
+    private static String statistics(long totalIncome, long totalExpense, Map<YearMonth, Long> monthlyTrend,
+                                     Map<String, Double> categoryDistribution, List<Transaction> abnormalExpenses) {
         // 构建统计信息字符串
         StringBuilder stats = new StringBuilder();
-        stats.append(String.format("总收入：%.2f\n", totalIncome));
-        stats.append(String.format("总支出：%.2f\n", totalExpense));
-        stats.append(String.format("结余：%.2f\n\n", totalIncome - totalExpense));
+        stats.append("总收入：").append(yuan(totalIncome)).append("\n");
+        stats.append("总支出：").append(yuan(totalExpense)).append("\n");
+        stats.append("结余：").append(yuan(totalIncome - totalExpense)).append("\n\n");
         
         // 添加月度趋势信息
         stats.append("月度支出趋势：\n");
         monthlyTrend.entrySet().stream()
                 .sorted(Map.Entry.comparingByKey())
-                .forEach(entry -> stats.append(String.format("%s: %.2f\n", 
-                        entry.getKey().toString(), entry.getValue())));
+                .forEach(entry -> stats.append(entry.getKey()).append(": ")
+                        .append(yuan(entry.getValue())).append("\n"));
         stats.append("\n");
         
         // 添加类别分布信息
@@ -69,8 +91,8 @@ public class ExpenseAnalyzer {
         // 添加异常支出信息
         if (!abnormalExpenses.isEmpty()) {
             stats.append("检测到的异常支出：\n");
-            abnormalExpenses.forEach(t -> stats.append(String.format("%s: %.2f (%s)\n", 
-                    t.getDate().toString(), t.getAmount(), t.getCategory())));
+            abnormalExpenses.forEach(t -> stats.append(t.getDate()).append(": ")
+                    .append(yuan(t.getAmountCents())).append(" (").append(t.getCategory()).append(")\n"));
         }
         
         return stats.toString();
@@ -82,14 +104,62 @@ public class ExpenseAnalyzer {
      * @return 月度支出趋势分析结果
      */
     public Map<YearMonth, Double> analyzeMonthlyTrend(List<Transaction> transactions) {
-        // 按月份分组并计算每月总支出
-        Map<YearMonth, Double> monthlyExpenses = transactions.stream()
-                .filter(Transaction::isExpense)
-                .collect(Collectors.groupingBy(
-                        t -> YearMonth.from(t.getDate()),
-                        Collectors.summingDouble(Transaction::getAmount)
-                ));
-        
+        Map<YearMonth, Double> monthlyExpenses = new HashMap<>();
+        analyzeMonthlyTrendCents(transactions).forEach((month, cents) -> monthlyExpenses.put(month, cents / 100.0));
+        return monthlyExpenses;
+    }
+    
+    /**
+     * 分析月度支出趋势，直接取交易管理器按月的聚合（含尚未加载的月份），不读取交易
+     * @param transactionManager 交易管理器
+     * @return 月度支出趋势分析结果
+     */
+    public Map<YearMonth, Double> analyzeMonthlyTrend(TransactionManager transactionManager) {
+        Map<YearMonth, Double> monthlyExpenses = new HashMap<>();
+        transactionManager.getMonthlyTotalsCents(true).forEach((month, cents) -> monthlyExpenses.put(month, cents / 100.0));
+        return monthlyExpenses;
+    }
+    
+    /**
+     * 分析月度支出趋势（单位为分）
+     * 按月份序号把金额累加到 long 数组中，不装箱、不按 YearMonth 哈希
+     * @param transactions 交易记录列表
+     * @return 月份 -> 当月总支出（分）
+     */
+    public Map<YearMonth, Long> analyzeMonthlyTrendCents(List<Transaction> transactions) {
+        int n = transactions.size();
+        int[] months = new int[n]; // 自公元0年起的月份序号，收入为-1
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            Transaction t = transactions.get(i);
+            if (!t.isExpense()) {
+                months[i] = -1;
+                continue;
+            }
+            LocalDate date = t.getDate();
+            int month = date.getYear() * 12 + date.getMonthValue() - 1;
+            months[i] = month;
+            first = Math.min(first, month);
+            last = Math.max(last, month);
+        }
+        Map<YearMonth, Long> monthlyExpenses = new HashMap<>();
+        if (first > last) {
+            return monthlyExpenses;
+        }
+        long[] sums = new long[last - first + 1];
+        boolean[] present = new boolean[sums.length];
+        for (int i = 0; i < n; i++) {
+            if (months[i] >= 0) {
+                sums[months[i] - first] += transactions.get(i).getAmountCents();
+                present[months[i] - first] = true;
+            }
+        }
+        for (int i = 0; i < sums.length; i++) {
+            if (present[i]) {
+                monthlyExpenses.put(YearMonth.of((first + i) / 12, (first + i) % 12 + 1), sums[i]);
+            }
+        }
         return monthlyExpenses;
     }
     
@@ -99,62 +169,103 @@ public class ExpenseAnalyzer {
      * @return 各类别支出占比
      */
     public Map<String, Double> analyzeCategoryDistribution(List<Transaction> transactions) {
-        // 计算总支出
-        double totalExpense = transactions.stream()
-                .filter(Transaction::isExpense)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        // 按类别编码分组，同时计算总支出
+        CategoryGroups groups = new CategoryGroups();
+        long[] categoryAmounts = new long[16];
+        long totalExpense = 0;
+        for (Transaction t : transactions) {
+            if (t.isExpense()) {
+                int group = groups.groupOf(t);
+                categoryAmounts = CategoryGroups.ensure(categoryAmounts, group);
+                categoryAmounts[group] += t.getAmountCents();
+                totalExpense += t.getAmountCents();
+            }
+        }
         
         if (totalExpense == 0) {
             return new HashMap<>();
         }
         
-        // 按类别分组并计算占比
+        // 计算占比
         Map<String, Double> categoryPercentages = new HashMap<>();
-        Map<String, Double> categoryAmounts = transactions.stream()
-                .filter(Transaction::isExpense)
-                .collect(Collectors.groupingBy(
-                        Transaction::getCategory,
-                        Collectors.summingDouble(Transaction::getAmount)
-                ));
-        
-        for (Map.Entry<String, Double> entry : categoryAmounts.entrySet()) {
-            categoryPercentages.put(entry.getKey(), (entry.getValue() / totalExpense) * 100);
+        for (int group = 0; group < groups.size(); group++) {
+            categoryPercentages.put(groups.name(group), ((double) categoryAmounts[group] / totalExpense) * 100);
         }
         
         return categoryPercentages;
     }
     
+    /**
+     * 分析类别支出分布，直接取交易管理器按类别的聚合，不读取交易
+     * @param transactionManager 交易管理器
+     * @return 各类别支出占比
+     */
+    public Map<String, Double> analyzeCategoryDistribution(TransactionManager transactionManager) {
+        Map<String, long[]> totals = transactionManager.getCategoryTotalsCents(true);
+        long totalExpense = 0;
+        for (long[] total : totals.values()) {
+            totalExpense += total[0];
+        }
+        Map<String, Double> categoryPercentages = new HashMap<>();
+        if (totalExpense == 0) {
+            return categoryPercentages;
+        }
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            categoryPercentages.put(entry.getKey(), ((double) entry.getValue()[0] / totalExpense) * 100);
+        }
+        return categoryPercentages;
+    }
+    
     /**
      * 检测异常支出
      * @param transactions 交易记录列表
      * @return 异常支出交易列表
      */
     public List<Transaction> detectAbnormalExpenses(List<Transaction> transactions) {
-        // 按类别分组计算平均支出
-        Map<String, Double> categoryAverages = new HashMap<>();
-        Map<String, List<Transaction>> categoryTransactions = transactions.stream()
-                .filter(Transaction::isExpense)
-                .collect(Collectors.groupingBy(Transaction::getCategory));
-        
-        for (Map.Entry<String, List<Transaction>> entry : categoryTransactions.entrySet()) {
-            String category = entry.getKey();
-            List<Transaction> categoryTxs = entry.getValue();
-            double average = categoryTxs.stream()
-                    .mapToDouble(Transaction::getAmount)
-                    .average()
-                    .orElse(0);
-            categoryAverages.put(category, average);
+        // 按类别编码分组计算平均支出
+        CategoryGroups groups = new CategoryGroups();
+        long[] sums = new long[16];
+        int[] counts = new int[16];
+        for (Transaction t : transactions) {
+            if (t.isExpense()) {
+                int group = groups.groupOf(t);
+                sums = CategoryGroups.ensure(sums, group);
+                counts = CategoryGroups.ensure(counts, group);
+                sums[group] += t.getAmountCents();
+                counts[group]++;
+            }
         }
         
-        // 检测异常支出（超过类别平均值的2倍）
-        return transactions.stream()
-                .filter(Transaction::isExpense)
-                .filter(t -> {
-                    double average = categoryAverages.getOrDefault(t.getCategory(), 0.0);
-                    return average > 0 && t.getAmount() > average * 2;
-                })
-                .collect(Collectors.toList());
+        // 检测异常支出（超过类别平均值的2倍），两边同乘笔数，用整数比较
+        List<Transaction> abnormal = new ArrayList<>();
+        for (Transaction t : transactions) {
+            if (t.isExpense()) {
+                int group = groups.groupOf(t);
+                if (sums[group] > 0 && t.getAmountCents() * counts[group] > sums[group] * 2) {
+                    abnormal.add(t);
+                }
+            }
+        }
+        return abnormal;
+    }
+    
+    /**
+     * 检测异常支出：各类别的平均支出取自交易管理器的聚合，再逐月读取交易比较，内存中只保留一个月份
+     * @param transactionManager 交易管理器
+     * @return 异常支出交易列表
+     */
+    public List<Transaction> detectAbnormalExpenses(TransactionManager transactionManager) {
+        Map<String, long[]> totals = transactionManager.getCategoryTotalsCents(true); // 类别 -> {总支出, 笔数}
+        List<Transaction> abnormal = new ArrayList<>();
+        transactionManager.forEachMonth(month -> {
+            for (Transaction t : month) {
+                long[] total = t.isExpense() ? totals.get(t.getCategory()) : null;
+                if (total != null && total[0] > 0 && t.getAmountCents() * total[1] > total[0] * 2) {
+                    abnormal.add(t);
+                }
+            }
+        });
+        return abnormal;
     }
     
     /**
@@ -163,53 +274,57 @@ public class ExpenseAnalyzer {
      * @return 季节性支出模式分析结果
      */
     public Map<Month, List<String>> detectSeasonalPatterns(List<Transaction> transactions) {
-        // 按月份和类别分组计算支出
-        Map<Month, Map<String, Double>> monthCategoryExpenses = new HashMap<>();
-        for (Month month : Month.values()) {
-            monthCategoryExpenses.put(month, new HashMap<>());
-        }
+        // 按月份和类别分组计算支出（分）
+        Map<Month, Map<String, long[]>> monthCategoryExpenses = emptyMonths();
         
         // 计算每个月每个类别的总支出
         for (Transaction t : transactions) {
             if (t.isExpense()) {
                 Month month = t.getDate().getMonth();
-                String category = t.getCategory();
-                Map<String, Double> categoryExpenses = monthCategoryExpenses.get(month);
-                categoryExpenses.put(category, categoryExpenses.getOrDefault(category, 0.0) + t.getAmount());
+                monthCategoryExpenses.get(month).computeIfAbsent(t.getCategory(), k -> new long[1])[0] += t.getAmountCents();
             }
         }
-        
-        // 计算每个类别的月平均支出
-        Map<String, Double> categoryMonthlyAverages = new HashMap<>();
-        Set<String> allCategories = new HashSet<>();
-        
-        for (Map<String, Double> categoryExpenses : monthCategoryExpenses.values()) {
-            allCategories.addAll(categoryExpenses.keySet());
-        }
-        
-        for (String category : allCategories) {
-            double totalExpense = 0;
-            int monthCount = 0;
-            for (Map<String, Double> categoryExpenses : monthCategoryExpenses.values()) {
-                if (categoryExpenses.containsKey(category)) {
-                    totalExpense += categoryExpenses.get(category);
-                    monthCount++;
-                }
-            }
-            if (monthCount > 0) {
-                categoryMonthlyAverages.put(category, totalExpense / monthCount);
-            }
+        return seasonalPatterns(monthCategoryExpenses);
+    }
+    
+    /**
+     * 检测季节性支出模式，各月各类别的支出取自交易管理器的聚合，不读取交易
+     * @param transactionManager 交易管理器
+     * @return 季节性支出模式分析结果
+     */
+    public Map<Month, List<String>> detectSeasonalPatterns(TransactionManager transactionManager) {
+        Map<Month, Map<String, long[]>> monthCategoryExpenses = emptyMonths();
+        transactionManager.getMonthlyCategoryTotalsCents(true).forEach((yearMonth, categories) -> {
+            Map<String, long[]> expenses = monthCategoryExpenses.get(yearMonth.getMonth());
+            categories.forEach((category, cents) -> expenses.computeIfAbsent(category, k -> new long[1])[0] += cents);
+        });
+        return seasonalPatterns(monthCategoryExpenses);
+    }
+    
+    private static Map<Month, Map<String, long[]>> emptyMonths() {
+        Map<Month, Map<String, long[]>> monthCategoryExpenses = new HashMap<>();
+        for (Month month : Month.values()) {
+            monthCategoryExpenses.put(month, new HashMap<>());
         }
+        return monthCategoryExpenses;
+    }
+    
+    /**
+     * @param monthCategoryExpenses 月份 -> 类别 -> 总支出（分）
+     */
+    private static Map<Month, List<String>> seasonalPatterns(Map<Month, Map<String, long[]>> monthCategoryExpenses) {
+        // 计算每个类别的月平均支出
+        Map<String, Double> categoryMonthlyAverages = monthlyAverages(monthCategoryExpenses.values());
         
         // 检测季节性支出（某月某类别支出显著高于平均值）
         Map<Month, List<String>> seasonalPatterns = new HashMap<>();
         for (Month month : Month.values()) {
             List<String> seasonalCategories = new ArrayList<>();
-            Map<String, Double> categoryExpenses = monthCategoryExpenses.get(month);
+            Map<String, long[]> categoryExpenses = monthCategoryExpenses.get(month);
             
-            for (Map.Entry<String, Double> entry : categoryExpenses.entrySet()) {
+            for (Map.Entry<String, long[]> entry : categoryExpenses.entrySet()) {
                 String category = entry.getKey();
-                double expense = entry.getValue();
+                long expense = entry.getValue()[0];
                 double average = categoryMonthlyAverages.getOrDefault(category, 0.0);
                 
                 if (average > 0 && expense > average * SEASONAL_THRESHOLD) {
@@ -233,15 +348,29 @@ public class ExpenseAnalyzer {
      */
     public Map<String, Double> generateBudgetSuggestions(List<Transaction> transactions, BudgetManager budgetManager) {
         // 获取最近几个月的交易记录
-        LocalDate now = LocalDate.now();
-        LocalDate startDate = now.minusMonths(MONTHS_TO_ANALYZE);
+        LocalDate startDate = LocalDate.now().minusMonths(MONTHS_TO_ANALYZE);
         List<Transaction> recentTransactions = transactions.stream()
                 .filter(t -> !t.getDate().isBefore(startDate))
                 .collect(Collectors.toList());
+        return suggestBudgets(recentTransactions, budgetManager);
+    }
+    
+    /**
+     * 生成预算建议，最近几个月的交易通过交易管理器的日期索引直接取得，不扫描全部历史
+     * @param transactionManager 交易管理器
+     * @param budgetManager 预算管理器
+     * @return 预算建议
+     */
+    public Map<String, Double> generateBudgetSuggestions(TransactionManager transactionManager, BudgetManager budgetManager) {
+        LocalDate startDate = LocalDate.now().minusMonths(MONTHS_TO_ANALYZE);
+        return suggestBudgets(transactionManager.getTransactionsSince(startDate), budgetManager);
+    }
+    
+    private Map<String, Double> suggestBudgets(List<Transaction> recentTransactions, BudgetManager budgetManager) {
+        LocalDate now = LocalDate.now();
         
         // 按类别计算平均月度支出
-        Map<String, Double> categoryMonthlyAverages = new HashMap<>();
-        Map<YearMonth, Map<String, Double>> monthCategoryExpenses = new HashMap<>();
+        Map<YearMonth, Map<String, long[]>> monthCategoryExpenses = new HashMap<>();
         
         // 初始化月份数据结构
         for (int i = 0; i < MONTHS_TO_ANALYZE; i++) {
@@ -253,33 +382,17 @@ public class ExpenseAnalyzer {
         for (Transaction t : recentTransactions) {
             if (t.isExpense()) {
                 YearMonth yearMonth = YearMonth.from(t.getDate());
-                if (monthCategoryExpenses.containsKey(yearMonth)) {
-                    String category = t.getCategory();
-                    Map<String, Double> categoryExpenses = monthCategoryExpenses.get(yearMonth);
-                    categoryExpenses.put(category, categoryExpenses.getOrDefault(category, 0.0) + t.getAmount());
+                Map<String, long[]> categoryExpenses = monthCategoryExpenses.get(yearMonth);
+                if (categoryExpenses != null) {
+                    categoryExpenses.computeIfAbsent(t.getCategory(), k -> new long[1])[0] += t.getAmountCents();
                 }
             }
         }
         
-        // 计算每个类别的月平均支出
-        Set<String> allCategories = new HashSet<>();
-        for (Map<String, Double> categoryExpenses : monthCategoryExpenses.values()) {
-            allCategories.addAll(categoryExpenses.keySet());
-        }
-        
-        for (String category : allCategories) {
-            double totalExpense = 0;
-            int monthCount = 0;
-            for (Map<String, Double> categoryExpenses : monthCategoryExpenses.values()) {
-                if (categoryExpenses.containsKey(category)) {
-                    totalExpense += categoryExpenses.get(category);
-                    monthCount++;
-                }
-            }
-            if (monthCount > 0) {
-                categoryMonthlyAverages.put(category, totalExpense / monthCount);
-            }
-        }
+        // 计算每个类别的月平均支出（元）
+        Map<String, Double> categoryMonthlyAverages = new HashMap<>();
+        monthlyAverages(monthCategoryExpenses.values())
+                .forEach((category, cents) -> categoryMonthlyAverages.put(category, cents / 100.0));
         
         // 生成预算建议（基于历史平均值，略微上调以留有余地）
         Map<String, Double> budgetSuggestions = new HashMap<>();
@@ -298,40 +411,83 @@ public class ExpenseAnalyzer {
         return budgetSuggestions;
     }
     
+    /**
+     * 每个类别在出现过的月份中的平均支出（分），各月合计按 long 精确累加
+     */
+    private static Map<String, Double> monthlyAverages(Collection<Map<String, long[]>> months) {
+        Map<String, long[]> totals = new HashMap<>(); // 类别 -> {总支出, 月份数}
+        for (Map<String, long[]> categoryExpenses : months) {
+            for (Map.Entry<String, long[]> entry : categoryExpenses.entrySet()) {
+                long[] total = totals.computeIfAbsent(entry.getKey(), k -> new long[2]);
+                total[0] += entry.getValue()[0];
+                total[1]++;
+            }
+        }
+        Map<String, Double> averages = new HashMap<>();
+        totals.forEach((category, total) -> averages.put(category, (double) total[0] / total[1]));
+        return averages;
+    }
+    
     /**
      * 分析节省机会
      * @param transactions 交易记录列表
      * @return 可能的节省机会
      */
     public List<Map<String, Object>> analyzeSavingOpportunities(List<Transaction> transactions) {
+        // 只需要最近三个月的支出
+        LocalDate threeMonthsAgo = LocalDate.now().minusMonths(3);
+        return savingOpportunities(transactions.stream()
+                .filter(Transaction::isExpense)
+                .filter(t -> !t.getDate().isBefore(threeMonthsAgo))
+                .collect(Collectors.toList()));
+    }
+    
+    /**
+     * 分析节省机会，最近三个月的支出通过交易管理器的组合查询直接取得，不扫描全部历史、不再过滤中间列表
+     * @param transactionManager 交易管理器
+     * @return 可能的节省机会
+     */
+    public List<Map<String, Object>> analyzeSavingOpportunities(TransactionManager transactionManager) {
+        LocalDate threeMonthsAgo = LocalDate.now().minusMonths(3);
+        return savingOpportunities(transactionManager.query(TransactionQuery.builder()
+                .since(threeMonthsAgo)
+                .expenseOnly()
+                .build()));
+    }
+    
+    /**
+     * @param recentExpenses 最近三个月的支出
+     */
+    private List<Map<String, Object>> savingOpportunities(List<Transaction> recentExpenses) {
         List<Map<String, Object>> opportunities = new ArrayList<>();
         
         // 检测频繁的小额支出
-        Map<String, List<Transaction>> frequentSmallExpenses = findFrequentSmallExpenses(transactions);
+        Map<String, List<Transaction>> frequentSmallExpenses = findFrequentSmallExpenses(recentExpenses);
         for (Map.Entry<String, List<Transaction>> entry : frequentSmallExpenses.entrySet()) {
             String category = entry.getKey();
             List<Transaction> txs = entry.getValue();
-            double totalAmount = txs.stream().mapToDouble(Transaction::getAmount).sum();
+            long totalCents = totalCents(txs);
+            double totalAmount = totalCents / 100.0;
             
             Map<String, Object> opportunity = new HashMap<>();
             opportunity.put("type", "frequentSmall");
             opportunity.put("category", category);
             opportunity.put("count", txs.size());
             opportunity.put("totalAmount", totalAmount);
-            opportunity.put("description", "频繁的小额" + category + "支出累计达到" + String.format("%.2f", totalAmount) + "元");
+            opportunity.put("description", "频繁的小额" + category + "支出累计达到" + yuan(totalCents) + "元");
             
             opportunities.add(opportunity);
         }
         
         // 检测可替代的高价支出
-        List<Transaction> highPriceExpenses = findHighPriceExpenses(transactions);
+        List<Transaction> highPriceExpenses = findHighPriceExpenses(recentExpenses);
         for (Transaction t : highPriceExpenses) {
             Map<String, Object> opportunity = new HashMap<>();
             opportunity.put("type", "highPrice");
             opportunity.put("category", t.getCategory());
             opportunity.put("amount", t.getAmount());
             opportunity.put("date", t.getDate());
-            opportunity.put("description", "在" + t.getCategory() + "类别中有一笔" + String.format("%.2f", t.getAmount()) + "元的大额支出");
+            opportunity.put("description", "在" + t.getCategory() + "类别中有一笔" + yuan(t.getAmountCents()) + "元的大额支出");
             
             opportunities.add(opportunity);
         }
@@ -341,33 +497,34 @@ public class ExpenseAnalyzer {
     
     /**
      * 查找频繁的小额支出
+     * @param recentExpenses 最近三个月的支出
      */
-    private Map<String, List<Transaction>> findFrequentSmallExpenses(List<Transaction> transactions) {
+    private Map<String, List<Transaction>> findFrequentSmallExpenses(List<Transaction> recentExpenses) {
         // 获取最近一个月的交易
         LocalDate oneMonthAgo = LocalDate.now().minusMonths(1);
-        List<Transaction> recentTransactions = transactions.stream()
-                .filter(Transaction::isExpense)
+        List<Transaction> recentTransactions = recentExpenses.stream()
                 .filter(t -> !t.getDate().isBefore(oneMonthAgo))
                 .collect(Collectors.toList());
         
-        // 按类别分组
-        Map<String, List<Transaction>> categoryTransactions = recentTransactions.stream()
-                .collect(Collectors.groupingBy(Transaction::getCategory));
+        // 按类别编码分组
+        CategoryGroups groups = new CategoryGroups();
+        List<List<Transaction>> categoryTransactions = new ArrayList<>();
+        for (Transaction t : recentTransactions) {
+            int group = groups.groupOf(t);
+            while (categoryTransactions.size() <= group) {
+                categoryTransactions.add(new ArrayList<>());
+            }
+            categoryTransactions.get(group).add(t);
+        }
         
         // 筛选出频繁的小额支出（单笔金额较小但频次较高的类别）
         Map<String, List<Transaction>> frequentSmallExpenses = new HashMap<>();
-        for (Map.Entry<String, List<Transaction>> entry : categoryTransactions.entrySet()) {
-            String category = entry.getKey();
-            List<Transaction> txs = entry.getValue();
-            
-            // 计算该类别的平均交易金额
-            double averageAmount = txs.stream()
-                    .mapToDouble(Transaction::getAmount)
-                    .average()
-                    .orElse(0);
+        for (int group = 0; group < groups.size(); group++) {
+            String category = groups.name(group);
+            List<Transaction> txs = categoryTransactions.get(group);
             
             // 如果平均金额较小（小于100元）且交易次数较多（大于5次），认为是频繁小额支出
-            if (averageAmount < 100 && txs.size() > 5) {
+            if (txs.size() > 5 && totalCents(txs) < 100_00L * txs.size()) {
                 frequentSmallExpenses.put(category, txs);
             }
         }
@@ -377,24 +534,90 @@ public class ExpenseAnalyzer {
     
     /**
      * 查找高价支出
+     * @param recentTransactions 最近三个月的支出
      */
-    private List<Transaction> findHighPriceExpenses(List<Transaction> transactions) {
-        // 获取最近三个月的交易
-        LocalDate threeMonthsAgo = LocalDate.now().minusMonths(3);
-        List<Transaction> recentTransactions = transactions.stream()
-                .filter(Transaction::isExpense)
-                .filter(t -> !t.getDate().isBefore(threeMonthsAgo))
-                .collect(Collectors.toList());
-        
-        // 计算总体平均支出
-        double overallAverage = recentTransactions.stream()
-                .mapToDouble(Transaction::getAmount)
-                .average()
-                .orElse(0);
+    private List<Transaction> findHighPriceExpenses(List<Transaction> recentTransactions) {
+        // 计算总体支出（分），与平均值的比较两边同乘笔数
+        long total = totalCents(recentTransactions);
+        long count = recentTransactions.size();
         
         // 筛选出金额显著高于平均值的支出（超过平均值的3倍且大于500元）
         return recentTransactions.stream()
-                .filter(t -> t.getAmount() > overallAverage * 3 && t.getAmount() > 500)
+                .filter(t -> t.getAmountCents() * count > total * 3 && t.getAmountCents() > 500_00L)
                 .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    /**
+     * 交易金额合计（分）
+     */
+    private static long totalCents(List<Transaction> transactions) {
+        long sum = 0;
+        for (Transaction t : transactions) {
+            sum += t.getAmountCents();
+        }
+        return sum;
+    }
+
+    /**
+     * 分转换为元的字符串，保留两位小数，不经过 double
+     */
+    private static String yuan(long cents) {
+        long abs = Math.abs(cents);
+        return (cents < 0 ? "-" : "") + abs / 100 + "." + (abs % 100 < 10 ? "0" : "") + abs % 100;
+    }
+
+    /**
+     * 类别分组辅助
+     * 交易带有字典编码时直接按编码查数组得到组下标，只有没有编码的交易才按类别字符串查找，
+     * 因此分组过程基本只做整数比较
+     */
+    private static final class CategoryGroups {
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> groupsByName = new HashMap<>();
+        private int[] groupsByCode = new int[0]; // 字典编码 -> 组下标，-1表示尚未分配
+
+        int groupOf(Transaction t) {
+            int code = t.getCategoryCode();
+            if (code < 0) {
+                return groupOfName(t.getCategory());
+            }
+            if (code >= groupsByCode.length) {
+                int oldLength = groupsByCode.length;
+                groupsByCode = Arrays.copyOf(groupsByCode, Math.max(code + 1, oldLength * 2));
+                Arrays.fill(groupsByCode, oldLength, groupsByCode.length, -1);
+            }
+            int group = groupsByCode[code];
+            if (group < 0) {
+                group = groupOfName(t.getCategory());
+                groupsByCode[code] = group;
+            }
+            return group;
+        }
+
+        private int groupOfName(String category) {
+            Integer group = groupsByName.get(category);
+            if (group == null) {
+                group = names.size();
+                names.add(category);
+                groupsByName.put(category, group);
+            }
+            return group;
+        }
+
+        int size() {
+            return names.size();
+        }
+
+        String name(int group) {
+            return names.get(group);
+        }
+
+        static long[] ensure(long[] values, int index) {
+            return index < values.length ? values : Arrays.copyOf(values, Math.max(index + 1, values.length * 2));
+        }
+
+        static int[] ensure(int[] values, int index) {
+            return index < values.length ? values : Arrays.copyOf(values, Math.max(index + 1, values.length * 2));
+        }
+    }
+}
@@ -87,7 +87,7 @@ public class TransactionClassifier {
     /**
      * 保存用户自定义的关键词映射到文件
      */
-    public void saveUserKeywords() {
+    public synchronized void saveUserKeywords() {
         File dataDir = new File("data");
         if (!dataDir.exists()) {
             dataDir.mkdirs();
@@ -124,7 +124,7 @@ public class TransactionClassifier {
     /**
      * 添加用户自定义的关键词
      */
-    public void addCategoryKeyword(String category, String keyword) {
+    public synchronized void addCategoryKeyword(String category, String keyword) {
         List<String> keywords = categoryKeywords.getOrDefault(category, new ArrayList<>());
         if (!keywords.contains(keyword)) {
             keywords.add(keyword);
@@ -136,7 +136,7 @@ public class TransactionClassifier {
     /**
      * 移除用户自定义的关键词
      */
-    public boolean removeCategoryKeyword(String category, String keyword) {
+    public synchronized boolean removeCategoryKeyword(String category, String keyword) {
         List<String> keywords = categoryKeywords.get(category);
         if (keywords != null && keywords.remove(keyword)) {
             saveUserKeywords();
@@ -162,8 +162,9 @@ public class TransactionClassifier {
     /**
      * 基于关键词匹配对交易进行分类
      * 这是一个简单的基于规则的分类方法，实际应用中可以替换为更复杂的AI算法
+     * 导入时在后台线程上调用，与界面线程上的关键词修改互斥
      */
-    public String classifyTransaction(Transaction transaction) {
+    public synchronized String classifyTransaction(Transaction transaction) {
         if (transaction == null) {
             throw new IllegalArgumentException("交易记录不能为空");
         }
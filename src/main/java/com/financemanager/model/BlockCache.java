@@ -0,0 +1,55 @@
+package com.financemanager.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 解压后冷数据块的缓存
+ * 按最近使用顺序淘汰，缓存的字节数不超过容量；多个线程可以同时使用
+ */
+final class BlockCache {
+    private final long capacityBytes;
+    private final LinkedHashMap<String, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+
+    BlockCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    synchronized byte[] get(String file, int block) {
+        return blocks.get(key(file, block));
+    }
+
+    synchronized void put(String file, int block, byte[] raw) {
+        if (raw.length > capacityBytes) {
+            return; // 比整个缓存还大的块不缓存
+        }
+        byte[] previous = blocks.put(key(file, block), raw);
+        sizeBytes += raw.length - (previous != null ? previous.length : 0);
+        Iterator<byte[]> eldest = blocks.values().iterator();
+        while (sizeBytes > capacityBytes && eldest.hasNext()) {
+            sizeBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * 丢弃某个文件的全部块（文件被删除或替换后）
+     */
+    synchronized void invalidate(String file) {
+        String prefix = file + '#';
+        Iterator<Map.Entry<String, byte[]>> entries = blocks.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, byte[]> entry = entries.next();
+            if (entry.getKey().startsWith(prefix)) {
+                sizeBytes -= entry.getValue().length;
+                entries.remove();
+            }
+        }
+    }
+
+    private static String key(String file, int block) {
+        return file + '#' + block;
+    }
+}
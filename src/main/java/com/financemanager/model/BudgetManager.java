@@ -2,22 +2,53 @@ package com.financemanager.model;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 预算管理类
  * 负责管理用户的预算目标和储蓄计划
+ * 修改后在调用线程生成文件内容，交给后台线程写入，连续的修改只写最后一次的内容；
+ * 程序退出时由关闭钩子调用 close() 写完尚未写出的内容
  */
 public class BudgetManager {
     private Map<String, Double> categoryBudgets; // 各类别的预算限额
     private double monthlyBudget; // 月度总预算
     private double savingsGoal; // 储蓄目标
+    private final GroupCommitWriter<String> writer;
+    private final Thread shutdownHook = new Thread(this::close, "budget-manager-shutdown");
     private static final String BUDGET_FILE = "data/budget.csv";
+    private static final int SAVE_QUEUE_CAPACITY = 64;
     
     public BudgetManager() {
         this.categoryBudgets = new HashMap<>();
         this.monthlyBudget = 0.0;
         this.savingsGoal = 0.0;
         loadBudgetData();
+        this.writer = new GroupCommitWriter<>("budget-writer", SAVE_QUEUE_CAPACITY,
+                contents -> writeBudgetFile(contents.get(contents.size() - 1)));
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+    
+    /**
+     * 关闭管理器，写完尚未写出的内容，可以重复调用；之后的修改会抛出 IllegalStateException
+     */
+    public void close() {
+        writer.close();
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM 正在退出，钩子会自行结束
+            }
+        }
+    }
+    
+    /**
+     * 等待此前的修改写入文件
+     * @return 写入完成时完成的 Future，写入失败时以异常完成
+     */
+    public CompletableFuture<Void> flush() {
+        return writer.flush();
     }
     
     /**
@@ -95,26 +126,32 @@ public class BudgetManager {
     }
     
     /**
-     * 保存预算数据到文件
+     * 保存预算数据到文件，在后台线程写入
      */
-    private void saveBudgetData() {
-        File dataDir = new File("data");
-        if (!dataDir.exists()) {
-            dataDir.mkdirs();
-        }
-        
-        try (PrintWriter writer = new PrintWriter(new FileWriter(BUDGET_FILE))) {
+    private synchronized void saveBudgetData() {
+        StringWriter contents = new StringWriter();
+        try (PrintWriter out = new PrintWriter(contents)) {
             // 写入月度预算和储蓄目标
-            writer.println(String.format("monthly,%.2f", monthlyBudget));
-            writer.println(String.format("savings,%.2f", savingsGoal));
+            out.println(String.format("monthly,%.2f", monthlyBudget));
+            out.println(String.format("savings,%.2f", savingsGoal));
             
             // 写入类别预算
             for (Map.Entry<String, Double> entry : categoryBudgets.entrySet()) {
-                writer.println(String.format("category,%s,%.2f",
+                out.println(String.format("category,%s,%.2f",
                         entry.getKey(), entry.getValue()));
             }
-        } catch (IOException e) {
-            System.err.println("保存预算数据时出错: " + e.getMessage());
+        }
+        writer.submit(contents.toString());
+    }
+    
+    private static void writeBudgetFile(String contents) throws IOException {
+        File dataDir = new File("data");
+        if (!dataDir.exists()) {
+            dataDir.mkdirs();
+        }
+        
+        try (Writer out = new FileWriter(BUDGET_FILE)) {
+            out.write(contents);
         }
     }
     
@@ -0,0 +1,239 @@
+package com.financemanager.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩的冷数据段
+ * 历史月份的交易按行分成固定行数的块，每块单独用 deflate 压缩，文件末尾是块索引；
+ * 读取时按块定位、解压，不需要解压整个文件。解压后的块由调用方缓存
+ *
+ * 文件布局（大端序）：
+ * 头部：magic(int) version(int)
+ * 块：压缩后的字节，解压后为逐行编码的记录
+ * 索引：每块一项 offset(long) compressedLength(int) rawLength(int) rows(int)
+ * 尾部：blockCount(int) indexOffset(long)
+ *
+ * 块内每行：id | amount(long，分) | date(int，epoch day) | category | description | isExpense(byte) | paymentMethod，
+ * 字符串为 length(int) + UTF-8 字节，length 为-1表示null
+ */
+final class ColdSegmentFile implements Closeable {
+    private static final int MAGIC = 0x464D4353; // "FMCS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int INDEX_ENTRY_BYTES = 20;
+    private static final int TRAILER_BYTES = 12;
+    static final int BLOCK_ROWS = 1024;
+
+    private final FileChannel channel;
+    private final long[] offsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+
+    private ColdSegmentFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        ByteBuffer header = read(0, HEADER_BYTES);
+        if (size < HEADER_BYTES + TRAILER_BYTES || header.getInt() != MAGIC) {
+            throw new IOException("不是有效的冷数据段");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("不支持的冷数据段版本: " + version);
+        }
+        ByteBuffer trailer = read(size - TRAILER_BYTES, TRAILER_BYTES);
+        int blockCount = trailer.getInt();
+        long indexOffset = trailer.getLong();
+        if (blockCount < 0 || indexOffset + (long) blockCount * INDEX_ENTRY_BYTES != size - TRAILER_BYTES) {
+            throw new IOException("冷数据段索引损坏");
+        }
+        ByteBuffer index = read(indexOffset, blockCount * INDEX_ENTRY_BYTES);
+        this.offsets = new long[blockCount];
+        this.compressedLengths = new int[blockCount];
+        this.rawLengths = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            offsets[i] = index.getLong();
+            compressedLengths[i] = index.getInt();
+            rawLengths[i] = index.getInt();
+            index.getInt(); // 行数，读取时按块解码不需要
+        }
+    }
+
+    /**
+     * 打开冷数据段并读取块索引
+     */
+    static ColdSegmentFile open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ColdSegmentFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("冷数据段不完整");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    int blockCount() {
+        return offsets.length;
+    }
+
+    /**
+     * 读取并解压第 block 块
+     */
+    byte[] readBlock(int block) throws IOException {
+        ByteBuffer compressed = read(offsets[block], compressedLengths[block]);
+        byte[] raw = new byte[rawLengths[block]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array(), 0, compressedLengths[block]);
+            int n = 0;
+            while (n < raw.length) {
+                int inflated = inflater.inflate(raw, n, raw.length - n);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != raw.length) {
+                throw new IOException("冷数据块长度不符: " + block);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("冷数据块已损坏: " + block, e);
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    /**
+     * 逐行解码解压后的块
+     */
+    static void decodeBlock(byte[] raw, Consumer<Transaction> action) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        while (in.available() > 0) {
+            String id = readString(in);
+            long cents = in.readLong();
+            int day = in.readInt();
+            String category = readString(in);
+            String description = readString(in);
+            boolean isExpense = in.readByte() != 0;
+            String paymentMethod = readString(in);
+            action.accept(Transaction.restore(id, cents, LocalDate.ofEpochDay(day),
+                    category, description, isExpense, paymentMethod));
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ---------------------------------------------------------------- 写出
+
+    /**
+     * 把存储中的有效行写成冷数据段：每 BLOCK_ROWS 行压缩成一块，最后写块索引
+     */
+    static void write(TransactionStore rows, File target) throws IOException {
+        FileOutputStream file = new FileOutputStream(target);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long position = HEADER_BYTES;
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream indexOut = new DataOutputStream(index);
+            ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_ROWS * 64);
+            DataOutputStream blockOut = new DataOutputStream(block);
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            byte[] buffer = new byte[1 << 16];
+            int blockCount = 0;
+            try {
+                int row = 0;
+                while (row < rows.rowCount()) {
+                    block.reset();
+                    int blockRows = 0;
+                    for (; row < rows.rowCount() && blockRows < BLOCK_ROWS; row++) {
+                        if (!rows.isDeleted(row)) {
+                            encodeRow(blockOut, rows, row);
+                            blockRows++;
+                        }
+                    }
+                    if (blockRows == 0) {
+                        break;
+                    }
+                    blockOut.flush();
+                    deflater.reset();
+                    deflater.setInput(block.toByteArray());
+                    deflater.finish();
+                    int compressed = 0;
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(buffer);
+                        out.write(buffer, 0, n);
+                        compressed += n;
+                    }
+                    indexOut.writeLong(position);
+                    indexOut.writeInt(compressed);
+                    indexOut.writeInt(block.size());
+                    indexOut.writeInt(blockRows);
+                    position += compressed;
+                    blockCount++;
+                }
+            } finally {
+                deflater.end();
+            }
+            indexOut.flush();
+            index.writeTo(out);
+            out.writeInt(blockCount);
+            out.writeLong(position);
+            out.flush();
+            file.getFD().sync();
+        }
+    }
+
+    private static void encodeRow(DataOutputStream out, TransactionStore rows, int row) throws IOException {
+        writeString(out, rows.id(row));
+        out.writeLong(rows.amountCents(row));
+        out.writeInt(rows.epochDay(row));
+        writeString(out, rows.category(row));
+        writeString(out, rows.description(row));
+        out.writeByte(rows.isExpense(row) ? 1 : 0);
+        writeString(out, rows.paymentMethod(row));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,374 @@
+package com.financemanager.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.IntFunction;
+
+/**
+ * 列式二进制交易文件
+ * 每一列单独连续存放，打开时用 FileChannel.map 映射，不需要逐行解析
+ *
+ * 文件布局（大端序，各段按8字节对齐）：
+ * 头部：magic(int) version(int) rowCount(int) sectionCount(int)，随后每段一个 (offset long, length long)
+ * 段：金额(long[]，单位分) | 日期(int[]，epoch day) | 类别编码(short[]) | 支付方式编码(short[]) |
+ *     标志(byte[]，bit0=支出) | ID偏移(int[n+1]) | ID堆(UTF-8) | 描述偏移(int[n+1]) | 描述堆(UTF-8) |
+ *     类别字典 | 支付方式字典
+ * 字典：count(int)，随后每项 length(short) + UTF-8 字节
+ */
+final class ColumnarTransactionFile implements Closeable {
+    private static final int MAGIC = 0x464D5458; // "FMTX"
+    private static final int VERSION = 1;
+
+    static final int AMOUNTS = 0;
+    static final int DAYS = 1;
+    static final int CATEGORIES = 2;
+    static final int PAYMENTS = 3;
+    static final int FLAGS = 4;
+    static final int ID_OFFSETS = 5;
+    static final int ID_HEAP = 6;
+    static final int DESC_OFFSETS = 7;
+    static final int DESC_HEAP = 8;
+    static final int CATEGORY_DICT = 9;
+    static final int PAYMENT_DICT = 10;
+    private static final int SECTION_COUNT = 11;
+    private static final int HEADER_BYTES = 16 + SECTION_COUNT * 16;
+
+    static final byte FLAG_EXPENSE = 1;
+
+    private final FileChannel channel;
+    private final int rowCount;
+    private final ByteBuffer[] sections = new ByteBuffer[SECTION_COUNT];
+    private final String[] categoryDict;
+    private final String[] paymentDict;
+
+    private ColumnarTransactionFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+            throw new IOException("不是有效的列式交易文件");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("不支持的列式交易文件版本: " + version);
+        }
+        this.rowCount = header.getInt();
+        int sectionCount = header.getInt();
+        if (sectionCount != SECTION_COUNT) {
+            throw new IOException("列式交易文件段数不正确: " + sectionCount);
+        }
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            long offset = header.getLong();
+            long length = header.getLong();
+            sections[i] = length == 0
+                    ? ByteBuffer.allocate(0)
+                    : channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+        this.categoryDict = readDictionary(sections[CATEGORY_DICT]);
+        this.paymentDict = readDictionary(sections[PAYMENT_DICT]);
+    }
+
+    /**
+     * 打开并映射列式交易文件
+     */
+    static ColumnarTransactionFile open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ColumnarTransactionFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static String[] readDictionary(ByteBuffer section) {
+        ByteBuffer buffer = section.duplicate();
+        if (buffer.remaining() < 4) {
+            return new String[0];
+        }
+        String[] values = new String[buffer.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    // ---------------------------------------------------------------- 按列读取
+
+    int rowCount() {
+        return rowCount;
+    }
+
+    long amountCents(int row) {
+        return sections[AMOUNTS].getLong(row << 3);
+    }
+
+    int epochDay(int row) {
+        return sections[DAYS].getInt(row << 2);
+    }
+
+    short categoryCode(int row) {
+        return sections[CATEGORIES].getShort(row << 1);
+    }
+
+    short paymentCode(int row) {
+        return sections[PAYMENTS].getShort(row << 1);
+    }
+
+    boolean isExpense(int row) {
+        return (sections[FLAGS].get(row) & FLAG_EXPENSE) != 0;
+    }
+
+    String category(int row) {
+        return categoryDict[categoryCode(row)];
+    }
+
+    String paymentMethod(int row) {
+        return paymentDict[paymentCode(row)];
+    }
+
+    String id(int row) {
+        return heapString(sections[ID_OFFSETS], sections[ID_HEAP], row);
+    }
+
+    String description(int row) {
+        return heapString(sections[DESC_OFFSETS], sections[DESC_HEAP], row);
+    }
+
+    /**
+     * 类别字典（编码即数组下标）
+     */
+    String[] categoryDictionary() {
+        return categoryDict.clone();
+    }
+
+    /**
+     * 支付方式字典（编码即数组下标）
+     */
+    String[] paymentDictionary() {
+        return paymentDict.clone();
+    }
+
+    private static String heapString(ByteBuffer offsets, ByteBuffer heap, int row) {
+        int start = offsets.getInt(row << 2);
+        int end = offsets.getInt((row + 1) << 2);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer slice = heap.duplicate();
+        slice.position(start);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 物化第 row 行为交易记录
+     */
+    Transaction transactionAt(int row) {
+        return Transaction.restore(
+                id(row),
+                amountCents(row),
+                LocalDate.ofEpochDay(epochDay(row)),
+                category(row),
+                description(row),
+                isExpense(row),
+                paymentMethod(row));
+    }
+
+    /**
+     * 把金额列中从 fromRow 开始的 count 行批量拷贝到 dest[offset..]
+     */
+    void copyAmounts(long[] dest, int offset, int fromRow, int count) {
+        LongBuffer column = sections[AMOUNTS].duplicate().asLongBuffer();
+        column.position(fromRow);
+        column.get(dest, offset, count);
+    }
+
+    /**
+     * 把日期列中从 fromRow 开始的 count 行批量拷贝到 dest[offset..]
+     */
+    void copyDays(int[] dest, int offset, int fromRow, int count) {
+        IntBuffer column = sections[DAYS].duplicate().asIntBuffer();
+        column.position(fromRow);
+        column.get(dest, offset, count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ---------------------------------------------------------------- 写出
+
+    /**
+     * 把列式存储写成列式文件，直接输出各列，不物化交易对象
+     * 先写占位头部，再顺序写出各段，最后回填各段偏移；已删除行不写出
+     */
+    static void write(TransactionStore store, File target) throws IOException {
+        TransactionStore rows = store.compacted();
+        int n = rows.size();
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long[] offsets = new long[SECTION_COUNT];
+            long[] lengths = new long[SECTION_COUNT];
+            channel.position(HEADER_BYTES);
+            CountingOutputStream counter = new CountingOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), HEADER_BYTES);
+            DataOutputStream out = new DataOutputStream(counter);
+
+            begin(offsets, AMOUNTS, counter);
+            for (int row = 0; row < n; row++) {
+                out.writeLong(rows.amountCents(row));
+            }
+            end(lengths, offsets, AMOUNTS, counter, out);
+
+            begin(offsets, DAYS, counter);
+            for (int row = 0; row < n; row++) {
+                out.writeInt(rows.epochDay(row));
+            }
+            end(lengths, offsets, DAYS, counter, out);
+
+            begin(offsets, CATEGORIES, counter);
+            for (int row = 0; row < n; row++) {
+                out.writeShort(rows.categoryCode(row));
+            }
+            end(lengths, offsets, CATEGORIES, counter, out);
+
+            begin(offsets, PAYMENTS, counter);
+            for (int row = 0; row < n; row++) {
+                out.writeShort(rows.paymentCode(row));
+            }
+            end(lengths, offsets, PAYMENTS, counter, out);
+
+            begin(offsets, FLAGS, counter);
+            for (int row = 0; row < n; row++) {
+                out.writeByte(rows.isExpense(row) ? FLAG_EXPENSE : 0);
+            }
+            end(lengths, offsets, FLAGS, counter, out);
+
+            writeHeap(n, rows::id, ID_OFFSETS, ID_HEAP, offsets, lengths, counter, out);
+            writeHeap(n, rows::description, DESC_OFFSETS, DESC_HEAP, offsets, lengths, counter, out);
+
+            begin(offsets, CATEGORY_DICT, counter);
+            writeDictionary(out, rows.categoryDictionary());
+            end(lengths, offsets, CATEGORY_DICT, counter, out);
+
+            begin(offsets, PAYMENT_DICT, counter);
+            writeDictionary(out, rows.paymentDictionary());
+            end(lengths, offsets, PAYMENT_DICT, counter, out);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(SECTION_COUNT);
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                header.putLong(offsets[i]).putLong(lengths[i]);
+            }
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+    }
+
+    private static void writeHeap(int n, IntFunction<String> field,
+                                  int offsetSection, int heapSection, long[] offsets, long[] lengths,
+                                  CountingOutputStream counter, DataOutputStream out) throws IOException {
+        // 先写偏移列，再写字节堆；两遍编码避免把整个堆缓存在内存中
+        begin(offsets, offsetSection, counter);
+        long heapSize = 0;
+        out.writeInt(0);
+        for (int row = 0; row < n; row++) {
+            String value = field.apply(row);
+            heapSize += value == null ? 0 : utf8Length(value);
+            if (heapSize > Integer.MAX_VALUE) {
+                throw new IOException("字符串堆超过2GB");
+            }
+            out.writeInt((int) heapSize);
+        }
+        end(lengths, offsets, offsetSection, counter, out);
+
+        begin(offsets, heapSection, counter);
+        for (int row = 0; row < n; row++) {
+            String value = field.apply(row);
+            if (value != null) {
+                out.write(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        end(lengths, offsets, heapSection, counter, out);
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++; // 孤立代理项被 getBytes 替换为 '?'
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void writeDictionary(DataOutputStream out, StringDictionary dictionary) throws IOException {
+        out.writeInt(dictionary.size());
+        for (int code = 0; code < dictionary.size(); code++) {
+            byte[] bytes = dictionary.decode(code).getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IOException("字典项过长");
+            }
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void begin(long[] offsets, int section, CountingOutputStream counter) {
+        offsets[section] = counter.position;
+    }
+
+    private static void end(long[] lengths, long[] offsets, int section,
+                            CountingOutputStream counter, DataOutputStream out) throws IOException {
+        lengths[section] = counter.position - offsets[section];
+        while ((counter.position & 7) != 0) {
+            out.writeByte(0); // 下一段按8字节对齐
+        }
+    }
+
+    /**
+     * 记录已写出字节数（即文件位置）的输出流
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long position;
+
+        CountingOutputStream(OutputStream out, long position) {
+            super(out);
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+}
@@ -0,0 +1,584 @@
+package com.financemanager.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 流式CSV导入流水线
+ * 读取 → 解析 → 分类 → 去重 → 提交，各阶段在各自的线程上并发执行，阶段之间是有界队列，
+ * 下游跟不上时上游等待，在途的记录数有上限，内存占用与文件大小无关：
+ * 读取线程以固定大小的缓冲逐条读取记录，每 BATCH_ROWS 条作为一批交给线程池解析、校验；
+ * 分类线程为没有类别的行补上类别；去重线程跳过与账本中已有交易重复的行；
+ * 调用线程按文件顺序逐批提交并报告进度。各阶段的吞吐统计随结果返回，用于判断瓶颈
+ *
+ * 文件编码：有BOM时按BOM（UTF-8、UTF-16LE/BE），否则开头一段能按UTF-8严格解码时为UTF-8，
+ * 否则按GB18030（GBK的超集，国内银行导出的常见编码）读取
+ *
+ * 导入文件列顺序（首行为标题）：amount,date,category,description,isExpense,paymentMethod
+ */
+final class CsvImporter {
+    static final int BATCH_ROWS = 10_000;
+    private static final int IMPORT_FIELDS = 6;
+    private static final int SAMPLE_BYTES = 64 * 1024; // 检测编码时读取的字节数
+    private static final int MAX_SAMPLE_ERRORS = 20; // 结果中保留的错误示例数
+    private static final int STAGE_QUEUE_BATCHES = 2; // 分类、去重之后的队列容量（批）
+    private static final long POLL_MILLIS = 50; // 队列等待时检查停止标志的间隔
+    private static final Charset FALLBACK_CHARSET = Charset.forName("GB18030");
+
+    static final String ERROR_FIELDS = "字段不足";
+    static final String ERROR_AMOUNT = "金额格式错误";
+    static final String ERROR_DATE = "日期格式错误";
+    static final String ERROR_OTHER = "其他错误";
+
+    static final String DEFAULT_EXPENSE_CATEGORY = "其他支出";
+    static final String DEFAULT_INCOME_CATEGORY = "其他收入";
+
+    private static final Batch END = new Batch(0); // 数据结束标记
+    private static final Future<Batch> END_TASK = CompletableFuture.completedFuture(END);
+
+    private final ForkJoinPool pool;
+    private final Function<Transaction, String> classifier;
+    private final ImportDeduplicator deduplicator;
+
+    /**
+     * @param classifier 为没有类别的行给出类别，可以为null
+     * @param deduplicator 重复检测，可以为null
+     */
+    CsvImporter(ForkJoinPool pool, Function<Transaction, String> classifier, ImportDeduplicator deduplicator) {
+        this.pool = pool;
+        this.classifier = classifier;
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * 导入文件
+     * @param commit 按文件顺序接收每一批待导入的交易，在调用线程上执行
+     * @param listener 进度回调，可以为null
+     */
+    ImportResult importFile(File file, Consumer<List<Transaction>> commit, ImportListener listener) {
+        long start = System.nanoTime();
+        Run run = new Run(file.length());
+        BlockingQueue<Future<Batch>> parsed = new ArrayBlockingQueue<>(pool.getParallelism() + 1);
+        BlockingQueue<Batch> classified = new ArrayBlockingQueue<>(STAGE_QUEUE_BATCHES);
+        BlockingQueue<Batch> deduped = new ArrayBlockingQueue<>(STAGE_QUEUE_BATCHES);
+        Stage reading = new Stage("读取", 1);
+        Stage parsing = new Stage("解析", pool.getParallelism());
+        Stage classifying = new Stage("分类", 1);
+        Stage deduping = new Stage("去重", 1);
+        Stage committing = new Stage("提交", 1);
+        List<Thread> threads = Arrays.asList(
+                run.thread("import-reader", () -> read(file, run, reading, parsing, parsed)),
+                run.thread("import-classifier", () -> classify(run, classifying, parsed, classified)),
+                run.thread("import-dedupe", () -> dedupe(run, deduping, classified, deduped)));
+        threads.forEach(Thread::start);
+
+        Tally tally = new Tally();
+        boolean cancelled = false;
+        try {
+            Batch batch;
+            while ((batch = committing.take(deduped, run)) != END) {
+                long t0 = System.nanoTime();
+                if (!batch.rows.isEmpty()) {
+                    commit.accept(batch.rows);
+                }
+                committing.done(batch.rows.size(), System.nanoTime() - t0);
+                tally.add(batch);
+                if (listener != null) {
+                    listener.onProgress(new ImportProgress(run.bytesRead(), run.totalBytes, tally.imported, tally.rejected));
+                    if (listener.isCancelled()) {
+                        cancelled = true;
+                        break;
+                    }
+                }
+            }
+        } catch (CancellationException e) {
+            // 其他阶段出错，错误已记录在 run 中
+        } catch (RuntimeException e) {
+            run.fail(e);
+        } finally {
+            run.stopped = true; // 取消或出错时让其他阶段退出
+            for (Thread thread : threads) {
+                joinQuietly(thread);
+            }
+            Future<Batch> pending;
+            while ((pending = parsed.poll()) != null) {
+                pending.cancel(false);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        List<StageMetrics> metrics = new ArrayList<>();
+        for (Stage stage : Arrays.asList(reading, parsing, classifying, deduping, committing)) {
+            metrics.add(stage.metrics(elapsed));
+        }
+        List<String> sampleDuplicates = deduplicator == null ? Collections.emptyList() : deduplicator.samples();
+        ImportResult result = new ImportResult(tally.imported, tally.rejected, tally.duplicates, tally.classified,
+                run.charset, elapsed / 1_000_000, tally.errorCounts, tally.sampleErrors, sampleDuplicates,
+                cancelled, run.failure, metrics,
+                deduplicator == null ? 0 : deduplicator.candidates(),
+                deduplicator == null ? 0 : deduplicator.ledgerScanRows(),
+                deduplicator == null ? 0 : deduplicator.ledgerScanMillis());
+        if (listener != null) {
+            listener.onComplete(result);
+        }
+        return result;
+    }
+
+    /**
+     * 读取阶段：检测编码，逐条读取记录，每批提交给线程池解析，解析任务按文件顺序放入队列
+     */
+    private void read(File file, Run run, Stage reading, Stage parsing, BlockingQueue<Future<Batch>> parsed) {
+        try (CountingInputStream counted = new CountingInputStream(new FileInputStream(file))) {
+            run.counted = counted;
+            BufferedInputStream in = new BufferedInputStream(counted, SAMPLE_BYTES);
+            Charset charset = detectCharset(in);
+            run.charset = charset.name();
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, decoder), 1 << 16);
+            TransactionCsvCodec codec = new TransactionCsvCodec();
+            codec.readRecord(reader); // 跳过标题行
+            long recordNumber = 1;
+            long firstRecord = 2;
+            List<String> records = new ArrayList<>(BATCH_ROWS);
+            long t0 = System.nanoTime();
+            CharSequence record;
+            while (!run.stopped && (record = codec.readRecord(reader)) != null) {
+                recordNumber++;
+                records.add(record.toString());
+                if (records.size() < BATCH_ROWS) {
+                    continue;
+                }
+                reading.done(records.size(), System.nanoTime() - t0);
+                reading.put(parsed, pool.submit(new ParseTask(records, firstRecord, parsing)), run);
+                records = new ArrayList<>(BATCH_ROWS);
+                firstRecord = recordNumber + 1;
+                t0 = System.nanoTime();
+            }
+            reading.done(records.size(), System.nanoTime() - t0);
+            if (!records.isEmpty()) {
+                reading.put(parsed, pool.submit(new ParseTask(records, firstRecord, parsing)), run);
+            }
+            reading.put(parsed, END_TASK, run);
+        } catch (CancellationException e) {
+            // 已停止
+        } catch (IOException | RuntimeException e) {
+            run.fail(e);
+        }
+    }
+
+    /**
+     * 分类阶段：按顺序等待解析结果，为没有类别的行补上类别
+     */
+    private void classify(Run run, Stage classifying, BlockingQueue<Future<Batch>> parsed, BlockingQueue<Batch> out) {
+        try {
+            Future<Batch> task;
+            while ((task = classifying.take(parsed, run)) != END_TASK) {
+                long waited = System.nanoTime();
+                Batch batch = task.get();
+                classifying.waitedInput(System.nanoTime() - waited); // 解析尚未完成
+                long t0 = System.nanoTime();
+                if (classifier != null) {
+                    BitSet rows = batch.unclassified;
+                    for (int i = rows.nextSetBit(0); i >= 0; i = rows.nextSetBit(i + 1)) {
+                        Transaction t = batch.rows.get(i);
+                        String category = classifyQuietly(t);
+                        if (!isBlank(category)) {
+                            batch.rows.set(i, t.withCategory(category));
+                            batch.classified++;
+                        }
+                    }
+                }
+                classifying.done(batch.rows.size(), System.nanoTime() - t0);
+                classifying.put(out, batch, run);
+            }
+            classifying.put(out, END, run);
+        } catch (CancellationException e) {
+            // 已停止
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            run.fail(e instanceof ExecutionException ? e.getCause() : e);
+        }
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    private String classifyQuietly(Transaction t) {
+        try {
+            return classifier.apply(t);
+        } catch (RuntimeException e) {
+            return null; // 无法分类（例如没有描述）时保留默认类别
+        }
+    }
+
+    /**
+     * 去重阶段：去掉与账本中已有交易重复的行
+     */
+    private void dedupe(Run run, Stage deduping, BlockingQueue<Batch> in, BlockingQueue<Batch> out) {
+        try {
+            Batch batch;
+            while ((batch = deduping.take(in, run)) != END) {
+                long t0 = System.nanoTime();
+                int count = batch.rows.size();
+                if (deduplicator != null) {
+                    int before = deduplicator.duplicates();
+                    batch.rows.removeIf(deduplicator::isDuplicate);
+                    batch.duplicates = deduplicator.duplicates() - before;
+                }
+                deduping.done(count, System.nanoTime() - t0);
+                deduping.put(out, batch, run);
+            }
+            deduping.put(out, END, run);
+        } catch (CancellationException e) {
+            // 已停止
+        } catch (RuntimeException e) {
+            run.fail(e);
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 检测文件编码，有BOM时跳过BOM；in 需支持 mark
+     */
+    static Charset detectCharset(BufferedInputStream in) throws IOException {
+        in.mark(SAMPLE_BYTES);
+        byte[] sample = new byte[SAMPLE_BYTES];
+        int length = 0;
+        int n;
+        while (length < sample.length && (n = in.read(sample, length, sample.length - length)) > 0) {
+            length += n;
+        }
+        in.reset();
+        if (length >= 3 && (sample[0] & 0xFF) == 0xEF && (sample[1] & 0xFF) == 0xBB && (sample[2] & 0xFF) == 0xBF) {
+            in.skip(3);
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && (sample[0] & 0xFF) == 0xFF && (sample[1] & 0xFF) == 0xFE) {
+            in.skip(2);
+            return StandardCharsets.UTF_16LE;
+        }
+        if (length >= 2 && (sample[0] & 0xFF) == 0xFE && (sample[1] & 0xFF) == 0xFF) {
+            in.skip(2);
+            return StandardCharsets.UTF_16BE;
+        }
+        return isUtf8(sample, length, length < SAMPLE_BYTES) ? StandardCharsets.UTF_8 : FALLBACK_CHARSET;
+    }
+
+    /**
+     * 样本能否按UTF-8严格解码；样本不是文件末尾时，末尾被截断的多字节字符不算错误
+     */
+    private static boolean isUtf8(byte[] sample, int length, boolean endOfInput) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer out = CharBuffer.allocate(length);
+        CoderResult result = decoder.decode(ByteBuffer.wrap(sample, 0, length), out, endOfInput);
+        return !result.isError();
+    }
+
+    /**
+     * 解析一条导入记录，类别为空时先用默认类别，由分类阶段推断
+     * @return 解析出的交易；记录有误时返回null并把原因写入 error[0]
+     */
+    static Transaction parse(TransactionCsvCodec codec, String record, String[] error) {
+        codec.nextRecord(record, 0, record.length());
+        if (codec.fieldCount() < IMPORT_FIELDS) {
+            error[0] = ERROR_FIELDS;
+            return null;
+        }
+        long cents;
+        try {
+            cents = codec.cents(0);
+        } catch (RuntimeException e) {
+            error[0] = ERROR_AMOUNT;
+            return null;
+        }
+        LocalDate date;
+        try {
+            date = codec.date(1);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            error[0] = ERROR_DATE;
+            return null;
+        }
+        boolean isExpense = codec.bool(4);
+        String category = codec.string(2);
+        if (category == null || category.trim().isEmpty()) {
+            category = isExpense ? DEFAULT_EXPENSE_CATEGORY : DEFAULT_INCOME_CATEGORY; // 留给分类阶段
+        }
+        try {
+            return Transaction.ofCents(cents, date, category, codec.string(3), isExpense, codec.string(5));
+        } catch (IllegalArgumentException e) {
+            error[0] = ERROR_OTHER;
+            return null;
+        }
+    }
+
+    /**
+     * 一批解析结果
+     */
+    private static final class Batch {
+        final List<Transaction> rows;
+        final Map<String, Integer> errorCounts = new LinkedHashMap<>();
+        final List<String> sampleErrors = new ArrayList<>();
+        final BitSet unclassified = new BitSet(); // 文件中没有类别的行
+        int rejected;
+        int classified;
+        int duplicates;
+
+        Batch(int capacity) {
+            this.rows = new ArrayList<>(capacity);
+        }
+    }
+
+    /**
+     * 解析一批记录，记录号用于错误示例
+     */
+    private static final class ParseTask implements Callable<Batch> {
+        private final List<String> records;
+        private final long firstRecord;
+        private final Stage stage;
+
+        ParseTask(List<String> records, long firstRecord, Stage stage) {
+            this.records = records;
+            this.firstRecord = firstRecord;
+            this.stage = stage;
+        }
+
+        @Override
+        public Batch call() {
+            long t0 = System.nanoTime();
+            TransactionCsvCodec codec = new TransactionCsvCodec();
+            Batch batch = new Batch(records.size());
+            String[] error = new String[1];
+            for (int i = 0; i < records.size(); i++) {
+                String record = records.get(i);
+                Transaction t;
+                try {
+                    t = parse(codec, record, error);
+                } catch (RuntimeException e) {
+                    t = null;
+                    error[0] = ERROR_OTHER;
+                }
+                if (t != null) {
+                    if (isBlank(codec.string(2))) {
+                        batch.unclassified.set(batch.rows.size());
+                    }
+                    batch.rows.add(t);
+                    continue;
+                }
+                if (record.trim().isEmpty()) {
+                    continue; // 空行不算错误
+                }
+                batch.rejected++;
+                batch.errorCounts.merge(error[0], 1, Integer::sum);
+                if (batch.sampleErrors.size() < MAX_SAMPLE_ERRORS) {
+                    batch.sampleErrors.add("第" + (firstRecord + i) + "条记录（" + error[0] + "）: " + abbreviate(record));
+                }
+            }
+            stage.done(records.size(), System.nanoTime() - t0);
+            return batch;
+        }
+
+        private static String abbreviate(String record) {
+            return record.length() <= 80 ? record : record.substring(0, 80) + "...";
+        }
+    }
+
+    /**
+     * 已提交批次的累计结果
+     */
+    private static final class Tally {
+        final Map<String, Integer> errorCounts = new LinkedHashMap<>();
+        final List<String> sampleErrors = new ArrayList<>();
+        int imported;
+        int rejected;
+        int classified;
+        int duplicates;
+
+        void add(Batch batch) {
+            imported += batch.rows.size();
+            rejected += batch.rejected;
+            classified += batch.classified;
+            duplicates += batch.duplicates;
+            batch.errorCounts.forEach((reason, count) -> errorCounts.merge(reason, count, Integer::sum));
+            for (String error : batch.sampleErrors) {
+                if (sampleErrors.size() >= MAX_SAMPLE_ERRORS) {
+                    break;
+                }
+                sampleErrors.add(error);
+            }
+        }
+    }
+
+    /**
+     * 一次导入的共享状态：停止标志、第一个错误、编码和读取进度
+     */
+    private static final class Run {
+        final long totalBytes;
+        volatile boolean stopped;
+        volatile String failure;
+        volatile String charset = "";
+        volatile CountingInputStream counted;
+
+        Run(long totalBytes) {
+            this.totalBytes = totalBytes;
+        }
+
+        long bytesRead() {
+            CountingInputStream in = counted;
+            return in == null ? 0 : in.count();
+        }
+
+        synchronized void fail(Throwable e) {
+            if (failure == null) {
+                failure = String.valueOf(e.getMessage());
+                System.err.println("导入CSV文件时出错: " + e.getMessage());
+            }
+            stopped = true;
+        }
+
+        Thread thread(String name, Runnable body) {
+            Thread thread = new Thread(body, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * 阶段计时：处理时间、等待输入（队列空）和等待输出（队列满）的时间；解析阶段由多个线程同时累加
+     */
+    private static final class Stage {
+        private final String name;
+        private final int threads;
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong waitInputNanos = new AtomicLong();
+        private final AtomicLong waitOutputNanos = new AtomicLong();
+
+        Stage(String name, int threads) {
+            this.name = name;
+            this.threads = threads;
+        }
+
+        void done(int count, long nanos) {
+            items.addAndGet(count);
+            busyNanos.addAndGet(nanos);
+        }
+
+        void waitedInput(long nanos) {
+            waitInputNanos.addAndGet(nanos);
+        }
+
+        /**
+         * 从输入队列取下一项，停止后抛出 CancellationException
+         */
+        <T> T take(BlockingQueue<T> queue, Run run) {
+            long t0 = System.nanoTime();
+            try {
+                T item;
+                while ((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    if (run.stopped) {
+                        throw new CancellationException();
+                    }
+                }
+                return item;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            } finally {
+                waitInputNanos.addAndGet(System.nanoTime() - t0);
+            }
+        }
+
+        /**
+         * 放入输出队列，队列满时等待，停止后抛出 CancellationException
+         */
+        <T> void put(BlockingQueue<T> queue, T item, Run run) {
+            long t0 = System.nanoTime();
+            try {
+                while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (run.stopped) {
+                        throw new CancellationException();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            } finally {
+                waitOutputNanos.addAndGet(System.nanoTime() - t0);
+            }
+        }
+
+        StageMetrics metrics(long elapsedNanos) {
+            return new StageMetrics(name, threads, items.get(), busyNanos.get(),
+                    waitInputNanos.get(), waitOutputNanos.get(), elapsedNanos);
+        }
+    }
+
+    /**
+     * 统计已从文件读取的字节数，用于计算进度
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private volatile long count; // 读取线程写入，提交线程读取
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.financemanager.model;
+
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * 按日期排序的行号索引
+ * 以 epoch day 为键，每一天对应该日所有交易的行号；范围查询先在有序映射上定位起点，
+ * 之后只访问落在范围内的行，代价与结果大小成正比，而与全部历史的行数无关
+ */
+final class DateIndex {
+    private final TreeMap<Integer, RowList> rowsByDay = new TreeMap<>();
+
+    void add(int day, int row) {
+        rowsByDay.computeIfAbsent(day, d -> new RowList()).add(row);
+    }
+
+    void remove(int day, int row) {
+        RowList rows = rowsByDay.get(day);
+        if (rows != null && rows.remove(row) && rows.size == 0) {
+            rowsByDay.remove(day);
+        }
+    }
+
+    void clear() {
+        rowsByDay.clear();
+    }
+
+    /**
+     * 按日期升序访问 [fromDay, toDay] 内的所有行号
+     */
+    void forEach(int fromDay, int toDay, IntConsumer action) {
+        if (fromDay > toDay) {
+            return;
+        }
+        for (RowList rows : range(fromDay, toDay).values()) {
+            for (int i = 0; i < rows.size; i++) {
+                action.accept(rows.rows[i]);
+            }
+        }
+    }
+
+    /**
+     * 按日期升序（descending 时降序）访问 [fromDay, toDay] 内的行号，action 返回 false 时停止
+     * @return 是否访问完了范围内的全部行
+     */
+    boolean visit(int fromDay, int toDay, boolean descending, IntPredicate action) {
+        if (fromDay > toDay) {
+            return true;
+        }
+        NavigableMap<Integer, RowList> days = range(fromDay, toDay);
+        for (RowList rows : (descending ? days.descendingMap() : days).values()) {
+            for (int i = 0; i < rows.size; i++) {
+                if (!action.test(rows.rows[descending ? rows.size - 1 - i : i])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * [fromDay, toDay] 内的行数
+     */
+    int count(int fromDay, int toDay) {
+        if (fromDay > toDay) {
+            return 0;
+        }
+        int count = 0;
+        for (RowList rows : range(fromDay, toDay).values()) {
+            count += rows.size;
+        }
+        return count;
+    }
+
+    private NavigableMap<Integer, RowList> range(int fromDay, int toDay) {
+        return rowsByDay.subMap(fromDay, true, toDay, true);
+    }
+
+    /**
+     * 同一天的行号，数量通常很少，删除时线性查找即可
+     */
+    private static final class RowList {
+        private int[] rows = new int[2];
+        private int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        boolean remove(int row) {
+            for (int i = 0; i < size; i++) {
+                if (rows[i] == row) {
+                    rows[i] = rows[--size]; // 同一天内不要求顺序
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
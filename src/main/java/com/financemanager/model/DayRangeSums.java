@@ -0,0 +1,155 @@
+package com.financemanager.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按日期的前缀和（树状数组）
+ * 支出、收入各维护一棵建在出现过的日期（epoch day）上的树状数组，支出另按类别编码各维护一棵；
+ * 任意日期范围的合计和已有日期的变更都是 O(log n)，n 为不同日期的个数
+ */
+final class DayRangeSums {
+    private final DayTree expense = new DayTree();
+    private final DayTree income = new DayTree();
+    private final Map<Integer, DayTree> expenseByCategory = new HashMap<>();
+
+    void add(int epochDay, int categoryCode, boolean isExpense, long cents) {
+        apply(epochDay, categoryCode, isExpense, cents);
+    }
+
+    void remove(int epochDay, int categoryCode, boolean isExpense, long cents) {
+        apply(epochDay, categoryCode, isExpense, -cents);
+    }
+
+    void clear() {
+        expense.clear();
+        income.clear();
+        expenseByCategory.clear();
+    }
+
+    private void apply(int epochDay, int categoryCode, boolean isExpense, long cents) {
+        if (isExpense) {
+            expense.add(epochDay, cents);
+            expenseByCategory.computeIfAbsent(categoryCode, c -> new DayTree()).add(epochDay, cents);
+        } else {
+            income.add(epochDay, cents);
+        }
+    }
+
+    /**
+     * [fromDay, toDay] 内的支出（或收入）合计，单位分
+     */
+    long sumCents(boolean isExpense, int fromDay, int toDay) {
+        return (isExpense ? expense : income).sum(fromDay, toDay);
+    }
+
+    /**
+     * [fromDay, toDay] 内某类别的支出合计，单位分
+     */
+    long sumExpenseCents(int categoryCode, int fromDay, int toDay) {
+        DayTree tree = expenseByCategory.get(categoryCode);
+        return tree == null ? 0 : tree.sum(fromDay, toDay);
+    }
+
+    /**
+     * 建在出现过的日期上的树状数组：日期按升序存放，下标即其在数组中的位置；
+     * 占用只与不同日期的个数有关，个别相隔很远的日期（如误录的年份）不会撑大数组。
+     * 新日期插入后树在下次求和时才以 O(n) 重建，批量加载时不必每个新日期都重建；已有日期的变更为 O(log n)
+     */
+    private static final class DayTree {
+        private static final int INITIAL_DAYS = 64;
+
+        private int[] days = new int[0]; // 出现过的日期，升序，只使用前 count 个
+        private long[] values = new long[0]; // 每天的合计，重建时使用
+        private long[] tree = new long[1]; // 下标从1开始，覆盖前 count 个日期
+        private int count;
+        private volatile boolean stale; // 插入了新日期，树尚未重建；变更在写锁下，求和在读锁下可能并行，由首个求和者加锁重建
+
+        void add(int day, long delta) {
+            int index = Arrays.binarySearch(days, 0, count, day);
+            if (index < 0) {
+                insert(-index - 1, day, delta);
+                return;
+            }
+            values[index] += delta;
+            if (stale) {
+                return;
+            }
+            for (int i = index + 1; i <= count; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        long sum(int fromDay, int toDay) {
+            if (fromDay > toDay || count == 0) {
+                return 0;
+            }
+            if (stale) {
+                synchronized (this) {
+                    if (stale) {
+                        rebuild();
+                    }
+                }
+            }
+            return prefix(upperBound(toDay)) - (fromDay == Integer.MIN_VALUE ? 0 : prefix(upperBound(fromDay - 1)));
+        }
+
+        /**
+         * 前 n 个日期的合计
+         */
+        private long prefix(int n) {
+            long total = 0;
+            for (int i = n; i > 0; i -= i & -i) {
+                total += tree[i];
+            }
+            return total;
+        }
+
+        /**
+         * 不晚于 day 的日期个数
+         */
+        private int upperBound(int day) {
+            int index = Arrays.binarySearch(days, 0, count, day);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        void clear() {
+            days = new int[0];
+            values = new long[0];
+            tree = new long[1];
+            count = 0;
+            stale = false;
+        }
+
+        private void insert(int position, int day, long delta) {
+            if (count == days.length) {
+                int capacity = Math.max(INITIAL_DAYS, count * 2);
+                days = Arrays.copyOf(days, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            System.arraycopy(days, position, days, position + 1, count - position);
+            System.arraycopy(values, position, values, position + 1, count - position);
+            days[position] = day;
+            values[position] = delta;
+            count++;
+            stale = true;
+        }
+
+        private void rebuild() {
+            if (tree.length < days.length + 1) {
+                tree = new long[days.length + 1];
+            } else {
+                Arrays.fill(tree, 0);
+            }
+            for (int i = 1; i <= count; i++) {
+                tree[i] += values[i - 1];
+                int parent = i + (i & -i);
+                if (parent <= count) {
+                    tree[parent] += tree[i];
+                }
+            }
+            stale = false;
+        }
+    }
+}
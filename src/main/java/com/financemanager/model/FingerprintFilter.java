@@ -0,0 +1,117 @@
+package com.financemanager.model;
+
+/**
+ * 交易指纹的布隆过滤器
+ * 指纹由日期、金额（分）、收支类型、支付方式和描述计算出64位哈希，
+ * 用双重哈希取 k 个位；判断为不存在时一定不存在，存在时需要再精确比对（约1%误判）。
+ * 只能添加不能删除：删除或修改过的交易留下的位只会增加误判，不会漏判。
+ * 也用于按ID判断分区中是否可能含有某笔交易（每个分区一个，位数更多、误判更少）
+ *
+ * 添加和查询互斥，账本写入线程和导入线程可以同时使用
+ */
+final class FingerprintFilter {
+    private static final int BITS_PER_ENTRY = 10; // 约1%误判率
+    static final int PRECISE_BITS_PER_ENTRY = 16; // 约0.07%误判率，用于对每个分区分别判断
+    private static final int HASHES = 7;
+    private static final int MIN_CAPACITY = 1 << 16;
+
+    private final long[] words;
+    private final long bitCount;
+    private final long capacity;
+    private long added;
+
+    /**
+     * @param expectedEntries 预计的指纹数，超出后误判率上升
+     */
+    FingerprintFilter(long expectedEntries) {
+        this(expectedEntries, MIN_CAPACITY, BITS_PER_ENTRY);
+    }
+
+    /**
+     * @param minCapacity 容量下限
+     * @param bitsPerEntry 每个指纹占用的位数，越多误判越少
+     */
+    FingerprintFilter(long expectedEntries, long minCapacity, int bitsPerEntry) {
+        this.capacity = Math.max(minCapacity, expectedEntries);
+        long bits = capacity * bitsPerEntry;
+        this.words = new long[(int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) >>> 6)];
+        this.bitCount = (long) words.length << 6;
+    }
+
+    private FingerprintFilter(FingerprintFilter source) {
+        this.words = source.words.clone();
+        this.bitCount = source.bitCount;
+        this.capacity = source.capacity;
+        this.added = source.added;
+    }
+
+    /**
+     * 当前内容的副本，之后的添加互不影响
+     */
+    synchronized FingerprintFilter copy() {
+        return new FingerprintFilter(this);
+    }
+
+    synchronized void add(long fingerprint) {
+        long h2 = mix(fingerprint);
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Long.remainderUnsigned(fingerprint + i * h2, bitCount);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        added++;
+    }
+
+    synchronized boolean mightContain(long fingerprint) {
+        long h2 = mix(fingerprint);
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Long.remainderUnsigned(fingerprint + i * h2, bitCount);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 添加次数已超过容量，误判率明显上升，应按当前账本重建
+     */
+    synchronized boolean isSaturated() {
+        return added > capacity;
+    }
+
+    static long fingerprint(Transaction t) {
+        return fingerprint(t.getAmountCents(), (int) t.getDate().toEpochDay(), t.isExpense(),
+                t.getPaymentMethod(), t.getDescription());
+    }
+
+    static long fingerprint(TransactionStore store, int row) {
+        return fingerprint(store.amountCents(row), store.epochDay(row), store.isExpense(row),
+                store.paymentMethod(row), store.description(row));
+    }
+
+    /**
+     * 交易ID的指纹（逐字符的64位 FNV-1a，再混合）
+     */
+    static long fingerprint(String id) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h = (h ^ id.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    static long fingerprint(long cents, int epochDay, boolean isExpense, String paymentMethod, String description) {
+        long h = mix(cents ^ ((long) epochDay << 1) ^ (isExpense ? 1 : 0));
+        h = mix(h ^ (paymentMethod == null ? 0 : paymentMethod.hashCode()));
+        return mix(h ^ (description == null ? 0 : description.hashCode()) ^ ((long) (description == null ? -1 : description.length()) << 32));
+    }
+
+    /**
+     * SplitMix64 的混合函数
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,309 @@
+package com.financemanager.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 组提交写入器
+ * 调用方把待持久化的记录放入有界队列后立即返回，由专门的写入线程把一段时间内积累的记录
+ * 合并成一次写入（一次刷新）；队列满时 submit 会阻塞，对写入方形成反压，
+ * 持有锁的调用方改用 offerAll，失败时先放开锁再 awaitRoom
+ *
+ * flush() 返回的 Future 在此前提交的全部记录都写出后完成；execute() 提交的任务
+ * 在写入线程上按提交顺序执行，用于需要与写入严格排序的操作（例如轮转日志）。
+ * 一次写出失败后，之后的 flush() 都以这次失败完成，调用方不会误以为此前的记录已经写出。
+ * 写入线程是守护线程，所有者需要在退出前调用 close() 写完队列中剩余的记录
+ */
+final class GroupCommitWriter<T> implements Closeable {
+    /**
+     * 记录的实际写出方式，一组记录只调用一次
+     */
+    interface Sink<T> {
+        void write(List<T> records) throws IOException;
+    }
+
+    private static final int MAX_GROUP = 1024; // 一次最多合并的队列项数
+
+    private final String name;
+    private final Sink<T> sink;
+    private final BlockingQueue<Entry<T>> queue;
+    private final Thread thread;
+    private final Object enqueueLock = new Object(); // 入队与关闭互斥，停止标记之后不会再有队列项
+    private boolean closed; // 只在 enqueueLock 下读写
+    private volatile IOException failure; // 第一次写出失败，之后一直保留
+    private final CompletableFuture<Void> stopped = new CompletableFuture<>(); // 写入线程退出时完成
+    private final Object room = new Object(); // 写入线程取走队列项后在此通知 awaitRoom
+
+    GroupCommitWriter(String name, int capacity, Sink<T> sink) {
+        this.name = name;
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 提交一条记录，队列已满时阻塞等待
+     */
+    void submit(T record) {
+        enqueue(new Entry<>(record, null, null));
+    }
+
+    /**
+     * 不等待地提交多条记录，保证在同一组内写出；队列已满时返回false，不提交任何记录
+     * 调用方之后不能再修改 records
+     * @throws IllegalStateException 已关闭
+     */
+    boolean offerAll(List<T> records) {
+        Entry<T> entry = records.size() == 1
+                ? new Entry<>(records.get(0), null, null)
+                : new Entry<>(null, records, null, null);
+        synchronized (enqueueLock) {
+            if (closed) {
+                throw new IllegalStateException(name + " 已关闭");
+            }
+            return queue.offer(entry);
+        }
+    }
+
+    /**
+     * 等到队列有空位（不保证随后的 offerAll 一定成功，调用方重试）
+     * @throws IllegalStateException 写入线程已退出，或等待时被中断
+     */
+    void awaitRoom() {
+        synchronized (room) {
+            while (queue.remainingCapacity() == 0) {
+                if (stopped.isDone()) {
+                    throw new IllegalStateException(name + " 已停止");
+                }
+                try {
+                    room.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("等待写入队列时被中断", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在写入线程上执行任务：之前提交的记录写出之后、之后提交的记录写出之前
+     */
+    void execute(Runnable task) {
+        enqueue(new Entry<>(null, task, null));
+    }
+
+    /**
+     * 返回在此之前提交的全部记录写出后完成的 Future；此前有任何一次写出失败时以该异常完成。
+     * 已关闭时在写入线程写完剩余记录、退出后完成
+     */
+    CompletableFuture<Void> flush() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (enqueueLock) {
+            if (!closed) {
+                put(new Entry<>(null, null, done));
+                return done;
+            }
+        }
+        stopped.whenComplete((ignored, e) -> complete(done, e != null ? e : failure));
+        return done;
+    }
+
+    private void enqueue(Entry<T> entry) {
+        synchronized (enqueueLock) {
+            if (closed) {
+                throw new IllegalStateException(name + " 已关闭");
+            }
+            put(entry);
+        }
+    }
+
+    /**
+     * 放入队列（调用方持有 enqueueLock），队列满时等待写入线程取走
+     */
+    private void put(Entry<T> entry) {
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待写入队列时被中断", e);
+        }
+    }
+
+    private void run() {
+        List<Entry<T>> group = new ArrayList<>();
+        List<T> records = new ArrayList<>();
+        List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        boolean stopping = false;
+        try {
+            while (!stopping) {
+                try {
+                    group.add(queue.take());
+                } catch (InterruptedException e) {
+                    continue; // 只通过 close() 停止
+                }
+                queue.drainTo(group, MAX_GROUP - 1);
+                synchronized (room) {
+                    room.notifyAll();
+                }
+                for (Entry<T> entry : group) {
+                    if (entry.stop) {
+                        stopping = true;
+                    } else if (entry.task != null) {
+                        writeGroup(records); // 任务之前的记录先写出
+                        runTask(entry.task);
+                    } else if (entry.flushed != null) {
+                        waiters.add(entry.flushed);
+                    } else if (entry.records != null) {
+                        records.addAll(entry.records);
+                    } else {
+                        records.add(entry.record);
+                    }
+                }
+                writeGroup(records);
+                for (CompletableFuture<Void> waiter : waiters) {
+                    complete(waiter, failure);
+                }
+                group.clear();
+                waiters.clear();
+            }
+        } catch (RuntimeException | Error e) {
+            System.err.println(name + " 写入线程异常退出: " + e.getMessage());
+            if (failure == null) {
+                failure = new IOException(name + " 写入线程异常退出", e);
+            }
+            throw e;
+        } finally {
+            // 已取出但未处理的等待者，以及退出后仍留在队列中的项（正常关闭时没有），都不会再写出
+            group.addAll(queue);
+            queue.clear();
+            IOException unwritten = failure != null ? failure : new IOException(name + " 已关闭，记录未写出");
+            for (CompletableFuture<Void> waiter : waiters) {
+                complete(waiter, unwritten);
+            }
+            for (Entry<T> entry : group) {
+                if (entry.flushed != null) {
+                    complete(entry.flushed, unwritten);
+                }
+            }
+            stopped.complete(null);
+            synchronized (room) {
+                room.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 写出一组记录；失败时记下第一次失败，这些记录不再重试（可能已写出一部分，重试会重复）
+     */
+    private void writeGroup(List<T> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        try {
+            sink.write(records);
+        } catch (IOException | RuntimeException e) {
+            System.err.println(name + " 写入时出错: " + e.getMessage());
+            if (failure == null) {
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+        } finally {
+            records.clear();
+        }
+    }
+
+    private static void complete(CompletableFuture<Void> future, Throwable failure) {
+        if (failure != null) {
+            future.completeExceptionally(failure);
+        } else {
+            future.complete(null);
+        }
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            System.err.println(name + " 执行任务时出错: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 写完队列中剩余的记录后停止写入线程，可以重复调用
+     */
+    @Override
+    public void close() {
+        synchronized (enqueueLock) {
+            if (!closed) {
+                closed = true; // 与入队在同一把锁下，停止标记是队列中的最后一项
+                stopWriter();
+            }
+        }
+        if (Thread.currentThread() == thread) {
+            return; // 写入线程上的任务关闭时不能等待自己
+        }
+        try {
+            thread.join(); // 重复调用时同样等到剩余记录写完
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 放入停止标记（调用方持有 enqueueLock），写入线程已异常退出时不再等待队列空位
+     */
+    private void stopWriter() {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                if (queue.offer(Entry.stop(), 100, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true; // 停止标记必须入队，否则写入线程不会退出
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Entry<T> {
+        final T record;
+        final List<T> records;
+        final Runnable task;
+        final CompletableFuture<Void> flushed;
+        final boolean stop;
+
+        Entry(T record, Runnable task, CompletableFuture<Void> flushed) {
+            this(record, null, task, flushed);
+        }
+
+        Entry(T record, List<T> records, Runnable task, CompletableFuture<Void> flushed) {
+            this.record = record;
+            this.records = records;
+            this.task = task;
+            this.flushed = flushed;
+            this.stop = false;
+        }
+
+        private Entry() {
+            this.record = null;
+            this.records = null;
+            this.task = null;
+            this.flushed = null;
+            this.stop = true;
+        }
+
+        static <T> Entry<T> stop() {
+            return new Entry<>();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.financemanager.model;
+
+import java.util.Arrays;
+
+/**
+ * 二进制ID -> 行号的哈希索引
+ * 开放寻址、线性探测，键为两个 long，不装箱、不比较字符串；删除时把后面的项前移，不留墓碑。
+ * 按时间排序的ID低位是连续的序号，先混合再取槽位
+ */
+final class IdIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] highs;
+    private long[] lows;
+    private int[] rows; // 行号 + 1，0 表示空槽
+    private int size;
+    private int mask;
+
+    IdIndex() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        rows = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 查找行号，不存在时返回-1
+     */
+    int get(long high, long low) {
+        for (int slot = slot(high, low); ; slot = (slot + 1) & mask) {
+            int row = rows[slot];
+            if (row == 0) {
+                return -1;
+            }
+            if (highs[slot] == high && lows[slot] == low) {
+                return row - 1;
+            }
+        }
+    }
+
+    void put(long high, long low, int row) {
+        if ((size + 1) * 4 > rows.length * 3) {
+            resize(rows.length * 2);
+        }
+        int slot = slot(high, low);
+        for (; rows[slot] != 0; slot = (slot + 1) & mask) {
+            if (highs[slot] == high && lows[slot] == low) {
+                rows[slot] = row + 1;
+                return;
+            }
+        }
+        highs[slot] = high;
+        lows[slot] = low;
+        rows[slot] = row + 1;
+        size++;
+    }
+
+    /**
+     * 键仍指向 row 时移除
+     */
+    void remove(long high, long low, int row) {
+        int slot = slot(high, low);
+        for (; rows[slot] != 0; slot = (slot + 1) & mask) {
+            if (highs[slot] == high && lows[slot] == low) {
+                if (rows[slot] == row + 1) {
+                    delete(slot);
+                }
+                return;
+            }
+        }
+    }
+
+    void clear() {
+        if (rows.length > MIN_CAPACITY) {
+            allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(rows, 0);
+        }
+        size = 0;
+    }
+
+    private void delete(int slot) {
+        int hole = slot;
+        for (int next = (hole + 1) & mask; rows[next] != 0; next = (next + 1) & mask) {
+            int home = slot(highs[next], lows[next]);
+            // next 的理想槽位不在 (hole, next] 之间时，可以前移填补空槽
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                highs[hole] = highs[next];
+                lows[hole] = lows[next];
+                rows[hole] = rows[next];
+                hole = next;
+            }
+        }
+        rows[hole] = 0;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        int[] oldRows = rows;
+        allocate(capacity);
+        for (int i = 0; i < oldRows.length; i++) {
+            if (oldRows[i] != 0) {
+                int slot = slot(oldHighs[i], oldLows[i]);
+                while (rows[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                highs[slot] = oldHighs[i];
+                lows[slot] = oldLows[i];
+                rows[slot] = oldRows[i];
+            }
+        }
+    }
+
+    private int slot(long high, long low) {
+        long h = high * 0x9E3779B97F4A7C15L ^ low;
+        h = (h ^ (h >>> 32)) * 0xD6E8FEB86659FD93L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,146 @@
+package com.financemanager.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * 导入时的重复检测
+ * 导入的行与导入开始前账本中同一天、金额、描述、支付方式和收支类型都相同的交易视为重复；
+ * 按个数匹配：账本中某天有两笔相同的交易，文件中同样的第三笔仍会导入，
+ * 文件内部相同的行（同一天两杯同价的咖啡）也不互相判重
+ *
+ * 先查导入开始时账本指纹的布隆过滤器，判断为不存在的行（不重叠的部分）直接通过，不读取账本；
+ * 可能存在的行再按天读取账本、按完整内容精确比对。按天缓存账本中尚未被匹配的交易，
+ * 缓存的天数有上限；文件中的日期大体有序时判断是精确的，
+ * 日期严重乱序、某天被挤出缓存后再次出现时，按重新读取的账本（已包含本次导入的行）计算
+ *
+ * 实例不是线程安全的，由导入流水线的去重阶段独占使用
+ */
+final class ImportDeduplicator {
+    private static final int CACHED_DAYS = 400;
+    private static final int MAX_SAMPLES = 10;
+
+    private final FingerprintFilter ledger;
+    private final long ledgerScanRows;
+    private final long ledgerScanMillis;
+    private final IntFunction<List<Transaction>> ledgerDay;
+    private final Map<Integer, Map<String, int[]>> days = new LinkedHashMap<Integer, Map<String, int[]>>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Map<String, int[]>> eldest) {
+            return size() > CACHED_DAYS;
+        }
+    };
+    private final List<String> samples = new ArrayList<>();
+    private int candidates;
+    private int duplicates;
+
+    /**
+     * @param ledger 导入开始时账本指纹的过滤器（副本，导入期间不变）
+     * @param ledgerScanRows 建立过滤器时读取的未加载月份的行数
+     * @param ledgerScanMillis 读取这些行的耗时
+     * @param ledgerDay 读取账本中某一天的全部交易
+     */
+    ImportDeduplicator(FingerprintFilter ledger, long ledgerScanRows, long ledgerScanMillis,
+                       IntFunction<List<Transaction>> ledgerDay) {
+        this.ledger = ledger;
+        this.ledgerScanRows = ledgerScanRows;
+        this.ledgerScanMillis = ledgerScanMillis;
+        this.ledgerDay = ledgerDay;
+    }
+
+    /**
+     * 判断导入的行是否与账本中尚未匹配的交易重复，重复时消耗一笔匹配
+     */
+    boolean isDuplicate(Transaction t) {
+        if (!ledger.mightContain(FingerprintFilter.fingerprint(t))) {
+            return false;
+        }
+        candidates++;
+        int epochDay = (int) t.getDate().toEpochDay();
+        Map<String, int[]> unmatched = days.get(epochDay);
+        if (unmatched == null) {
+            unmatched = load(epochDay);
+            days.put(epochDay, unmatched);
+        }
+        int[] remaining = unmatched.get(key(t));
+        if (remaining != null && remaining[0] > 0) {
+            remaining[0]--;
+            duplicates++;
+            if (samples.size() < MAX_SAMPLES) {
+                samples.add(describe(t));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 跳过的重复行数
+     */
+    int duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * 过滤器命中、逐笔比对过的行数
+     */
+    int candidates() {
+        return candidates;
+    }
+
+    long ledgerScanRows() {
+        return ledgerScanRows;
+    }
+
+    long ledgerScanMillis() {
+        return ledgerScanMillis;
+    }
+
+    /**
+     * 前几条被跳过的行
+     */
+    List<String> samples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("过滤器命中%d行，确认重复%d行，误判%d行", candidates, duplicates, candidates - duplicates);
+    }
+
+    /**
+     * 账本中某一天的交易：比对内容 -> 尚未被匹配的个数
+     */
+    private Map<String, int[]> load(int epochDay) {
+        Map<String, int[]> unmatched = new HashMap<>();
+        for (Transaction existing : ledgerDay.apply(epochDay)) {
+            unmatched.computeIfAbsent(key(existing), k -> new int[1])[0]++;
+        }
+        return unmatched;
+    }
+
+    /**
+     * 同一天内精确比较的内容：金额（分）、收支类型、支付方式和描述
+     */
+    private static String key(Transaction t) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(t.getAmountCents()).append(t.isExpense() ? 'E' : 'I').append('|');
+        if (t.getPaymentMethod() != null) {
+            sb.append(t.getPaymentMethod());
+        }
+        sb.append('|');
+        if (t.getDescription() != null) {
+            sb.append(t.getDescription());
+        }
+        return sb.toString();
+    }
+
+    private static String describe(Transaction t) {
+        return t.getDate() + " " + (t.isExpense() ? "支出" : "收入") + String.format("%.2f", t.getAmount())
+                + " " + t.getDescription() + "（" + t.getPaymentMethod() + "）";
+    }
+}
@@ -0,0 +1,25 @@
+package com.financemanager.model;
+
+/**
+ * 导入过程的回调
+ * 在执行导入的线程上调用，界面代码需要自行切换到事件分派线程
+ */
+public interface ImportListener {
+    /**
+     * 每提交一批后调用
+     */
+    void onProgress(ImportProgress progress);
+
+    /**
+     * 导入结束（包括取消和出错）时调用
+     */
+    default void onComplete(ImportResult result) {
+    }
+
+    /**
+     * 返回true时在当前批次提交后停止导入，已提交的批次保留
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
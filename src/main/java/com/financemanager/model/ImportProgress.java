@@ -0,0 +1,47 @@
+package com.financemanager.model;
+
+/**
+ * 导入进度
+ * 记录已读取的字节数、文件总字节数以及已导入、已拒绝的行数
+ */
+public class ImportProgress {
+    private final long bytesRead;
+    private final long totalBytes;
+    private final int importedCount;
+    private final int rejectedCount;
+
+    public ImportProgress(long bytesRead, long totalBytes, int importedCount, int rejectedCount) {
+        this.bytesRead = bytesRead;
+        this.totalBytes = totalBytes;
+        this.importedCount = importedCount;
+        this.rejectedCount = rejectedCount;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public int getImportedCount() {
+        return importedCount;
+    }
+
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * 完成百分比（0-100）
+     */
+    public int getPercent() {
+        return totalBytes <= 0 ? 100 : (int) Math.min(100, bytesRead * 100 / totalBytes);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("已读取%d%%，导入%d条，拒绝%d行", getPercent(), importedCount, rejectedCount);
+    }
+}
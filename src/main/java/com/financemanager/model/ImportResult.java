@@ -0,0 +1,183 @@
+package com.financemanager.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 导入结果
+ * 记录导入、拒绝、作为重复跳过、自动分类的行数，识别出的文件编码，按原因汇总的错误数、
+ * 前几条错误和重复示例，重复检测的过滤器命中数和账本指纹扫描的开销，以及流水线各阶段的吞吐统计
+ */
+public class ImportResult {
+    private final int importedCount;
+    private final int rejectedCount;
+    private final int duplicateCount;
+    private final int classifiedCount;
+    private final String charset;
+    private final long elapsedMillis;
+    private final Map<String, Integer> errorCounts;
+    private final List<String> sampleErrors;
+    private final List<String> sampleDuplicates;
+    private final boolean cancelled;
+    private final String failure;
+    private final List<StageMetrics> stageMetrics;
+    private final int duplicateCandidates;
+    private final long ledgerScanRows;
+    private final long ledgerScanMillis;
+
+    public ImportResult(int importedCount, int rejectedCount, int duplicateCount, int classifiedCount,
+                        String charset, long elapsedMillis, Map<String, Integer> errorCounts,
+                        List<String> sampleErrors, List<String> sampleDuplicates, boolean cancelled, String failure,
+                        List<StageMetrics> stageMetrics) {
+        this(importedCount, rejectedCount, duplicateCount, classifiedCount, charset, elapsedMillis, errorCounts,
+                sampleErrors, sampleDuplicates, cancelled, failure, stageMetrics, 0, 0, 0);
+    }
+
+    public ImportResult(int importedCount, int rejectedCount, int duplicateCount, int classifiedCount,
+                        String charset, long elapsedMillis, Map<String, Integer> errorCounts,
+                        List<String> sampleErrors, List<String> sampleDuplicates, boolean cancelled, String failure,
+                        List<StageMetrics> stageMetrics, int duplicateCandidates, long ledgerScanRows,
+                        long ledgerScanMillis) {
+        this.importedCount = importedCount;
+        this.rejectedCount = rejectedCount;
+        this.duplicateCount = duplicateCount;
+        this.classifiedCount = classifiedCount;
+        this.charset = charset;
+        this.elapsedMillis = elapsedMillis;
+        this.errorCounts = Collections.unmodifiableMap(errorCounts);
+        this.sampleErrors = Collections.unmodifiableList(sampleErrors);
+        this.sampleDuplicates = Collections.unmodifiableList(sampleDuplicates);
+        this.cancelled = cancelled;
+        this.failure = failure;
+        this.stageMetrics = Collections.unmodifiableList(stageMetrics);
+        this.duplicateCandidates = duplicateCandidates;
+        this.ledgerScanRows = ledgerScanRows;
+        this.ledgerScanMillis = ledgerScanMillis;
+    }
+
+    public int getImportedCount() {
+        return importedCount;
+    }
+
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * 与已有交易重复而跳过的行数
+     */
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * 没有类别、由分类器补上类别的行数
+     */
+    public int getClassifiedCount() {
+        return classifiedCount;
+    }
+
+    /**
+     * 识别出的文件编码
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 错误原因 -> 行数
+     */
+    public Map<String, Integer> getErrorCounts() {
+        return errorCounts;
+    }
+
+    /**
+     * 前几条被拒绝的记录及原因
+     */
+    public List<String> getSampleErrors() {
+        return sampleErrors;
+    }
+
+    /**
+     * 前几条作为重复跳过的行
+     */
+    public List<String> getSampleDuplicates() {
+        return sampleDuplicates;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 读取文件失败时的错误信息，正常结束时为null
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     * 流水线各阶段的吞吐统计，按数据流经的顺序
+     */
+    public List<StageMetrics> getStageMetrics() {
+        return stageMetrics;
+    }
+
+    /**
+     * 账本指纹过滤器命中、需要逐笔比对的行数；减去跳过的重复行数即为过滤器的误判
+     */
+    public int getDuplicateCandidates() {
+        return duplicateCandidates;
+    }
+
+    /**
+     * 导入前为建立账本指纹而读取的未加载月份的行数，过滤器已建立时为0
+     */
+    public long getLedgerScanRows() {
+        return ledgerScanRows;
+    }
+
+    /**
+     * 读取未加载月份建立账本指纹的耗时
+     */
+    public long getLedgerScanMillis() {
+        return ledgerScanMillis;
+    }
+
+    /**
+     * 忙碌占比最高的阶段，没有统计时返回null
+     */
+    public StageMetrics getBottleneck() {
+        StageMetrics bottleneck = null;
+        for (StageMetrics stage : stageMetrics) {
+            if (bottleneck == null || stage.getUtilization() > bottleneck.getUtilization()) {
+                bottleneck = stage;
+            }
+        }
+        return bottleneck;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("导入%d条交易记录，拒绝%d行，跳过重复%d行，自动分类%d行，编码%s，耗时%dms",
+                importedCount, rejectedCount, duplicateCount, classifiedCount, charset, elapsedMillis));
+        if (cancelled) {
+            sb.append("（已取消）");
+        }
+        if (ledgerScanRows > 0) {
+            sb.append(String.format("，重复检测读取未加载月份%d行（%dms）", ledgerScanRows, ledgerScanMillis));
+        }
+        if (failure != null) {
+            sb.append("，读取出错: ").append(failure);
+        }
+        for (Map.Entry<String, Integer> entry : errorCounts.entrySet()) {
+            sb.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue()).append("行");
+        }
+        return sb.toString();
+    }
+}
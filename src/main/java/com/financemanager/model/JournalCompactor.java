@@ -0,0 +1,112 @@
+package com.financemanager.model;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 交易日志压缩器
+ * 当日志超过大小或时间阈值时，在后台线程把当前全部交易写成新的快照，然后丢弃旧日志
+ *
+ * 写线程只交出当前数据的副本，轮转日志（一次重命名）在负责写日志的线程上排队执行，
+ * 与日志记录保持先后顺序；写快照在后台进行，压缩期间新增、修改、删除不会被阻塞
+ */
+final class JournalCompactor {
+    /**
+     * 一次快照写入，捕获了调用时刻的数据，在后台线程执行；
+     * 实现需保证写入过程中崩溃时磁盘上仍保留完整的旧快照
+     */
+    interface Snapshot {
+        void write() throws IOException;
+    }
+
+    private final TransactionJournal journal;
+    private final long maxJournalBytes;
+    private final long maxJournalAgeMillis;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile CompletableFuture<Void> current = CompletableFuture.completedFuture(null); // 最近一次压缩
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    JournalCompactor(TransactionJournal journal, long maxJournalBytes, long maxJournalAgeMillis) {
+        this.journal = journal;
+        this.maxJournalBytes = maxJournalBytes;
+        this.maxJournalAgeMillis = maxJournalAgeMillis;
+    }
+
+    /**
+     * 日志是否已经超过阈值，需要压缩
+     */
+    boolean shouldCompact() {
+        if (running.get()) {
+            return false;
+        }
+        return journal.hasRotated()
+                || journal.size() >= maxJournalBytes
+                || journal.ageMillis() >= maxJournalAgeMillis;
+    }
+
+    /**
+     * 轮转日志并在后台写入新快照，上一次压缩尚未结束时不再启动新的压缩
+     * @param snapshot 调用时刻全部交易的快照，之后不会再被修改
+     * @param journalThread 写日志的线程，轮转排在快照之前的全部日志记录之后执行
+     * @return 快照写完时完成的 Future，失败时以异常完成；上一次压缩尚未结束时返回那一次的 Future
+     */
+    CompletableFuture<Void> compact(Snapshot snapshot, Executor journalThread) {
+        if (!running.compareAndSet(false, true)) {
+            return current;
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        current = done;
+        try {
+            journalThread.execute(() -> {
+                try {
+                    // 若上次压缩遗留了旧日志则不再轮转：快照已包含两段日志的全部效果，
+                    // 只丢弃旧日志，当前日志在下次启动时重放也是幂等的
+                    journal.rotate();
+                } catch (IOException e) {
+                    System.err.println("轮转交易日志时出错: " + e.getMessage());
+                    running.set(false);
+                    done.completeExceptionally(e);
+                    return;
+                }
+                executor.execute(() -> {
+                    try {
+                        snapshot.write();
+                        journal.discardRotated();
+                        running.set(false);
+                        done.complete(null);
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("压缩交易日志时出错: " + e.getMessage());
+                        running.set(false);
+                        done.completeExceptionally(e);
+                    }
+                });
+            });
+        } catch (RuntimeException e) {
+            running.set(false);
+            done.completeExceptionally(e);
+            throw e;
+        }
+        return done;
+    }
+
+    /**
+     * 等待正在进行的压缩完成并停止后台线程
+     */
+    void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.financemanager.model;
+
+/**
+ * 交易数据加载结果
+ * 记录成功加载的行数、被拒绝（无法解析）的行数以及耗时
+ */
+public class LoadResult {
+    private final int loadedCount;
+    private final int rejectedCount;
+    private final long elapsedMillis;
+    private final int deferredMonths;
+
+    public LoadResult(int loadedCount, int rejectedCount, long elapsedMillis) {
+        this(loadedCount, rejectedCount, elapsedMillis, 0);
+    }
+
+    public LoadResult(int loadedCount, int rejectedCount, long elapsedMillis, int deferredMonths) {
+        this.loadedCount = loadedCount;
+        this.rejectedCount = rejectedCount;
+        this.elapsedMillis = elapsedMillis;
+        this.deferredMonths = deferredMonths;
+    }
+
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 启动时未加载、留待按需加载的月份数
+     */
+    public int getDeferredMonths() {
+        return deferredMonths;
+    }
+
+    @Override
+    public String toString() {
+        String text = String.format("已加载%d条交易记录，拒绝%d行，耗时%dms", loadedCount, rejectedCount, elapsedMillis);
+        return deferredMonths > 0 ? text + "，另有" + deferredMonths + "个月份按需加载" : text;
+    }
+}
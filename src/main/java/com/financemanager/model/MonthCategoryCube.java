@@ -0,0 +1,147 @@
+package com.financemanager.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * 月份 × 类别 × 收支类型的聚合立方体
+ * 按（月份，类别编码，支出/收入）保存金额合计（分）和笔数，随每次增、改、删增量更新，
+ * 月度、类别的各项合计都可以直接读出，不再扫描交易
+ *
+ * 类别编码-1表示不限类别，各月另外保存了不限类别的合计
+ */
+final class MonthCategoryCube {
+    private final Map<Integer, Cells> months = new HashMap<>();
+    private final Cells allMonths = new Cells(); // 全部月份的合计
+
+    /**
+     * 把一笔交易计入立方体
+     */
+    void add(int epochDay, int categoryCode, boolean isExpense, long cents) {
+        apply(epochDay, categoryCode, isExpense, cents, 1);
+    }
+
+    /**
+     * 从立方体中扣除一笔交易
+     */
+    void remove(int epochDay, int categoryCode, boolean isExpense, long cents) {
+        apply(epochDay, categoryCode, isExpense, -cents, -1);
+    }
+
+    /**
+     * 把某月某类别的合计整体计入立方体（金额和笔数为负时扣除），用于尚未加载明细的月份
+     */
+    void addTotals(YearMonth month, int categoryCode, boolean isExpense, long cents, int count) {
+        applyMonth(monthKey(month), categoryCode, isExpense, cents, count);
+    }
+
+    void clear() {
+        months.clear();
+        allMonths.clear();
+    }
+
+    private void apply(int epochDay, int categoryCode, boolean isExpense, long cents, int count) {
+        applyMonth(monthKey(epochDay), categoryCode, isExpense, cents, count);
+    }
+
+    private void applyMonth(int monthKey, int categoryCode, boolean isExpense, long cents, int count) {
+        Cells cells = months.computeIfAbsent(monthKey, m -> new Cells());
+        cells.add(-1, isExpense, cents, count);
+        cells.add(categoryCode, isExpense, cents, count);
+        allMonths.add(-1, isExpense, cents, count);
+        allMonths.add(categoryCode, isExpense, cents, count);
+    }
+
+    /**
+     * 某月某类别的支出（或收入）合计，单位分
+     */
+    long sumCents(YearMonth month, int categoryCode, boolean isExpense) {
+        Cells cells = months.get(monthKey(month));
+        return cells == null ? 0 : cells.cents(categoryCode, isExpense);
+    }
+
+    /**
+     * 某月某类别的支出（或收入）笔数
+     */
+    int count(YearMonth month, int categoryCode, boolean isExpense) {
+        Cells cells = months.get(monthKey(month));
+        return cells == null ? 0 : cells.count(categoryCode, isExpense);
+    }
+
+    /**
+     * 全部月份中某类别的支出（或收入）合计，单位分
+     */
+    long totalCents(int categoryCode, boolean isExpense) {
+        return allMonths.cents(categoryCode, isExpense);
+    }
+
+    /**
+     * 全部月份中某类别的支出（或收入）笔数
+     */
+    int totalCount(int categoryCode, boolean isExpense) {
+        return allMonths.count(categoryCode, isExpense);
+    }
+
+    /**
+     * 有过交易的月份（含只计入了合计、尚未加载明细的月份），按时间升序
+     */
+    NavigableSet<YearMonth> months() {
+        NavigableSet<YearMonth> result = new TreeSet<>();
+        for (int key : months.keySet()) {
+            result.add(YearMonth.of(key / 12, key % 12 + 1));
+        }
+        return result;
+    }
+
+    private static int monthKey(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private static int monthKey(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    /**
+     * 一个月份的所有单元：下标 (类别编码 + 1) * 2 + (支出 ? 1 : 0)，类别编码-1占用前两格
+     */
+    private static final class Cells {
+        private long[] cents = new long[32];
+        private int[] counts = new int[32];
+
+        void add(int categoryCode, boolean isExpense, long amount, int count) {
+            int slot = slot(categoryCode, isExpense);
+            if (slot >= cents.length) {
+                int size = Math.max(slot + 1, cents.length * 2);
+                cents = Arrays.copyOf(cents, size);
+                counts = Arrays.copyOf(counts, size);
+            }
+            cents[slot] += amount;
+            counts[slot] += count;
+        }
+
+        long cents(int categoryCode, boolean isExpense) {
+            int slot = slot(categoryCode, isExpense);
+            return slot < cents.length ? cents[slot] : 0;
+        }
+
+        int count(int categoryCode, boolean isExpense) {
+            int slot = slot(categoryCode, isExpense);
+            return slot < counts.length ? counts[slot] : 0;
+        }
+
+        void clear() {
+            Arrays.fill(cents, 0);
+            Arrays.fill(counts, 0);
+        }
+
+        private static int slot(int categoryCode, boolean isExpense) {
+            return (categoryCode + 1) * 2 + (isExpense ? 1 : 0);
+        }
+    }
+}
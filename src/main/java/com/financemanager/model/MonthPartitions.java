@@ -0,0 +1,525 @@
+package com.financemanager.model;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 按月分区的交易快照
+ * 每个月份的交易单独写成一个文件：近期月份为映射读取的列式文件（YYYY-MM.代数.bin），
+ * 较早的月份为按块压缩的冷数据段（YYYY-MM.代数.cold），加载时逐块解压，解压后的块放入有界缓存。
+ * 分区清单记录各分区的文件、行数，以及按类别、收支类型的合计；
+ * 未加载的月份只需把清单中的合计计入聚合立方体，全部时间的合计不必读取分区文件
+ *
+ * 写入时先写新代数的分区文件，再原子替换清单，最后删除清单不再引用的文件；
+ * 任何时刻磁盘上的清单都指向一组完整的分区文件。正在被读取的旧文件等读取结束后才删除，
+ * 与写入并发的加载不会读到已删除的文件。与清单一致的月份沿用原文件；
+ * 导入时直接追加到未加载月份的行，在写入时与该月原有的分区合并
+ *
+ * 清单格式（CSV）：
+ * generation,代数
+ * maxid,各代分区中出现过的最大紧凑ID（新建ID的下限，只增不减）
+ * partition,YYYY-MM,文件名,行数
+ * total,YYYY-MM,类别,E|I,金额,笔数
+ */
+final class MonthPartitions {
+    private static final String MANIFEST_FILE = "manifest.csv";
+    private static final String PARTITION_SUFFIX = ".bin";
+    private static final String COLD_SUFFIX = ".cold";
+
+    private final File dir;
+    private final File manifestFile;
+    private final int coldAfterMonths;
+    private final BlockCache blockCache;
+    private volatile Map<YearMonth, Partition> manifest = new TreeMap<>(); // 写入新清单后整体替换
+    private final Map<YearMonth, Partition> seeded = new HashMap<>(); // 合计已计入立方体的分区，与存储一样由调用方加锁
+    private long generation;
+    private long maxCompactId = -1; // 清单记录的最大紧凑ID，写入时与写出的行取较大者
+    private final Map<String, Integer> readers = new HashMap<>(); // 正在读取的分区文件 -> 读取者数，用自身加锁
+    private final Set<String> retired = new HashSet<>(); // 清单已不再引用、等读取结束后删除的文件，与 readers 一起加锁
+    private final Map<String, FingerprintFilter> idFilters = new HashMap<>(); // 分区文件 -> 其中交易ID的过滤器，用自身加锁
+
+    /**
+     * @param coldAfterMonths 早于当月这么多个月的分区写成压缩的冷数据段
+     * @param cacheBytes 解压后冷数据块缓存的容量
+     */
+    MonthPartitions(File dir, int coldAfterMonths, long cacheBytes) {
+        this.dir = dir;
+        this.manifestFile = new File(dir, MANIFEST_FILE);
+        this.coldAfterMonths = coldAfterMonths;
+        this.blockCache = new BlockCache(cacheBytes);
+        if (manifestFile.exists()) {
+            try {
+                readManifest();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("读取分区清单时出错: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 磁盘上是否已有分区清单
+     */
+    boolean exists() {
+        return manifestFile.exists();
+    }
+
+    /**
+     * 清单中的全部月份，升序
+     */
+    NavigableSet<YearMonth> months() {
+        return new TreeSet<>(manifest.keySet());
+    }
+
+    /**
+     * 分区中出现过的最大紧凑ID（含未加载的月份），没有时返回-1
+     */
+    long maxCompactId() {
+        return maxCompactId;
+    }
+
+    /**
+     * 清单中某月份的行数，没有该分区时为0
+     */
+    int rows(YearMonth month) {
+        Partition partition = manifest.get(month);
+        return partition == null ? 0 : partition.rows;
+    }
+
+    boolean contains(YearMonth month) {
+        return manifest.containsKey(month);
+    }
+
+    /**
+     * 把某月份的合计计入存储的聚合立方体，代替尚未加载的明细；之前计入过的合计先扣除
+     */
+    void seed(YearMonth month, TransactionStore store) {
+        applyTotals(seeded.remove(month), store, -1);
+        Partition partition = manifest.get(month);
+        applyTotals(partition, store, 1);
+        if (partition != null) {
+            seeded.put(month, partition);
+        }
+    }
+
+    /**
+     * 加载某月份的分区：扣除之前计入的合计，再追加分区中存储里还没有的行
+     * （存储中已有的同ID行是较新的版本，例如重放的日志或导入时直接追加的行）。
+     * 读取失败时按当前清单重试一次（分区可能刚被新代数替换）
+     * @throws IOException 读取失败，存储不变，合计仍保留
+     */
+    void load(YearMonth month, TransactionStore store) throws IOException {
+        Partition tried = null;
+        while (true) {
+            Partition partition = acquire(month);
+            if (partition == null) {
+                applyTotals(seeded.remove(month), store, -1);
+                return;
+            }
+            try {
+                readRows(partition, store, () -> applyTotals(seeded.remove(month), store, -1));
+                return;
+            } catch (IOException e) {
+                if (tried != null || manifest.get(month) == partition) {
+                    throw e;
+                }
+                tried = partition; // 清单已换成新代数，按新文件再读一次
+            } finally {
+                release(partition);
+            }
+        }
+    }
+
+    /**
+     * 逐行读取某月份分区而不加载到存储；冷数据块只使用已有的缓存，不放入新块，避免全量扫描挤掉常用的块
+     */
+    void forEachRow(YearMonth month, Consumer<Transaction> action) throws IOException {
+        Partition partition = acquire(month);
+        if (partition == null) {
+            return;
+        }
+        try {
+            File file = new File(dir, partition.fileName);
+            if (partition.fileName.endsWith(COLD_SUFFIX)) {
+                try (ColdSegmentFile segment = ColdSegmentFile.open(file)) {
+                    for (int block = 0; block < segment.blockCount(); block++) {
+                        byte[] raw = blockCache.get(partition.fileName, block);
+                        ColdSegmentFile.decodeBlock(raw != null ? raw : segment.readBlock(block), action);
+                    }
+                }
+            } else {
+                try (ColumnarTransactionFile columns = ColumnarTransactionFile.open(file)) {
+                    for (int row = 0; row < columns.rowCount(); row++) {
+                        action.accept(columns.transactionAt(row));
+                    }
+                }
+            }
+        } finally {
+            release(partition);
+        }
+    }
+
+    /**
+     * 在给定的月份中找出可能含有某ID的分区，不加载到存储
+     * 每个分区首次查找时读取一遍，建立其中交易ID的过滤器（每行约2字节），之后只查过滤器
+     * @return 可能含有该ID的月份（约0.07%误判，调用方加载后再确认），按给定顺序
+     */
+    List<YearMonth> locate(String id, Collection<YearMonth> months) throws IOException {
+        long fingerprint = FingerprintFilter.fingerprint(id);
+        List<YearMonth> candidates = new ArrayList<>();
+        for (YearMonth month : months) {
+            Partition partition = manifest.get(month);
+            if (partition != null && idFilter(partition).mightContain(fingerprint)) {
+                candidates.add(month);
+            }
+        }
+        return candidates;
+    }
+
+    private FingerprintFilter idFilter(Partition partition) throws IOException {
+        synchronized (idFilters) {
+            FingerprintFilter filter = idFilters.get(partition.fileName);
+            if (filter == null) {
+                FingerprintFilter built = new FingerprintFilter(partition.rows, 64, FingerprintFilter.PRECISE_BITS_PER_ENTRY);
+                forEachRow(partition.month, t -> built.add(FingerprintFilter.fingerprint(t.getId())));
+                idFilters.put(partition.fileName, built);
+                filter = built;
+            }
+            return filter;
+        }
+    }
+
+    /**
+     * 取得某月份当前的分区并登记为正在读取，读取期间文件不会被删除；没有该分区时返回null
+     */
+    private Partition acquire(YearMonth month) {
+        synchronized (readers) {
+            Partition partition = manifest.get(month);
+            if (partition != null) {
+                readers.merge(partition.fileName, 1, Integer::sum);
+            }
+            return partition;
+        }
+    }
+
+    /**
+     * 读取结束；文件已被新代数替换且没有其他读取者时删除
+     */
+    private void release(Partition partition) {
+        if (partition == null) {
+            return;
+        }
+        synchronized (readers) {
+            if (readers.merge(partition.fileName, -1, Integer::sum) > 0) {
+                return;
+            }
+            readers.remove(partition.fileName);
+            if (!retired.remove(partition.fileName)) {
+                return;
+            }
+        }
+        delete(new File(dir, partition.fileName)); // 在 readers 的锁外删除，idFilter 持有过滤器的锁时会登记读取
+    }
+
+    /**
+     * 把分区中的行追加到存储，ID已存在的行跳过
+     * @param beforeAppend 文件读取成功、追加之前执行
+     */
+    private void readRows(Partition partition, TransactionStore store, Runnable beforeAppend) throws IOException {
+        File file = new File(dir, partition.fileName);
+        if (partition.fileName.endsWith(COLD_SUFFIX)) {
+            List<Transaction> rows = readCold(partition.fileName, file);
+            beforeAppend.run();
+            for (Transaction t : rows) {
+                if (store.indexOf(t.getId()) < 0) {
+                    store.add(t);
+                }
+            }
+        } else {
+            try (ColumnarTransactionFile columns = ColumnarTransactionFile.open(file)) {
+                beforeAppend.run();
+                store.appendFrom(columns);
+            }
+        }
+    }
+
+    /**
+     * 逐块读取冷数据段，已缓存的块不再读盘解压
+     */
+    private List<Transaction> readCold(String fileName, File file) throws IOException {
+        List<Transaction> rows = new ArrayList<>();
+        try (ColdSegmentFile segment = ColdSegmentFile.open(file)) {
+            for (int block = 0; block < segment.blockCount(); block++) {
+                byte[] raw = blockCache.get(fileName, block);
+                if (raw == null) {
+                    raw = segment.readBlock(block);
+                    blockCache.put(fileName, block, raw);
+                }
+                ColdSegmentFile.decodeBlock(raw, rows::add);
+            }
+        }
+        return rows;
+    }
+
+    private static void applyTotals(Partition partition, TransactionStore store, int sign) {
+        if (partition == null) {
+            return;
+        }
+        for (Total total : partition.totals) {
+            store.addMonthTotals(partition.month, total.category, total.isExpense,
+                    sign * total.cents, sign * total.count);
+        }
+    }
+
+    /**
+     * 写入新的分区快照
+     * @param rows 已加载月份的全部交易（只读快照）
+     * @param unloaded 尚未加载的月份，沿用清单中原有的分区；若 rows 中有这些月份追加的行，与原分区合并后写出
+     * @param clean 已加载、且与清单中的分区一致的月份，沿用原有分区不再重写
+     */
+    synchronized void write(TransactionStore rows, Set<YearMonth> unloaded, Set<YearMonth> clean) throws IOException {
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        long nextGeneration = generation + 1;
+        Map<YearMonth, Partition> current = manifest;
+        Map<YearMonth, Partition> next = new TreeMap<>();
+        for (YearMonth month : unloaded) {
+            Partition partition = current.get(month);
+            if (partition != null) {
+                next.put(month, partition);
+            }
+        }
+        for (YearMonth month : clean) {
+            Partition partition = current.get(month);
+            if (partition != null) {
+                next.put(month, partition);
+            }
+        }
+        YearMonth coldBefore = YearMonth.now().minusMonths(coldAfterMonths);
+        for (Map.Entry<YearMonth, int[]> entry : rowsByMonth(rows).entrySet()) {
+            YearMonth month = entry.getKey();
+            if (clean.contains(month) && next.containsKey(month)) {
+                continue;
+            }
+            int[] monthRows = entry.getValue();
+            TransactionStore part = rows.select(monthRows, monthRows.length);
+            Partition previous = unloaded.contains(month) ? current.get(month) : null;
+            if (previous != null) {
+                part = merge(previous, part); // 一次只把一个月份读入内存
+            }
+            String fileName;
+            if (month.isBefore(coldBefore)) {
+                fileName = month + "." + nextGeneration + COLD_SUFFIX;
+                ColdSegmentFile.write(part, new File(dir, fileName));
+            } else {
+                fileName = month + "." + nextGeneration + PARTITION_SUFFIX;
+                ColumnarTransactionFile.write(part, new File(dir, fileName));
+            }
+            next.put(month, new Partition(month, fileName, part.size(), totalsOf(part)));
+        }
+        long nextMaxCompactId = Math.max(maxCompactId, rows.maxCompactId());
+        writeManifest(next, nextGeneration, nextMaxCompactId);
+        manifest = next;
+        generation = nextGeneration;
+        maxCompactId = nextMaxCompactId;
+        deleteUnreferenced(next);
+    }
+
+    /**
+     * 原分区的行加上追加的新行（ID已在原分区中的行跳过）
+     */
+    private TransactionStore merge(Partition previous, TransactionStore appended) throws IOException {
+        TransactionStore merged = new TransactionStore();
+        readRows(previous, merged, () -> { });
+        for (int row = 0; row < appended.rowCount(); row++) {
+            if (!appended.isDeleted(row) && merged.indexOf(appended.id(row)) < 0) {
+                merged.add(appended.get(row));
+            }
+        }
+        merged.vacuum();
+        return merged;
+    }
+
+    /**
+     * 按月份分组有效行的行号：先计数再填充，不使用装箱的行号列表
+     */
+    private static Map<YearMonth, int[]> rowsByMonth(TransactionStore rows) {
+        Map<YearMonth, int[]> counts = new HashMap<>();
+        YearMonth[] months = new YearMonth[rows.rowCount()];
+        for (int row = 0; row < rows.rowCount(); row++) {
+            if (!rows.isDeleted(row)) {
+                months[row] = YearMonth.from(LocalDate.ofEpochDay(rows.epochDay(row)));
+                counts.computeIfAbsent(months[row], m -> new int[1])[0]++;
+            }
+        }
+        Map<YearMonth, int[]> result = new TreeMap<>();
+        for (Map.Entry<YearMonth, int[]> entry : counts.entrySet()) {
+            result.put(entry.getKey(), new int[entry.getValue()[0]]);
+            entry.getValue()[0] = 0;
+        }
+        for (int row = 0; row < months.length; row++) {
+            if (months[row] != null) {
+                result.get(months[row])[counts.get(months[row])[0]++] = row;
+            }
+        }
+        return result;
+    }
+
+    private static List<Total> totalsOf(TransactionStore part) {
+        StringDictionary categories = part.categoryDictionary();
+        long[] cents = new long[categories.size() * 2];
+        int[] counts = new int[cents.length];
+        for (int row = 0; row < part.rowCount(); row++) {
+            int slot = part.categoryCode(row) * 2 + (part.isExpense(row) ? 1 : 0);
+            cents[slot] += part.amountCents(row);
+            counts[slot]++;
+        }
+        List<Total> totals = new ArrayList<>();
+        for (int slot = 0; slot < cents.length; slot++) {
+            if (counts[slot] > 0) {
+                totals.add(new Total(categories.decode(slot / 2), (slot & 1) != 0, cents[slot], counts[slot]));
+            }
+        }
+        return totals;
+    }
+
+    private void writeManifest(Map<YearMonth, Partition> partitions, long manifestGeneration,
+                               long manifestMaxCompactId) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append("generation,").append(manifestGeneration).append('\n');
+        text.append("maxid,").append(manifestMaxCompactId).append('\n');
+        for (Partition partition : partitions.values()) {
+            text.append("partition,").append(partition.month).append(',')
+                    .append(partition.fileName).append(',').append(partition.rows).append('\n');
+            for (Total total : partition.totals) {
+                text.append("total,").append(partition.month).append(',');
+                TransactionCsvCodec.appendField(text, total.category);
+                text.append(',').append(total.isExpense ? 'E' : 'I').append(',');
+                TransactionCsvCodec.appendCents(text, total.cents);
+                text.append(',').append(total.count).append('\n');
+            }
+        }
+        File tmp = new File(dir, MANIFEST_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(StandardCharsets.UTF_8.encode(text.toString()));
+            channel.force(true);
+        }
+        Files.move(tmp.toPath(), manifestFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readManifest() throws IOException {
+        Map<YearMonth, Partition> partitions = new TreeMap<>();
+        TransactionCsvCodec codec = new TransactionCsvCodec();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+            CharSequence record;
+            while ((record = codec.readRecord(reader)) != null) {
+                codec.nextRecord(record, 0, record.length());
+                if (codec.fieldCount() < 2) {
+                    continue;
+                }
+                switch (codec.string(0)) {
+                    case "generation":
+                        generation = Long.parseLong(codec.string(1));
+                        break;
+                    case "maxid":
+                        maxCompactId = Long.parseLong(codec.string(1));
+                        break;
+                    case "partition":
+                        YearMonth month = YearMonth.parse(codec.string(1));
+                        partitions.put(month, new Partition(month, codec.string(2),
+                                Integer.parseInt(codec.string(3)), new ArrayList<>()));
+                        break;
+                    case "total":
+                        Partition partition = partitions.get(YearMonth.parse(codec.string(1)));
+                        if (partition != null) {
+                            partition.totals.add(new Total(codec.string(2), "E".equals(codec.string(3)),
+                                    codec.cents(4), Integer.parseInt(codec.string(5))));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        manifest = partitions;
+    }
+
+    /**
+     * 删除清单不再引用的分区文件（被新代数替换的月份、已没有交易的月份），正在读取的文件等读取结束后再删除
+     */
+    private void deleteUnreferenced(Map<YearMonth, Partition> partitions) {
+        Set<String> referenced = new HashSet<>();
+        for (Partition partition : partitions.values()) {
+            referenced.add(partition.fileName);
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(PARTITION_SUFFIX) || name.endsWith(COLD_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        List<File> unused = new ArrayList<>();
+        synchronized (readers) {
+            for (File file : files) {
+                if (referenced.contains(file.getName())) {
+                    continue;
+                }
+                if (readers.containsKey(file.getName())) {
+                    retired.add(file.getName());
+                } else {
+                    unused.add(file);
+                }
+            }
+        }
+        for (File file : unused) {
+            delete(file);
+        }
+    }
+
+    private void delete(File file) {
+        blockCache.invalidate(file.getName());
+        synchronized (idFilters) {
+            idFilters.remove(file.getName());
+        }
+        if (!file.delete()) {
+            System.err.println("删除旧分区文件时出错: " + file);
+        }
+    }
+
+    private static final class Partition {
+        final YearMonth month;
+        final String fileName;
+        final int rows;
+        final List<Total> totals;
+
+        Partition(YearMonth month, String fileName, int rows, List<Total> totals) {
+            this.month = month;
+            this.fileName = fileName;
+            this.rows = rows;
+            this.totals = totals;
+        }
+    }
+
+    private static final class Total {
+        final String category;
+        final boolean isExpense;
+        final long cents;
+        final int count;
+
+        Total(String category, boolean isExpense, long cents, int count) {
+            this.category = category;
+            this.isExpense = isExpense;
+            this.cents = cents;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.financemanager.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 分页的续页标记
+ * 记录上一页最后一笔交易的（日期, ID）和查询条件的摘要，编码为 URL 安全的字符串。
+ * 下一页从这个位置之后继续，与之间发生的增删无关：不会重复返回，也不会跳过位置之后的交易
+ */
+final class PageToken {
+    private static final String VERSION = "p1";
+
+    final int epochDay;
+    final String id;
+    final int conditionsHash; // 查询条件（含排序方向）的摘要，防止把标记用于另一个查询
+
+    PageToken(int epochDay, String id, int conditionsHash) {
+        this.epochDay = epochDay;
+        this.id = id;
+        this.conditionsHash = conditionsHash;
+    }
+
+    String encode() {
+        String payload = VERSION + "," + epochDay + "," + Integer.toHexString(conditionsHash) + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析续页标记，格式不对或不属于该查询时抛出 IllegalArgumentException
+     */
+    static PageToken decode(String token, TransactionQuery query) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(",", 4);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的续页标记: " + token);
+        }
+        if (parts.length != 4 || !VERSION.equals(parts[0]) || parts[3].isEmpty()) {
+            throw new IllegalArgumentException("无效的续页标记: " + token);
+        }
+        PageToken decoded;
+        try {
+            decoded = new PageToken(Integer.parseInt(parts[1]), parts[3], Integer.parseUnsignedInt(parts[2], 16));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的续页标记: " + token);
+        }
+        if (decoded.conditionsHash != query.conditions().hashCode()) {
+            throw new IllegalArgumentException("续页标记不属于当前的查询条件");
+        }
+        return decoded;
+    }
+}
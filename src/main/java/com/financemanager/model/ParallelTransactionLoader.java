@@ -0,0 +1,247 @@
+package com.financemanager.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * 并行分块加载器
+ * 把交易文件按字节切成若干段，段边界对齐到记录末尾（引号字段内的换行不算记录末尾），
+ * 在ForkJoin线程池上并行解析各段，最后按原始顺序合并
+ */
+final class ParallelTransactionLoader {
+    private static final long MIN_CHUNK_BYTES = 1L << 20; // 每段至少1MB，小文件不值得拆分
+    private static final long MAX_CHUNK_BYTES = 1L << 30; // 每段至多1GB，整段读入一个byte数组
+    private static final int MAX_LOGGED_ERRORS = 20; // 最多打印的错误行数
+
+    private final ForkJoinPool pool;
+
+    ParallelTransactionLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 加载文件中的全部交易（跳过首行标题）
+     * @param file 交易数据文件
+     * @param sink 按文件顺序接收解析出的交易
+     * @return 加载结果统计
+     */
+    LoadResult load(File file, List<Transaction> sink) throws IOException {
+        long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = splitAtLines(channel, size);
+            if (bounds.length < 2) {
+                return new LoadResult(0, 0, System.currentTimeMillis() - start);
+            }
+            ChunkResult result = pool.invoke(new ChunkTask(channel, bounds, 0, bounds.length - 1, new AtomicInteger()));
+            sink.addAll(result.rows);
+            return new LoadResult(result.rows.size(), result.rejected, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 计算各段的起止偏移，每个边界都位于记录末尾的换行符之后；首段从标题行之后开始
+     *
+     * 引号字段中可能含有换行，因此先并行统计每个原始分段内的引号个数，
+     * 由前缀奇偶性得到每个切点处是否位于引号内，再从切点向后找第一个引号外的换行符。
+     * UTF-8 多字节字符的任何字节都不会等于引号或换行，可以直接按字节扫描
+     */
+    private long[] splitAtLines(FileChannel channel, long size) throws IOException {
+        long dataStart = nextRecordStart(channel, 0, size, false);
+        if (dataStart >= size) {
+            return new long[0];
+        }
+        long dataBytes = size - dataStart;
+        long wanted = Math.max(1, Math.min(dataBytes / MIN_CHUNK_BYTES, pool.getParallelism() * 4L));
+        int chunks = (int) Math.max(wanted, (dataBytes + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        long[] rawCuts = new long[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            rawCuts[i] = dataStart + dataBytes * i / chunks;
+        }
+        boolean[] inQuote = quoteStateAtCuts(channel, rawCuts);
+
+        long[] bounds = new long[chunks + 1];
+        bounds[0] = dataStart;
+        int count = 1;
+        for (int i = 1; i < chunks; i++) {
+            long cut = nextRecordStart(channel, rawCuts[i], size, inQuote[i]);
+            if (cut > bounds[count - 1] && cut < size) {
+                bounds[count++] = cut;
+            }
+        }
+        bounds[count++] = size;
+        long[] trimmed = new long[count];
+        System.arraycopy(bounds, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /**
+     * 计算每个原始切点处是否处于引号字段内（由之前所有分段引号个数的奇偶性决定）
+     */
+    private boolean[] quoteStateAtCuts(FileChannel channel, long[] rawCuts) {
+        int segments = rawCuts.length - 1;
+        boolean[] inQuote = new boolean[rawCuts.length];
+        if (segments <= 1) {
+            return inQuote;
+        }
+        long[] quoteCounts = pool.submit(() -> IntStream.range(0, segments)
+                .parallel()
+                .mapToLong(i -> countQuotes(channel, rawCuts[i], rawCuts[i + 1]))
+                .toArray()).join();
+        boolean odd = false;
+        for (int i = 0; i < segments; i++) {
+            inQuote[i] = odd;
+            odd ^= (quoteCounts[i] & 1) == 1;
+        }
+        inQuote[segments] = odd;
+        return inQuote;
+    }
+
+    private static long countQuotes(FileChannel channel, long start, long end) {
+        try {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            long count = 0;
+            for (int i = 0, n = mapped.limit(); i < n; i++) {
+                if (mapped.get(i) == '"') {
+                    count++;
+                }
+            }
+            return count;
+        } catch (IOException e) {
+            throw new IllegalStateException("读取交易文件分段时出错: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从position开始向后查找第一个位于引号外的换行符，返回下一条记录的起始偏移
+     * @param inQuote position处是否处于引号字段内
+     */
+    private long nextRecordStart(FileChannel channel, long position, long size, boolean inQuote) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long pos = position;
+        boolean quoted = inQuote;
+        while (pos < size) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * 单段解析结果
+     */
+    private static final class ChunkResult {
+        final List<Transaction> rows;
+        int rejected;
+
+        ChunkResult(List<Transaction> rows, int rejected) {
+            this.rows = rows;
+            this.rejected = rejected;
+        }
+    }
+
+    /**
+     * 二分拆分段区间，叶子节点解析单个段，合并时保持左右顺序
+     */
+    private static final class ChunkTask extends RecursiveTask<ChunkResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+        private final AtomicInteger loggedErrors;
+
+        ChunkTask(FileChannel channel, long[] bounds, int from, int to, AtomicInteger loggedErrors) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.loggedErrors = loggedErrors;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            if (to - from == 1) {
+                return parseChunk(bounds[from], bounds[to]);
+            }
+            int mid = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(channel, bounds, from, mid, loggedErrors);
+            ChunkTask right = new ChunkTask(channel, bounds, mid, to, loggedErrors);
+            left.fork();
+            ChunkResult rightResult = right.compute();
+            ChunkResult leftResult = left.join();
+            leftResult.rows.addAll(rightResult.rows);
+            leftResult.rejected += rightResult.rejected;
+            return leftResult;
+        }
+
+        private ChunkResult parseChunk(long start, long end) {
+            if (end - start > Integer.MAX_VALUE - 8) {
+                // 切点对齐到记录末尾后仍超过数组上限，说明存在异常长的引号字段
+                throw new IllegalStateException("交易文件分段过大: " + (end - start) + " 字节");
+            }
+            String text;
+            try {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                byte[] bytes = new byte[(int) (end - start)];
+                mapped.get(bytes);
+                text = new String(bytes, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalStateException("读取交易文件分段时出错: " + e.getMessage(), e);
+            }
+
+            TransactionCsvCodec codec = new TransactionCsvCodec();
+            List<Transaction> rows = new ArrayList<>();
+            int rejected = 0;
+            int recordStart = 0;
+            int length = text.length();
+            while (recordStart < length) {
+                int recordEnd = codec.nextRecord(text, recordStart, length);
+                if (!codec.isBlank()) {
+                    Transaction transaction = null;
+                    String error = "字段不足";
+                    try {
+                        transaction = codec.toTransaction();
+                    } catch (RuntimeException e) {
+                        error = e.getMessage();
+                    }
+                    if (transaction != null) {
+                        rows.add(transaction);
+                    } else {
+                        rejected++;
+                        if (loggedErrors.incrementAndGet() <= MAX_LOGGED_ERRORS) {
+                            System.err.println("加载行时出错: " + text.substring(recordStart, recordEnd).trim()
+                                    + ", 错误: " + error);
+                        }
+                    }
+                }
+                recordStart = recordEnd;
+            }
+            return new ChunkResult(rows, rejected);
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.financemanager.model;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * 交易查询的执行计划
+ * 先用月份×类别立方体中各月的笔数（含尚未加载的月份）找出可能有结果的月份，
+ * 再比较两种访问方式的代价：按日期索引只访问这些月份落在日期范围内的行，
+ * 或按行号顺序扫描全部行；其余条件按代价从低到高在同一次遍历中判断，只物化最终返回的交易。
+ * 按日期排序且限定了条数时，日期索引按结果顺序访问，取够 offset + limit 条即停止。
+ * 分页读取按月逐个取：从续页标记所在的日期起访问日期索引，同一天内按ID排序，代价与翻到第几页无关
+ *
+ * 计划在读锁（或写锁）下建立和执行，不在锁外保留
+ */
+final class QueryPlan {
+    private static final int INDEX_ROW_COST = 2; // 经日期索引访问一行的代价，相对于顺序扫描一行
+
+    private enum Access {
+        EMPTY, DATE_INDEX, FULL_SCAN
+    }
+
+    private final TransactionStore store;
+    private final TransactionQuery query;
+    private final int fromDay;
+    private final int toDay;
+    private final boolean[] categoryCodes; // null 表示不限
+    private final boolean[] paymentCodes; // null 表示不限
+    private final List<YearMonth> months = new ArrayList<>(); // 可能有结果的月份，升序
+    private final List<int[]> dayRanges = new ArrayList<>(); // 这些月份在日期范围内的连续区间 [from, to]，升序
+    private long candidateRows; // 立方体中类别和收支类型都符合的笔数
+    private long indexRows; // 经日期索引需要访问的行数（只含已加载的月份）
+    private final Access access;
+
+    private QueryPlan(TransactionStore store, TransactionQuery query, boolean estimate) {
+        this.store = store;
+        this.query = query;
+        this.fromDay = query.getStartDate() != null ? (int) query.getStartDate().toEpochDay() : Integer.MIN_VALUE;
+        this.toDay = query.getEndDate() != null ? (int) query.getEndDate().toEpochDay() : Integer.MAX_VALUE;
+        this.categoryCodes = codes(store.categoryDictionary(), query.getCategories());
+        this.paymentCodes = codes(store.paymentDictionary(), query.getPaymentMethods());
+        this.access = choose(estimate);
+    }
+
+    /**
+     * 按存储的当前状态建立计划（调用方持有锁）
+     */
+    static QueryPlan plan(TransactionStore store, TransactionQuery query) {
+        return new QueryPlan(store, query, true);
+    }
+
+    /**
+     * 分页读取用的计划：总是经日期索引访问，不估计代价（调用方持有锁）
+     */
+    static QueryPlan forPaging(TransactionStore store, TransactionQuery query) {
+        return new QueryPlan(store, query, false);
+    }
+
+    boolean isEmpty() {
+        return access == Access.EMPTY;
+    }
+
+    /**
+     * 可能有结果的第一个月份，需要先加载的范围从这里开始；没有结果时为null
+     */
+    YearMonth firstMonth() {
+        return months.isEmpty() ? null : months.get(0);
+    }
+
+    YearMonth lastMonth() {
+        return months.isEmpty() ? null : months.get(months.size() - 1);
+    }
+
+    private Access choose(boolean estimate) {
+        if (isNone(categoryCodes) || isNone(paymentCodes)) {
+            return Access.EMPTY;
+        }
+        YearMonth first = query.getStartDate() != null ? YearMonth.from(query.getStartDate()) : null;
+        YearMonth last = query.getEndDate() != null ? YearMonth.from(query.getEndDate()) : null;
+        MonthCategoryCube cube = store.cube();
+        for (YearMonth month : cube.months()) {
+            if ((first != null && month.isBefore(first)) || (last != null && month.isAfter(last))) {
+                continue;
+            }
+            long count = candidates(cube, month);
+            if (count > 0) {
+                months.add(month);
+                candidateRows += count;
+                addDayRange(month);
+            }
+        }
+        if (months.isEmpty()) {
+            return Access.EMPTY;
+        }
+        if (!estimate) {
+            return Access.DATE_INDEX;
+        }
+        for (int[] range : dayRanges) {
+            indexRows += store.countInRange(range[0], range[1]);
+        }
+        if (stopsEarly() || indexRows * INDEX_ROW_COST <= store.rowCount()) {
+            return Access.DATE_INDEX;
+        }
+        return Access.FULL_SCAN;
+    }
+
+    /**
+     * 立方体中某月类别和收支类型都符合的笔数
+     */
+    private long candidates(MonthCategoryCube cube, YearMonth month) {
+        long count = 0;
+        for (int flag = 0; flag < 2; flag++) {
+            boolean isExpense = flag == 1;
+            if (query.getExpense() != null && query.getExpense() != isExpense) {
+                continue;
+            }
+            if (categoryCodes == null) {
+                count += cube.count(month, -1, isExpense);
+            } else {
+                for (int code = 0; code < categoryCodes.length; code++) {
+                    if (categoryCodes[code]) {
+                        count += cube.count(month, code, isExpense);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 把月份与日期范围的交集并入日期区间，与上一个区间相邻时合并
+     */
+    private void addDayRange(YearMonth month) {
+        int from = Math.max(fromDay, (int) month.atDay(1).toEpochDay());
+        int to = Math.min(toDay, (int) month.atEndOfMonth().toEpochDay());
+        int[] previous = dayRanges.isEmpty() ? null : dayRanges.get(dayRanges.size() - 1);
+        if (previous != null && previous[1] + 1 == from) {
+            previous[1] = to;
+        } else {
+            dayRanges.add(new int[]{from, to});
+        }
+    }
+
+    /**
+     * 按日期排序且限定条数：按索引顺序访问时取够即可停止
+     */
+    private boolean stopsEarly() {
+        TransactionQuery.Order order = query.getOrder();
+        return query.getLimit() >= 0
+                && (order == TransactionQuery.Order.DATE_ASC || order == TransactionQuery.Order.DATE_DESC);
+    }
+
+    /**
+     * 执行计划，返回 offset 之后的最多 limit 条交易（调用方持有锁）
+     */
+    List<Transaction> execute() {
+        if (access == Access.EMPTY || query.getLimit() == 0) {
+            return new ArrayList<>();
+        }
+        RowList rows = new RowList();
+        boolean descending = query.getOrder() == TransactionQuery.Order.DATE_DESC;
+        if (access == Access.DATE_INDEX) {
+            long wanted = stopsEarly() ? (long) query.getOffset() + query.getLimit() : Long.MAX_VALUE;
+            for (int i = 0; i < dayRanges.size(); i++) {
+                int[] range = dayRanges.get(descending ? dayRanges.size() - 1 - i : i);
+                boolean finished = store.visitInRange(range[0], range[1], descending, row -> {
+                    if (matches(row)) {
+                        rows.add(row);
+                    }
+                    return rows.size < wanted;
+                });
+                if (!finished) {
+                    break;
+                }
+            }
+        } else {
+            for (int row = 0; row < store.rowCount(); row++) {
+                if (!store.isDeleted(row) && inDateRange(row) && matches(row)) {
+                    rows.add(row);
+                }
+            }
+            sortByDate(rows, descending);
+        }
+        TransactionQuery.Order order = query.getOrder();
+        if (order == TransactionQuery.Order.AMOUNT_ASC || order == TransactionQuery.Order.AMOUNT_DESC) {
+            sortByAmount(rows, order == TransactionQuery.Order.AMOUNT_DESC);
+        }
+
+        int from = Math.min(rows.size, query.getOffset());
+        int to = query.getLimit() < 0 ? rows.size : (int) Math.min(rows.size, (long) from + query.getLimit());
+        List<Transaction> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(store.get(rows.rows[i]));
+        }
+        return result;
+    }
+
+    /**
+     * 从 from 起（含，降序时向前）第一个可能有结果的月份，from 为 null 时从头开始；没有时返回null
+     */
+    YearMonth nextMonth(YearMonth from, boolean descending) {
+        for (int i = 0; i < months.size(); i++) {
+            YearMonth month = months.get(descending ? months.size() - 1 - i : i);
+            if (from == null || (descending ? !month.isAfter(from) : !month.isBefore(from))) {
+                return month;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按（日期, ID）的顺序取出某月中位于 after 之后的符合条件的交易，追加到 page，最多 room 条（调用方持有锁）
+     * 日期索引按天访问，只把符合条件的行按天暂存、按ID排序，不取出整月
+     */
+    void collectPage(YearMonth month, PageToken after, boolean descending, int room, List<Transaction> page) {
+        int from = Math.max(fromDay, (int) month.atDay(1).toEpochDay());
+        int to = Math.min(toDay, (int) month.atEndOfMonth().toEpochDay());
+        if (after != null) {
+            if (descending) {
+                to = Math.min(to, after.epochDay);
+            } else {
+                from = Math.max(from, after.epochDay);
+            }
+        }
+        if (access == Access.EMPTY || room <= 0 || from > to) {
+            return;
+        }
+        PageCollector collector = new PageCollector(after, descending, room, page);
+        if (store.visitInRange(from, to, descending, collector)) {
+            collector.flush();
+        }
+    }
+
+    private boolean inDateRange(int row) {
+        int day = store.epochDay(row);
+        return day >= fromDay && day <= toDay;
+    }
+
+    /**
+     * 日期以外的条件，按代价从低到高判断：位图、字典编码、金额，最后才比较描述字符串
+     */
+    private boolean matches(int row) {
+        if (query.getExpense() != null && store.isExpense(row) != query.getExpense()) {
+            return false;
+        }
+        if (categoryCodes != null && !categoryCodes[store.categoryCode(row)]) {
+            return false;
+        }
+        if (paymentCodes != null && !paymentCodes[store.paymentCode(row)]) {
+            return false;
+        }
+        long cents = store.amountCents(row);
+        if (cents < query.getMinAmountCents() || cents > query.getMaxAmountCents()) {
+            return false;
+        }
+        String text = query.getDescriptionContains();
+        return text == null || store.description(row).contains(text);
+    }
+
+    /**
+     * 按日期排序，同一天内按行号；键为 (日期 << 32 | 行号)
+     */
+    private void sortByDate(RowList rows, boolean descending) {
+        long[] keys = new long[rows.size];
+        for (int i = 0; i < rows.size; i++) {
+            keys[i] = ((long) store.epochDay(rows.rows[i]) << 32) | rows.rows[i];
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < rows.size; i++) {
+            rows.rows[descending ? rows.size - 1 - i : i] = (int) keys[i];
+        }
+    }
+
+    /**
+     * 按金额稳定排序（金额相同的保持原来的日期顺序）
+     * 金额的跨度足够小时把（金额, 原位置）拼成一个 long 排序，不装箱；否则退回比较器排序
+     */
+    private void sortByAmount(RowList rows, boolean descending) {
+        int count = rows.size;
+        if (count < 2) {
+            return;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            long cents = store.amountCents(rows.rows[i]);
+            min = Math.min(min, cents);
+            max = Math.max(max, cents);
+        }
+        int positionBits = 32 - Integer.numberOfLeadingZeros(count - 1);
+        long span = max - min;
+        if (span >= 0 && span < (1L << (63 - positionBits))) {
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                long cents = store.amountCents(rows.rows[i]);
+                keys[i] = ((descending ? max - cents : cents - min) << positionBits) | i;
+            }
+            Arrays.sort(keys);
+            int[] sorted = new int[count];
+            long mask = (1L << positionBits) - 1;
+            for (int i = 0; i < count; i++) {
+                sorted[i] = rows.rows[(int) (keys[i] & mask)];
+            }
+            System.arraycopy(sorted, 0, rows.rows, 0, count);
+        } else {
+            Integer[] boxed = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                boxed[i] = rows.rows[i];
+            }
+            Arrays.sort(boxed, (a, b) -> descending
+                    ? Long.compare(store.amountCents(b), store.amountCents(a))
+                    : Long.compare(store.amountCents(a), store.amountCents(b)));
+            for (int i = 0; i < count; i++) {
+                rows.rows[i] = boxed[i];
+            }
+        }
+    }
+
+    /**
+     * 在字典上比较（忽略大小写），逐行只比较编码；不限时返回null
+     */
+    private static boolean[] codes(StringDictionary dictionary, Set<String> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        boolean[] matches = new boolean[dictionary.size()];
+        for (int code = 0; code < matches.length; code++) {
+            for (String value : values) {
+                if (dictionary.decode(code).equalsIgnoreCase(value)) {
+                    matches[code] = true;
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static boolean isNone(boolean[] codes) {
+        if (codes == null) {
+            return false;
+        }
+        for (boolean match : codes) {
+            if (match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 计划的说明：访问方式、估计的行数和可能有结果的月份
+     */
+    @Override
+    public String toString() {
+        switch (access) {
+            case EMPTY:
+                return "无结果：没有月份包含符合类别、支付方式和收支类型的交易";
+            case DATE_INDEX:
+                return String.format("日期索引：%d个月份（%s ~ %s）、%d个区间，访问约%d行，其中类别和收支类型符合的%d行%s",
+                        months.size(), firstMonth(), lastMonth(), dayRanges.size(), indexRows, candidateRows,
+                        stopsEarly() ? "，取够" + ((long) query.getOffset() + query.getLimit()) + "条即停止" : "");
+            default:
+                return String.format("顺序扫描：%d行（日期索引需访问约%d行，代价更高），其中类别和收支类型符合的%d行",
+                        store.rowCount(), indexRows, candidateRows);
+        }
+    }
+
+    /**
+     * 按天收集符合条件的行，一天结束时按ID排序后追加到页中，页满时停止访问
+     */
+    private final class PageCollector implements IntPredicate {
+        private final PageToken after;
+        private final boolean descending;
+        private final int room;
+        private final List<Transaction> page;
+        private final RowList day = new RowList();
+        private final List<String> ids = new ArrayList<>();
+        private int currentDay;
+        private int added;
+
+        PageCollector(PageToken after, boolean descending, int room, List<Transaction> page) {
+            this.after = after;
+            this.descending = descending;
+            this.room = room;
+            this.page = page;
+        }
+
+        @Override
+        public boolean test(int row) {
+            int epochDay = store.epochDay(row);
+            if (day.size > 0 && epochDay != currentDay && !flush()) {
+                return false;
+            }
+            currentDay = epochDay;
+            if (matches(row)) {
+                day.add(row);
+                ids.add(store.id(row));
+            }
+            return true;
+        }
+
+        /**
+         * 追加暂存的一天，返回页是否还没满
+         */
+        boolean flush() {
+            int count = day.size;
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> descending ? ids.get(b).compareTo(ids.get(a)) : ids.get(a).compareTo(ids.get(b)));
+            boolean sameDay = after != null && after.epochDay == currentDay;
+            for (int i = 0; i < count && added < room; i++) {
+                String id = ids.get(order[i]);
+                if (sameDay && (descending ? id.compareTo(after.id) >= 0 : id.compareTo(after.id) <= 0)) {
+                    continue;
+                }
+                page.add(store.get(day.rows[order[i]]));
+                added++;
+            }
+            day.size = 0;
+            ids.clear();
+            return added < room;
+        }
+    }
+
+    /**
+     * 符合条件的行号
+     */
+    private static final class RowList {
+        private int[] rows = new int[64];
+        private int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.financemanager.model;
+
+/**
+ * 导入流水线中一个阶段的吞吐统计
+ * 忙碌时间是该阶段所有线程实际处理的时间之和；等待上游表示输入队列为空，等待下游表示输出队列已满。
+ * 忙碌占比最高、很少等待上游的阶段就是瓶颈
+ */
+public class StageMetrics {
+    private final String name;
+    private final int threads;
+    private final long items;
+    private final long busyNanos;
+    private final long waitInputNanos;
+    private final long waitOutputNanos;
+    private final long elapsedNanos;
+
+    public StageMetrics(String name, int threads, long items, long busyNanos,
+                        long waitInputNanos, long waitOutputNanos, long elapsedNanos) {
+        this.name = name;
+        this.threads = threads;
+        this.items = items;
+        this.busyNanos = busyNanos;
+        this.waitInputNanos = waitInputNanos;
+        this.waitOutputNanos = waitOutputNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * 处理的行数
+     */
+    public long getItems() {
+        return items;
+    }
+
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    public long getWaitInputNanos() {
+        return waitInputNanos;
+    }
+
+    public long getWaitOutputNanos() {
+        return waitOutputNanos;
+    }
+
+    /**
+     * 该阶段单独运行时的处理能力（行/秒）：行数除以每个线程平均的忙碌时间
+     */
+    public double getRowsPerSecond() {
+        return busyNanos == 0 ? 0 : items * 1e9 * threads / busyNanos;
+    }
+
+    /**
+     * 忙碌时间占导入总时长（乘以线程数）的比例
+     */
+    public double getUtilization() {
+        return elapsedNanos == 0 ? 0 : (double) busyNanos / ((double) elapsedNanos * threads);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d行，%.0f行/秒，忙碌%.0f%%，等待上游%.1fs，等待下游%.1fs",
+                name, items, getRowsPerSecond(), getUtilization() * 100,
+                waitInputNanos / 1e9, waitOutputNanos / 1e9);
+    }
+}
@@ -0,0 +1,77 @@
+package com.financemanager.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 字符串字典
+ * 把重复出现的字符串（类别、支付方式）映射为从0开始的连续短整型编码，
+ * 每个值只保存一份实例；编码一经分配不会改变，并随快照按原顺序持久化，重启后保持稳定
+ */
+public final class StringDictionary {
+    private final Map<String, Short> codes;
+    private String[] values;
+    private int size;
+
+    StringDictionary() {
+        this.codes = new HashMap<>();
+        this.values = new String[16];
+    }
+
+    private StringDictionary(StringDictionary other) {
+        this.codes = new HashMap<>(other.codes);
+        this.values = Arrays.copyOf(other.values, other.values.length);
+        this.size = other.size;
+    }
+
+    /**
+     * 返回字符串的编码，首次出现时分配新编码
+     */
+    short encode(String value) {
+        String key = value != null ? value : "";
+        Short code = codes.get(key);
+        if (code != null) {
+            return code;
+        }
+        if (size > Short.MAX_VALUE) {
+            throw new IllegalStateException("字典项过多: " + size);
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        short newCode = (short) size;
+        values[size++] = key;
+        codes.put(key, newCode);
+        return newCode;
+    }
+
+    /**
+     * 查询字符串的编码，不存在时返回-1
+     */
+    public int codeOf(String value) {
+        Short code = codes.get(value != null ? value : "");
+        return code != null ? code : -1;
+    }
+
+    /**
+     * 编码对应的字符串
+     */
+    public String decode(int code) {
+        return values[code];
+    }
+
+    /**
+     * 已分配的编码个数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 复制当前字典（之后对原字典的追加不影响副本）
+     */
+    StringDictionary copy() {
+        return new StringDictionary(this);
+    }
+}
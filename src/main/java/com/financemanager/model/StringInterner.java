@@ -0,0 +1,44 @@
+package com.financemanager.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 字符串驻留池
+ * 加载和导入时把重复出现的短字符串（如"早餐"、"地铁"等描述）替换为同一个实例，
+ * 过长的字符串通常不会重复，不进入池中；池的大小有上限，达到上限后不再收录新值
+ */
+final class StringInterner {
+    private static final int MAX_INTERN_LENGTH = 64;
+    private static final int MAX_POOL_SIZE = 1 << 20;
+
+    private final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+
+    /**
+     * 返回与 value 相等的共享实例
+     */
+    String intern(String value) {
+        if (value == null || value.length() > MAX_INTERN_LENGTH) {
+            return value;
+        }
+        String existing = pool.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (pool.size() >= MAX_POOL_SIZE) {
+            return value;
+        }
+        existing = pool.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * 清空池，已返回的实例不受影响
+     */
+    void clear() {
+        pool.clear();
+    }
+
+    int size() {
+        return pool.size();
+    }
+}
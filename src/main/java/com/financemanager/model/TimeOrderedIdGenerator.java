@@ -0,0 +1,43 @@
+package com.financemanager.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按时间排序的紧凑ID
+ * 63位整数：高44位为自2020-01-01起的毫秒数，低19位为同一毫秒内的序号；
+ * 写成13位 Crockford Base32 字符串（定长，字符串顺序与数值顺序一致，也就是创建顺序）。
+ * 同一毫秒内超过序号上限时借用下一毫秒，保证同一进程内严格递增；加载账本后从已有的最大ID之后继续，
+ * 时钟回拨到旧ID的时间之前也不会重复；
+ * 不使用 SecureRandom，批量导入时不会争用
+ */
+public final class TimeOrderedIdGenerator implements TransactionIdGenerator {
+    static final long EPOCH_MILLIS = 1577836800000L; // 2020-01-01T00:00:00Z
+    static final int SEQUENCE_BITS = 19;
+
+    private final AtomicLong last = new AtomicLong();
+
+    @Override
+    public String nextId() {
+        return TransactionIds.formatCompact(nextValue());
+    }
+
+    long nextValue() {
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        return last.updateAndGet(previous -> Math.max(previous + 1, now));
+    }
+
+    /**
+     * 之后生成的ID都大于给定的值：加载账本时传入已有的最大紧凑ID，系统时钟回拨后也不会生成重复的ID
+     */
+    void advancePast(long value) {
+        last.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * 本生成器格式的ID的创建时间（毫秒），其他格式的ID返回-1
+     */
+    public static long createdAtMillis(String id) {
+        long value = TransactionIds.parseCompact(id);
+        return value < 0 ? -1 : (value >>> SEQUENCE_BITS) + EPOCH_MILLIS;
+    }
+}
@@ -1,115 +1,214 @@
 package com.financemanager.model;
 
 import java.time.LocalDate;
-import java.util.UUID;
 
 /**
  * 交易记录类
  * 表示用户的一笔财务交易，包含金额、日期、类别、描述等信息
+ * 金额以分为单位的 long 保存，求和没有浮点误差；以元为单位的 double 读取方法保留用于兼容
+ *
+ * 交易记录是不可变的：修改通过 withXxx 方法得到ID相同的新对象，再交给 TransactionManager 替换；
+ * 已交给索引、缓存或快照的对象不会再被改变，可以不加拷贝地共享
  */
-public class Transaction {
-    private String id;
-    private double amount;
-    private LocalDate date;
-    private String category;
-    private String description;
-    private boolean isExpense; // true表示支出，false表示收入
-    private String paymentMethod; // 支付方式（现金、信用卡、微信、支付宝等）
-    
+public final class Transaction {
+    private static volatile TransactionIdGenerator idGenerator = new TimeOrderedIdGenerator();
+
+    private final String id;
+    private final long amountCents; // 金额，单位为分
+    private final LocalDate date;
+    private final String category;
+    private final String description;
+    private final boolean isExpense; // true表示支出，false表示收入
+    private final String paymentMethod; // 支付方式（现金、信用卡、微信、支付宝等）
+    private final int categoryCode; // 类别在交易管理器字典中的编码，-1表示未知
+
     /**
      * 构造函数
      */
     public Transaction(double amount, LocalDate date, String category, String description, boolean isExpense, String paymentMethod) {
-        if (date == null) {
-            throw new IllegalArgumentException("日期不能为空");
-        }
-        if (category == null || category.trim().isEmpty()) {
-            throw new IllegalArgumentException("类别不能为空");
-        }
-        if (paymentMethod == null || paymentMethod.trim().isEmpty()) {
-            throw new IllegalArgumentException("支付方式不能为空");
-        }
-        
-        this.id = UUID.randomUUID().toString(); // 生成唯一ID
-        this.amount = amount;
-        this.date = date;
-        this.category = category;
-        this.description = description != null ? description : "";
-        this.isExpense = isExpense;
-        this.paymentMethod = paymentMethod;
+        this(idGenerator.nextId(), toCents(amount), requireDate(date), requireText(category, "类别不能为空"),
+                orEmpty(description), isExpense, requireText(paymentMethod, "支付方式不能为空"), -1);
     }
-    
+
     /**
-     * 用于从存储数据恢复的构造函数
+     * 用于从存储数据恢复的构造函数，不做校验（写入交易管理器时校验ID和日期）
      */
     public Transaction(String id, double amount, LocalDate date, String category, String description, boolean isExpense, String paymentMethod) {
+        this(id, toCents(amount), date, category, description, isExpense, paymentMethod, -1);
+    }
+
+    /**
+     * 以分为单位新建交易（校验规则与以元为单位的构造函数相同）
+     */
+    public static Transaction ofCents(long amountCents, LocalDate date, String category, String description, boolean isExpense, String paymentMethod) {
+        return validated(idGenerator.nextId(), amountCents, date, category, description, isExpense, paymentMethod);
+    }
+
+    /**
+     * 校验日期、类别和支付方式后新建交易，描述为null时取空串
+     */
+    private static Transaction validated(String id, long amountCents, LocalDate date, String category, String description,
+                                         boolean isExpense, String paymentMethod) {
+        return new Transaction(id, amountCents, requireDate(date), requireText(category, "类别不能为空"),
+                orEmpty(description), isExpense, requireText(paymentMethod, "支付方式不能为空"), -1);
+    }
+
+    /**
+     * 以分为单位从存储数据恢复交易，不做校验（写入存储时由 TransactionStore 校验ID和日期）
+     */
+    static Transaction restore(String id, long amountCents, LocalDate date, String category, String description, boolean isExpense, String paymentMethod) {
+        return new Transaction(id, amountCents, date, category, description, isExpense, paymentMethod, -1);
+    }
+
+    /**
+     * 由交易管理器物化，同时带上类别的字典编码
+     */
+    static Transaction restore(String id, long amountCents, LocalDate date, String category, String description,
+                               boolean isExpense, String paymentMethod, int categoryCode) {
+        return new Transaction(id, amountCents, date, category, description, isExpense, paymentMethod, categoryCode);
+    }
+
+    private Transaction(String id, long amountCents, LocalDate date, String category, String description,
+                        boolean isExpense, String paymentMethod, int categoryCode) {
         this.id = id;
-        this.amount = amount;
+        this.amountCents = amountCents;
         this.date = date;
         this.category = category;
         this.description = description;
         this.isExpense = isExpense;
         this.paymentMethod = paymentMethod;
+        this.categoryCode = categoryCode;
+    }
+
+    private static LocalDate requireDate(LocalDate date) {
+        if (date == null) {
+            throw new IllegalArgumentException("日期不能为空");
+        }
+        return date;
+    }
+
+    private static String orEmpty(String description) {
+        return description != null ? description : "";
+    }
+
+    private static String requireText(String value, String message) {
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException(message);
+        }
+        return value;
+    }
+
+    /**
+     * 替换新建交易时使用的ID生成器（默认按时间排序的紧凑ID）；已有交易的ID不变
+     */
+    public static void setIdGenerator(TransactionIdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("ID生成器不能为空");
+        }
+        idGenerator = generator;
     }
-    
-    // Getters and Setters
+
+    /**
+     * 账本加载后传入已有交易中最大的紧凑ID，按时间排序的生成器之后只生成比它大的ID
+     */
+    static void seedIdGenerator(long maxCompactId) {
+        TransactionIdGenerator generator = idGenerator;
+        if (generator instanceof TimeOrderedIdGenerator) {
+            ((TimeOrderedIdGenerator) generator).advancePast(maxCompactId);
+        }
+    }
+
+    // Getters
     public String getId() {
         return id;
     }
 
+    /**
+     * 金额（元），由分换算而来
+     */
     public double getAmount() {
-        return amount;
+        return amountCents / 100.0;
+    }
+
+    /**
+     * 金额（分）
+     */
+    public long getAmountCents() {
+        return amountCents;
     }
 
-    public void setAmount(double amount) {
-        this.amount = amount;
+    /**
+     * 元换算为分，四舍五入
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
     }
 
     public LocalDate getDate() {
         return date;
     }
 
-    public void setDate(LocalDate date) {
-        this.date = date;
-    }
-
     public String getCategory() {
         return category;
     }
 
-    public void setCategory(String category) {
-        this.category = category;
+    /**
+     * 类别的字典编码（由交易管理器物化时填入），同一管理器内相同类别编码相同；未知时返回-1
+     */
+    public int getCategoryCode() {
+        return categoryCode;
     }
 
     public String getDescription() {
         return description;
     }
 
-    public void setDescription(String description) {
-        this.description = description;
-    }
-
     public boolean isExpense() {
         return isExpense;
     }
 
-    public void setExpense(boolean expense) {
-        isExpense = expense;
-    }
-
     public String getPaymentMethod() {
         return paymentMethod;
     }
 
-    public void setPaymentMethod(String paymentMethod) {
-        this.paymentMethod = paymentMethod;
+    // 复制修改：返回ID相同、只改变一个字段的新交易记录
+
+    /**
+     * 修改金额（元），四舍五入到分
+     */
+    public Transaction withAmount(double amount) {
+        return withAmountCents(toCents(amount));
+    }
+
+    public Transaction withAmountCents(long amountCents) {
+        return new Transaction(id, amountCents, date, category, description, isExpense, paymentMethod, categoryCode);
     }
-    
+
+    public Transaction withDate(LocalDate date) {
+        return new Transaction(id, amountCents, requireDate(date), category, description, isExpense, paymentMethod, categoryCode);
+    }
+
+    public Transaction withCategory(String category) {
+        return new Transaction(id, amountCents, date, requireText(category, "类别不能为空"), description, isExpense, paymentMethod, -1);
+    }
+
+    public Transaction withDescription(String description) {
+        return new Transaction(id, amountCents, date, category, orEmpty(description), isExpense, paymentMethod, categoryCode);
+    }
+
+    public Transaction withExpense(boolean isExpense) {
+        return new Transaction(id, amountCents, date, category, description, isExpense, paymentMethod, categoryCode);
+    }
+
+    public Transaction withPaymentMethod(String paymentMethod) {
+        return new Transaction(id, amountCents, date, category, description, isExpense, requireText(paymentMethod, "支付方式不能为空"), categoryCode);
+    }
+
     @Override
     public String toString() {
         return "Transaction{" +
                 "id='" + id + '\'' +
-                ", amount=" + amount +
+                ", amount=" + getAmount() +
                 ", date=" + date +
                 ", category='" + category + '\'' +
                 ", description='" + description + '\'' +
@@ -117,4 +216,4 @@ public class Transaction {
                 ", paymentMethod='" + paymentMethod + '\'' +
                 '}';
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+package com.financemanager.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量修改
+ * 在 TransactionManager.batch 的回调中收集新增、更新、删除操作，回调结束后
+ * 先整体校验，再在一次写锁内按顺序应用，并只写一次日志（一次刷新）
+ */
+public final class TransactionBatch {
+    /**
+     * 一条待应用的操作，操作类型与日志记录相同
+     */
+    static final class Op {
+        final char type;
+        final Transaction transaction; // 删除时为null
+        final String id;
+
+        Op(char type, Transaction transaction, String id) {
+            this.type = type;
+            this.transaction = transaction;
+            this.id = id;
+        }
+    }
+
+    private final List<Op> ops = new ArrayList<>();
+
+    TransactionBatch() {
+    }
+
+    /**
+     * 新增交易记录
+     */
+    public TransactionBatch add(Transaction transaction) {
+        ops.add(new Op(TransactionJournal.OP_ADD, transaction, transaction != null ? transaction.getId() : null));
+        return this;
+    }
+
+    /**
+     * 按ID更新交易记录，ID不存在时忽略
+     */
+    public TransactionBatch update(Transaction transaction) {
+        ops.add(new Op(TransactionJournal.OP_UPDATE, transaction, transaction != null ? transaction.getId() : null));
+        return this;
+    }
+
+    /**
+     * 按ID删除交易记录，ID不存在时忽略
+     */
+    public TransactionBatch remove(String id) {
+        ops.add(new Op(TransactionJournal.OP_DELETE, null, id));
+        return this;
+    }
+
+    /**
+     * 已收集的操作数
+     */
+    public int size() {
+        return ops.size();
+    }
+
+    List<Op> ops() {
+        return Collections.unmodifiableList(ops);
+    }
+
+    /**
+     * 应用前整体校验，任何一条不合法时整批都不应用
+     */
+    void validate() {
+        for (int i = 0; i < ops.size(); i++) {
+            Op op = ops.get(i);
+            if (op.id == null) {
+                throw new IllegalArgumentException("第" + (i + 1) + "条操作缺少交易记录或ID");
+            }
+            String missing = op.transaction != null ? missingField(op.transaction) : null;
+            if (missing != null) {
+                throw new IllegalArgumentException("第" + (i + 1) + "条操作的交易缺少" + missing + ": " + op.id);
+            }
+        }
+    }
+
+    /**
+     * 写入存储前校验单条交易记录
+     * @throws IllegalArgumentException 交易记录为null，或缺少ID、日期
+     */
+    static void validate(Transaction transaction) {
+        if (transaction == null) {
+            throw new IllegalArgumentException("缺少交易记录");
+        }
+        String missing = missingField(transaction);
+        if (missing != null) {
+            throw new IllegalArgumentException("交易缺少" + missing + ": " + transaction.getId());
+        }
+    }
+
+    /**
+     * 存储必需而交易记录缺少的字段，都有时返回null
+     */
+    private static String missingField(Transaction transaction) {
+        if (transaction.getId() == null) {
+            return "ID";
+        }
+        return transaction.getDate() == null ? "日期" : null;
+    }
+}
@@ -0,0 +1,417 @@
+package com.financemanager.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * 交易CSV编解码器
+ * 按 RFC 4180 解析和写出交易数据行（支持引号字段、字段内的逗号、引号和换行），
+ * 直接从字符缓冲区解析 yyyy-MM-dd 日期和定点金额，不经过 split、Double.parseDouble
+ * 或 DateTimeFormatter，所有缓冲区在记录之间复用
+ *
+ * 实例不是线程安全的，每个线程使用自己的实例
+ *
+ * 数据文件列顺序：id,amount,date,category,description,isExpense,paymentMethod
+ */
+final class TransactionCsvCodec {
+    static final String HEADER = "id,amount,date,category,description,isExpense,paymentMethod";
+    static final int ROW_FIELDS = 7;
+
+    private CharSequence source;
+    private int fieldCount;
+    private int[] fieldStart = new int[8];
+    private int[] fieldEnd = new int[8];
+    private boolean[] fieldQuoted = new boolean[8];
+    private final StringBuilder unescaped = new StringBuilder(64); // 引号字段去转义后的内容
+    private final StringBuilder record = new StringBuilder(128); // 读取记录的复用缓冲
+    private BufferedReader input; // 预读缓冲对应的 reader
+    private final char[] inputBuf = new char[8192];
+    private int inputPos;
+    private int inputLen;
+
+    // ---------------------------------------------------------------- 解析
+
+    /**
+     * 从 text 的 start 位置解析一条记录，字段保存在内部表中
+     * @param limit 解析上界（不含）
+     * @return 记录结束之后的位置（已跳过行尾的 \r\n 或 \n）
+     */
+    int nextRecord(CharSequence text, int start, int limit) {
+        source = text;
+        fieldCount = 0;
+        unescaped.setLength(0);
+        int pos = start;
+        while (true) {
+            ensureFieldCapacity();
+            if (pos < limit && text.charAt(pos) == '"') {
+                // 引号字段："" 表示一个引号，字段内可以出现逗号和换行
+                int from = unescaped.length();
+                pos++;
+                while (pos < limit) {
+                    char c = text.charAt(pos++);
+                    if (c == '"') {
+                        if (pos < limit && text.charAt(pos) == '"') {
+                            unescaped.append('"');
+                            pos++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        unescaped.append(c);
+                    }
+                }
+                // 容错：闭合引号之后到分隔符之前的字符原样保留
+                while (pos < limit) {
+                    char c = text.charAt(pos);
+                    if (c == ',' || c == '\n' || c == '\r') {
+                        break;
+                    }
+                    unescaped.append(c);
+                    pos++;
+                }
+                fieldStart[fieldCount] = from;
+                fieldEnd[fieldCount] = unescaped.length();
+                fieldQuoted[fieldCount] = true;
+            } else {
+                int from = pos;
+                while (pos < limit) {
+                    char c = text.charAt(pos);
+                    if (c == ',' || c == '\n' || c == '\r') {
+                        break;
+                    }
+                    pos++;
+                }
+                fieldStart[fieldCount] = from;
+                fieldEnd[fieldCount] = pos;
+                fieldQuoted[fieldCount] = false;
+            }
+            fieldCount++;
+
+            if (pos >= limit) {
+                return limit;
+            }
+            char c = text.charAt(pos);
+            if (c == ',') {
+                pos++;
+                continue;
+            }
+            // 行尾
+            if (c == '\r') {
+                pos++;
+            }
+            if (pos < limit && text.charAt(pos) == '\n') {
+                pos++;
+            }
+            return pos;
+        }
+    }
+
+    /**
+     * 从 reader 读取一条完整记录，到达末尾时返回null
+     * 引号外的 \r\n、\n 或单独的 \r 结束记录（不包含在返回值中），引号内的换行原样保留，
+     * 这样字段里的 \r\n 写出再读回仍是 \r\n
+     * 返回的对象是内部复用的缓冲区，在下一次调用前有效；读取时会预读，同一个 reader 只能通过本方法读取
+     */
+    CharSequence readRecord(BufferedReader reader) throws IOException {
+        if (reader != input) {
+            input = reader;
+            inputPos = 0;
+            inputLen = 0;
+        }
+        record.setLength(0);
+        boolean quoted = false;
+        boolean any = false;
+        while (true) {
+            if (inputPos == inputLen && !fill()) {
+                return any ? record : null;
+            }
+            any = true;
+            char c = inputBuf[inputPos++];
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && (c == '\n' || c == '\r')) {
+                if (c == '\r' && (inputPos < inputLen || fill()) && inputBuf[inputPos] == '\n') {
+                    inputPos++;
+                }
+                return record;
+            }
+            record.append(c);
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int n = input.read(inputBuf, 0, inputBuf.length);
+        inputPos = 0;
+        inputLen = Math.max(n, 0);
+        return n > 0;
+    }
+
+    private void ensureFieldCapacity() {
+        if (fieldCount == fieldStart.length) {
+            int size = fieldStart.length * 2;
+            fieldStart = Arrays.copyOf(fieldStart, size);
+            fieldEnd = Arrays.copyOf(fieldEnd, size);
+            fieldQuoted = Arrays.copyOf(fieldQuoted, size);
+        }
+    }
+
+    /**
+     * 上一条记录的字段数
+     */
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * 上一条记录是否为空行
+     */
+    boolean isBlank() {
+        return fieldCount == 1 && fieldStart[0] == fieldEnd[0];
+    }
+
+    private CharSequence fieldSource(int i) {
+        return fieldQuoted[i] ? unescaped : source;
+    }
+
+    /**
+     * 第 i 个字段的字符串值
+     */
+    String string(int i) {
+        return fieldSource(i).subSequence(fieldStart[i], fieldEnd[i]).toString();
+    }
+
+    /**
+     * 第 i 个字段按金额解析为分（定点，第三位小数按绝对值四舍五入，-0.005 为 -1 分）
+     * 支持可选的正负号、千分位以外的普通小数；科学计数法等少见写法回退到 BigDecimal，舍入方式相同
+     */
+    long cents(int i) {
+        CharSequence s = fieldSource(i);
+        int pos = fieldStart[i];
+        int end = fieldEnd[i];
+        while (pos < end && s.charAt(pos) == ' ') {
+            pos++;
+        }
+        while (end > pos && s.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (pos == end) {
+            throw new NumberFormatException("金额为空");
+        }
+        boolean negative = false;
+        char first = s.charAt(pos);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            pos++;
+        }
+        long units = 0;
+        int digits = 0;
+        int p = pos;
+        while (p < end) {
+            char c = s.charAt(p);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (++digits > 16) {
+                return slowCents(i);
+            }
+            units = units * 10 + (c - '0');
+            p++;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (p < end && s.charAt(p) == '.') {
+            p++;
+            while (p < end) {
+                char c = s.charAt(p);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + (c - '0');
+                } else if (fractionDigits == 2) {
+                    roundUp = c >= '5';
+                }
+                fractionDigits++;
+                digits++;
+                p++;
+            }
+        }
+        if (p != end || digits == 0) {
+            return slowCents(i);
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+        long value = units * 100 + fraction + (roundUp ? 1 : 0);
+        return negative ? -value : value;
+    }
+
+    private long slowCents(int i) {
+        String text = string(i).trim();
+        try {
+            return new BigDecimal(text).setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("金额超出范围: " + text);
+        }
+    }
+
+    /**
+     * 第 i 个字段按 yyyy-MM-dd 解析为日期
+     */
+    LocalDate date(int i) {
+        CharSequence s = fieldSource(i);
+        int p = fieldStart[i];
+        if (fieldEnd[i] - p != 10 || s.charAt(p + 4) != '-' || s.charAt(p + 7) != '-') {
+            throw new IllegalArgumentException("日期格式应为yyyy-MM-dd: " + string(i));
+        }
+        int year = digits(s, p, 4);
+        int month = digits(s, p + 5, 2);
+        int day = digits(s, p + 8, 2);
+        if (year < 0 || month < 0 || day < 0) {
+            throw new IllegalArgumentException("日期格式应为yyyy-MM-dd: " + string(i));
+        }
+        return LocalDate.of(year, month, day); // 非法的月、日由 LocalDate 校验
+    }
+
+    private static int digits(CharSequence s, int from, int count) {
+        int value = 0;
+        for (int k = from; k < from + count; k++) {
+            char c = s.charAt(k);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 第 i 个字段按布尔值解析（与 Boolean.parseBoolean 相同：仅忽略大小写的 "true" 为真）
+     */
+    boolean bool(int i) {
+        CharSequence s = fieldSource(i);
+        int p = fieldStart[i];
+        if (fieldEnd[i] - p != 4) {
+            return false;
+        }
+        return (s.charAt(p) | 0x20) == 't' && (s.charAt(p + 1) | 0x20) == 'r'
+                && (s.charAt(p + 2) | 0x20) == 'u' && (s.charAt(p + 3) | 0x20) == 'e';
+    }
+
+    /**
+     * 把上一条记录按数据文件布局转换为交易记录，字段不足时返回null
+     */
+    Transaction toTransaction() {
+        return toTransaction(0);
+    }
+
+    /**
+     * 从第 offset 个字段开始按数据文件布局转换（日志记录的首字段是操作类型）
+     */
+    Transaction toTransaction(int offset) {
+        if (fieldCount - offset < ROW_FIELDS) {
+            return null;
+        }
+        return Transaction.restore(
+                string(offset),
+                cents(offset + 1),
+                date(offset + 2),
+                string(offset + 3),
+                string(offset + 4),
+                bool(offset + 5),
+                string(offset + 6));
+    }
+
+    // ---------------------------------------------------------------- 写出
+
+    /**
+     * 把交易按数据文件布局追加到 sb（不含换行）
+     */
+    void appendRow(StringBuilder sb, Transaction t) {
+        appendField(sb, t.getId());
+        sb.append(',');
+        appendCents(sb, t.getAmountCents());
+        sb.append(',');
+        appendDate(sb, t.getDate());
+        sb.append(',');
+        appendField(sb, t.getCategory());
+        sb.append(',');
+        appendField(sb, t.getDescription());
+        sb.append(',');
+        sb.append(t.isExpense());
+        sb.append(',');
+        appendField(sb, t.getPaymentMethod());
+    }
+
+    /**
+     * 以两位小数写出金额（分）
+     */
+    static void appendCents(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+            cents = -cents;
+        }
+        sb.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    /**
+     * 以 yyyy-MM-dd 写出日期
+     */
+    static void appendDate(StringBuilder sb, LocalDate date) {
+        int year = date.getYear();
+        if (year >= 0 && year < 1000) {
+            sb.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+        }
+        sb.append(year).append('-');
+        int month = date.getMonthValue();
+        if (month < 10) {
+            sb.append('0');
+        }
+        sb.append(month).append('-');
+        int day = date.getDayOfMonth();
+        if (day < 10) {
+            sb.append('0');
+        }
+        sb.append(day);
+    }
+
+    /**
+     * 写出一个字段：包含逗号、引号或换行时用引号包围并把内部引号写成两个
+     */
+    static void appendField(StringBuilder sb, String field) {
+        if (field == null) {
+            return;
+        }
+        boolean needsQuote = false;
+        for (int k = 0, n = field.length(); k < n; k++) {
+            char c = field.charAt(k);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                needsQuote = true;
+                break;
+            }
+        }
+        if (!needsQuote) {
+            sb.append(field);
+            return;
+        }
+        sb.append('"');
+        for (int k = 0, n = field.length(); k < n; k++) {
+            char c = field.charAt(k);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
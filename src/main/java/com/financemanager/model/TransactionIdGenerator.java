@@ -0,0 +1,12 @@
+package com.financemanager.model;
+
+/**
+ * 交易ID生成器
+ * 新建交易时调用，返回的ID在账本中必须唯一；可以通过 Transaction.setIdGenerator 替换
+ */
+public interface TransactionIdGenerator {
+    /**
+     * 生成下一个ID，可能被多个线程同时调用
+     */
+    String nextId();
+}
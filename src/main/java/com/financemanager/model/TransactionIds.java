@@ -0,0 +1,108 @@
+package com.financemanager.model;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * 交易ID的二进制形式
+ * 紧凑ID（TimeOrderedIdGenerator 生成的13位 Base32）为一个非负 long；
+ * 旧版的 UUID 字符串（小写、带连字符的标准形式）为两个 long；
+ * 其他字符串无法转换，按原样保存。转换是可逆的：还原出的字符串与原字符串完全相同
+ */
+final class TransactionIds {
+    static final byte TEXT = 0;
+    static final byte COMPACT = 1;
+    static final byte UUID_KIND = 2;
+
+    static final int COMPACT_LENGTH = 13;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private TransactionIds() {
+    }
+
+    static byte kindOf(String id) {
+        if (id == null) {
+            return TEXT;
+        }
+        if (parseCompact(id) >= 0) {
+            return COMPACT;
+        }
+        return isUuid(id) ? UUID_KIND : TEXT;
+    }
+
+    static String formatCompact(long value) {
+        char[] chars = new char[COMPACT_LENGTH];
+        for (int i = COMPACT_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 解析紧凑ID，不是标准形式时返回-1
+     */
+    static long parseCompact(String id) {
+        if (id == null || id.length() != COMPACT_LENGTH) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < COMPACT_LENGTH; i++) {
+            char c = id.charAt(i);
+            int digit = c < 128 ? DECODE[c] : -1;
+            if (digit < 0 || (i == 0 && digit > 7)) { // 13位共65位，首位只用3位
+                return -1;
+            }
+            value = (value << 5) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * 是否为小写、带连字符的标准 UUID 字符串
+     */
+    static boolean isUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static long uuidHigh(String id) {
+        return (hex(id, 0, 8) << 32) | (hex(id, 9, 13) << 16) | hex(id, 14, 18);
+    }
+
+    static long uuidLow(String id) {
+        return (hex(id, 19, 23) << 48) | hex(id, 24, 36);
+    }
+
+    static String formatUuid(long high, long low) {
+        return new UUID(high, low).toString();
+    }
+
+    private static long hex(String s, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = (value << 4) | Character.digit(s.charAt(i), 16);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,213 @@
+package com.financemanager.model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * 交易预写日志（追加式）
+ * 每次增、改、删只向日志末尾追加一条记录，启动时在快照之上按顺序重放
+ *
+ * 每条记录本身是一条 CSV 记录，首字段为操作类型：
+ * A,&lt;交易行&gt;  新增
+ * U,&lt;交易行&gt;  更新
+ * D,&lt;交易ID&gt;  删除
+ *
+ * 压缩时当前日志被原子地重命名为 *.compacting，新记录写入新的日志文件；
+ * 快照写完后再删除 *.compacting，期间崩溃时两段日志都会被重放
+ */
+final class TransactionJournal implements Closeable {
+    /**
+     * 日志重放目标
+     */
+    interface ReplayTarget {
+        /** 新增记录：按ID插入或覆盖（压缩后重放时记录可能已在快照中） */
+        void upsert(Transaction t);
+
+        /** 更新记录：按ID覆盖 */
+        void update(Transaction t);
+
+        /** 按ID删除，不存在时忽略 */
+        void delete(String id);
+    }
+
+    static final char OP_ADD = 'A';
+    static final char OP_UPDATE = 'U';
+    static final char OP_DELETE = 'D';
+
+    private final File file;
+    private final File rotatedFile;
+    private final TransactionCsvCodec codec = new TransactionCsvCodec();
+    private final StringBuilder line = new StringBuilder(128);
+    private Writer writer;
+    private volatile long firstAppendMillis; // 当前日志中第一条记录的写入时间，0表示日志为空
+
+    TransactionJournal(File file) {
+        this.file = file;
+        this.rotatedFile = new File(file.getPath() + ".compacting");
+        if (file.length() > 0) {
+            firstAppendMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 一次性追加一批增、改、删记录，只刷新一次，写入代价只与变更大小有关
+     */
+    void appendAll(List<TransactionBatch.Op> ops) throws IOException {
+        if (ops.isEmpty()) {
+            return;
+        }
+        Writer out = openWriter();
+        for (TransactionBatch.Op op : ops) {
+            if (op.type == OP_DELETE) {
+                writeDelete(out, op.id);
+            } else {
+                writeRecord(out, op.type, op.transaction);
+            }
+        }
+        out.flush();
+    }
+
+    private void writeRecord(Writer out, char op, Transaction t) throws IOException {
+        line.setLength(0);
+        line.append(op).append(',');
+        codec.appendRow(line, t);
+        writeLine(out);
+    }
+
+    private void writeDelete(Writer out, String id) throws IOException {
+        line.setLength(0);
+        line.append(OP_DELETE).append(',');
+        TransactionCsvCodec.appendField(line, id);
+        writeLine(out);
+    }
+
+    private void writeLine(Writer out) throws IOException {
+        if (firstAppendMillis == 0) {
+            firstAppendMillis = System.currentTimeMillis();
+        }
+        line.append('\n');
+        out.append(line);
+    }
+
+    private Writer openWriter() throws IOException {
+        if (writer == null) {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        }
+        return writer;
+    }
+
+    /**
+     * 将日志按顺序重放到目标上
+     * 新增和更新按ID覆盖，删除按ID移除，因此重复重放同一段日志是幂等的
+     * @return 成功重放的记录数
+     */
+    int replay(ReplayTarget target) {
+        // 先重放上次未完成压缩遗留的旧日志，再重放当前日志
+        return replayFile(rotatedFile, target) + replayFile(file, target);
+    }
+
+    private int replayFile(File source, ReplayTarget target) {
+        if (!source.exists()) {
+            return 0;
+        }
+        TransactionCsvCodec reader = new TransactionCsvCodec();
+        int applied = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(source), StandardCharsets.UTF_8))) {
+            CharSequence record;
+            while ((record = reader.readRecord(in)) != null) {
+                reader.nextRecord(record, 0, record.length());
+                if (reader.fieldCount() < 2 || record.length() < 2 || record.charAt(1) != ',') {
+                    continue; // 崩溃时可能残留的半行，忽略
+                }
+                try {
+                    switch (record.charAt(0)) {
+                        case OP_ADD:
+                        case OP_UPDATE:
+                            Transaction t = reader.toTransaction(1);
+                            if (t != null) {
+                                if (record.charAt(0) == OP_ADD) {
+                                    target.upsert(t);
+                                } else {
+                                    target.update(t);
+                                }
+                                applied++;
+                            }
+                            break;
+                        case OP_DELETE:
+                            target.delete(reader.string(1));
+                            applied++;
+                            break;
+                        default:
+                            break;
+                    }
+                } catch (Exception e) {
+                    System.err.println("重放日志时出错: " + record + ", 错误: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("读取交易日志时出错: " + e.getMessage());
+        }
+        return applied;
+    }
+
+    /**
+     * 轮转日志：把当前日志原子地重命名为 *.compacting，之后的记录写入新文件
+     * @return 轮转成功返回true；上一次压缩遗留的旧日志尚未清理时返回false
+     */
+    boolean rotate() throws IOException {
+        if (rotatedFile.exists()) {
+            return false;
+        }
+        close();
+        if (file.exists()) {
+            Files.move(file.toPath(), rotatedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        firstAppendMillis = 0;
+        return true;
+    }
+
+    /**
+     * 新快照已经持久化，删除轮转出去的旧日志
+     */
+    void discardRotated() throws IOException {
+        Files.deleteIfExists(rotatedFile.toPath());
+    }
+
+    /**
+     * 是否存在上一次压缩未完成时遗留的旧日志
+     */
+    boolean hasRotated() {
+        return rotatedFile.exists();
+    }
+
+    /**
+     * 当前日志文件大小（字节）
+     */
+    long size() {
+        return file.length();
+    }
+
+    /**
+     * 当前日志中最早一条记录距今的毫秒数，日志为空时返回0
+     */
+    long ageMillis() {
+        return firstAppendMillis == 0 ? 0 : System.currentTimeMillis() - firstAppendMillis;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
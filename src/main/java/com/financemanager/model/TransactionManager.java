@@ -1,262 +1,1256 @@
 package com.financemanager.model;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * 交易记录管理类
  * 负责交易记录的增删改查和持久化存储
+ * 交易在内存中以列式存储（TransactionStore）保存，查询时才物化为 Transaction 对象
+ *
+ * 线程安全：写操作通过 StampedLock 的写锁串行执行；代价很小的读取（按ID查找、各项合计）
+ * 先不加锁乐观读取，期间发生写入时再用读锁重读；物化列表的查询在读锁下并行执行，
+ * 有写操作等待时新的读取挂起到写操作取得写锁之后，避免连续的读取使写操作一直等待。
+ * 交易对象不可变，返回后可以在锁外自由使用、在线程间共享；修改通过 updateTransaction 整体替换。
+ * 需要一致视图的分析通过 snapshot() 取得某一时刻的只读快照，之后的修改不影响它；
+ * 快照要求全部交易放得进堆预算，更大的数据用按月聚合或 forEachMonth 逐月读取
+ *
+ * 持久化：修改在内存中生效后，日志记录交给后台写入线程，连续的修改合并成一次写入；
+ * 需要确认已写入磁盘时调用 flush()。程序退出时会写完尚未写出的记录
+ *
+ * 快照按月分区保存：启动时只加载最近几个月，更早的月份只把分区清单中的合计计入聚合，
+ * 直到日期范围查询或对其中记录的修改需要时才加载（按ID定位时先查各分区的ID过滤器，只加载可能含有它的月份）。
+ * 一年以前的月份以压缩的冷数据段保存；加载的数据超出堆预算时，最久未访问、
+ * 已写入分区且之后未修改的早期月份被退回冷层，需要时再从冷数据段（或其块缓存）加载
  */
 public class TransactionManager {
-    private List<Transaction> transactions;
-    private static final String DEFAULT_DATA_FILE = "data/transactions.csv";
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private final TransactionStore store;
+    private final TransactionJournal journal;
+    private final JournalCompactor compactor;
+    private final MonthPartitions partitions;
+    private volatile NavigableSet<YearMonth> unloaded = Collections.emptyNavigableSet(); // 尚未加载的月份，只在写锁下替换
+    private final ConcurrentSkipListMap<YearMonth, Long> coldAccess = new ConcurrentSkipListMap<>(); // 已加载的早期月份 -> 最近访问序号
+    private final AtomicLong accessTicks = new AtomicLong();
+    private final Map<YearMonth, Long> dirtyMonths = new HashMap<>(); // 月份 -> 最近一次修改后的版本，只在写锁下访问
+    private volatile long persistedVersion = -1; // 最近一次写完的分区快照对应的版本
+    private final long hotBudgetRows;
+    private volatile FingerprintFilter fingerprints; // 账本中交易指纹的布隆过滤器，首次导入时建立
+    private final GroupCommitWriter<TransactionBatch.Op> journalWriter;
+    private final Thread shutdownHook = new Thread(this::close, "transaction-manager-shutdown");
+    private boolean closed; // 只在写锁下读写
+    private final StampedLock lock = new StampedLock();
+    private final AtomicInteger waitingWriters = new AtomicInteger();
+    private final ReentrantLock writerGate = new ReentrantLock(); // 有写操作等待时，新的读取停在这里
+    private final Condition noWaitingWriters = writerGate.newCondition();
+    private volatile long version; // 每次修改加一，只在写锁下修改
+    private volatile TransactionSnapshot lastSnapshot; // 版本未变时重复使用
+    private LoadResult lastLoadResult = new LoadResult(0, 0, 0);
+    private static final String DEFAULT_DATA_FILE = "data/transactions.csv"; // 旧版快照，仅在没有列式快照时读取
+    private static final String LEGACY_SNAPSHOT_FILE = "data/transactions.bin"; // 未分区的列式快照，仅在没有分区时读取
+    private static final String PARTITION_DIR = "data/partitions"; // 按月分区的列式快照
+    private static final int RECENT_MONTHS = 4; // 启动时加载的月份数（当月及之前三个月），之后的月份也一并加载
+    private static final int COLD_AFTER_MONTHS = 12; // 早于当月12个月的分区压缩保存
+    private static final long DEFAULT_HEAP_BUDGET_MB = 256; // 可用 -Dfinancemanager.heapBudgetMB 覆盖
+    private static final int BYTES_PER_ROW = 160; // 一行在堆中的估计大小（各列、ID字符串、ID索引和日期索引项）
+    private static final String JOURNAL_FILE = "data/transactions.journal";
+    private static final long COMPACT_JOURNAL_BYTES = 1L << 20; // 日志超过1MB时压缩
+    private static final long COMPACT_JOURNAL_AGE_MILLIS = 10 * 60 * 1000L; // 日志存在超过10分钟时压缩
+    private static final int JOURNAL_QUEUE_CAPACITY = 4096; // 待写日志超过此数时写操作等待
     
     /**
      * 构造函数
      */
     public TransactionManager() {
-        this.transactions = new ArrayList<>();
+        this(Long.getLong("financemanager.heapBudgetMB", DEFAULT_HEAP_BUDGET_MB) << 20);
+    }
+    
+    /**
+     * 构造函数
+     * @param heapBudgetBytes 交易数据可占用的堆内存（字节），其中八分之一用作冷数据块缓存
+     */
+    public TransactionManager(long heapBudgetBytes) {
+        long cacheBytes = heapBudgetBytes / 8;
+        this.hotBudgetRows = (heapBudgetBytes - cacheBytes) / BYTES_PER_ROW;
+        this.store = new TransactionStore();
+        this.journal = new TransactionJournal(new File(JOURNAL_FILE));
+        this.compactor = new JournalCompactor(journal, COMPACT_JOURNAL_BYTES, COMPACT_JOURNAL_AGE_MILLIS);
+        this.partitions = new MonthPartitions(new File(PARTITION_DIR), COLD_AFTER_MONTHS, cacheBytes);
         loadTransactions(); // 初始化时尝试加载已有数据
+        Transaction.seedIdGenerator(Math.max(store.maxCompactId(), partitions.maxCompactId())); // 新ID排在已有ID之后
+        this.journalWriter = new GroupCommitWriter<>("journal-writer", JOURNAL_QUEUE_CAPACITY, journal::appendAll);
+        if (!partitions.exists() && store.size() > 0) {
+            compactor.compact(snapshotTask(), journalWriter::execute); // 从旧版快照或CSV迁移到按月分区
+        } else {
+            maybeCompact(); // 启动时日志过长则立即在后台压缩，下次启动只需读取快照
+        }
+        Runtime.getRuntime().addShutdownHook(shutdownHook); // 退出时写完日志并等待后台压缩结束
+    }
+    
+    /**
+     * 等待此前的全部修改写入日志
+     * @return 写入完成时完成的 Future，写入失败时以异常完成
+     */
+    public CompletableFuture<Void> flush() {
+        return journalWriter.flush();
+    }
+    
+    /**
+     * 关闭管理器，写完待写的日志、等待后台压缩完成并关闭日志，可以重复调用；
+     * 程序退出时由关闭钩子调用
+     */
+    public void close() {
+        long stamp = writeLock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            journalWriter.close(); // 先写完日志：排在其中的轮转会把压缩交给后台线程
+            compactor.shutdown();
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("关闭交易日志时出错: " + e.getMessage());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM 正在退出，钩子会自行结束
+            }
+        }
     }
     
     /**
      * 添加交易记录
+     * @throws IllegalArgumentException 交易缺少ID或日期
+     * @throws IllegalStateException 管理器已关闭
      */
     public void addTransaction(Transaction transaction) {
-        transactions.add(transaction);
-        saveTransactions(); // 保存到文件
+        TransactionBatch.validate(transaction); // 在写入日志之前校验
+        TransactionBatch.Op op = new TransactionBatch.Op(TransactionJournal.OP_ADD, transaction, transaction.getId());
+        commit(() -> {
+            loadMonthOf(transaction); // 所在月份的分区要先加载，写快照时整月一起写出
+            return Collections.singletonList(op); // 交易不可变，日志直接引用
+        }, false);
     }
     
     /**
      * 删除交易记录
+     * @throws IllegalStateException 管理器已关闭
      */
     public boolean removeTransaction(String id) {
-        boolean removed = transactions.removeIf(t -> t.getId().equals(id));
-        if (removed) {
-            saveTransactions(); // 保存到文件
-        }
-        return removed;
+        return !commit(() -> indexOfLoading(id) < 0
+                ? Collections.<TransactionBatch.Op>emptyList()
+                : Collections.singletonList(new TransactionBatch.Op(TransactionJournal.OP_DELETE, null, id)), false).isEmpty();
     }
     
     /**
-     * 更新交易记录
+     * 更新交易记录：用ID相同的新值整体替换
      */
     public boolean updateTransaction(Transaction updatedTransaction) {
-        for (int i = 0; i < transactions.size(); i++) {
-            if (transactions.get(i).getId().equals(updatedTransaction.getId())) {
-                transactions.set(i, updatedTransaction);
-                saveTransactions(); // 保存到文件
-                return true;
+        return updateTransaction(updatedTransaction.getId(), current -> updatedTransaction) != null;
+    }
+    
+    /**
+     * 在同一次写锁内读取当前值、计算新值并替换，其他写入不会插在中间
+     * 例如 updateTransaction(id, t -> t.withAmount(100))
+     * @param change 由当前值得到新值（ID必须不变），返回null表示不修改；日志队列已满时会在等待后对新的当前值再调用一次
+     * @return 替换后的交易记录；ID不存在或未修改时返回null
+     * @throws IllegalArgumentException 新值的ID与原ID不同，或缺少日期
+     * @throws IllegalStateException 管理器已关闭
+     */
+    public Transaction updateTransaction(String id, UnaryOperator<Transaction> change) {
+        List<TransactionBatch.Op> ops = commit(() -> {
+            int row = indexOfLoading(id);
+            if (row < 0) {
+                return Collections.emptyList();
+            }
+            Transaction updated = change.apply(store.get(row));
+            if (updated == null) {
+                return Collections.emptyList();
+            }
+            if (!id.equals(updated.getId())) {
+                throw new IllegalArgumentException("不能修改交易ID: " + id);
+            }
+            TransactionBatch.validate(updated);
+            loadMonthOf(updated);
+            return Collections.singletonList(new TransactionBatch.Op(TransactionJournal.OP_UPDATE, updated, id));
+        }, false);
+        return ops.isEmpty() ? null : ops.get(0).transaction;
+    }
+    
+    /**
+     * 批量修改：在回调中向 batch 添加新增、更新、删除操作，回调结束后整体校验，
+     * 然后在一次写锁内按顺序应用，日志只写一次、只刷新一次
+     * 更新和删除不存在的ID时忽略该条操作
+     * @return 实际应用的操作数
+     * @throws IllegalArgumentException 有操作缺少交易记录、ID或日期时，整批都不应用
+     */
+    public int batch(Consumer<TransactionBatch> work) {
+        TransactionBatch batch = new TransactionBatch();
+        work.accept(batch); // 在锁外收集操作
+        return apply(batch, false);
+    }
+    
+    /**
+     * 批量添加交易记录
+     * @return 添加的记录数
+     */
+    public int addAll(Collection<Transaction> transactions) {
+        return batch(batch -> transactions.forEach(batch::add));
+    }
+    
+    /**
+     * 按ID批量删除交易记录
+     * @return 实际删除的记录数
+     */
+    public int removeAll(Collection<String> ids) {
+        return batch(batch -> ids.forEach(batch::remove));
+    }
+    
+    /**
+     * 按ID批量更新交易记录
+     * @return 实际更新的记录数
+     */
+    public int updateAll(Collection<Transaction> transactions) {
+        return batch(batch -> transactions.forEach(batch::update));
+    }
+    
+    /**
+     * @param imported 是否为导入的批次：新增的记录ID都是新生成的，不先加载所在月份，
+     *                 尚未加载的月份在写快照时与原分区合并；也不按日志长度触发压缩，由 relieveMemory 按堆预算触发
+     */
+    private int apply(TransactionBatch batch, boolean imported) {
+        if (batch.size() == 0) {
+            return 0;
+        }
+        batch.validate();
+        return commit(() -> {
+            if (!imported) {
+                loadPartitionsFor(batch);
+            }
+            // 先确定哪些操作会生效（更新和删除不存在的ID时忽略），此时还不改动存储
+            List<TransactionBatch.Op> effective = new ArrayList<>(batch.size());
+            Set<String> added = new HashSet<>();
+            Set<String> removed = new HashSet<>();
+            for (TransactionBatch.Op op : batch.ops()) {
+                if (op.type == TransactionJournal.OP_ADD) {
+                    added.add(op.id);
+                    removed.remove(op.id);
+                    effective.add(op); // 交易不可变，异步写出的日志不必记录副本
+                } else if (added.contains(op.id) || (!removed.contains(op.id) && store.indexOf(op.id) >= 0)) {
+                    if (op.type == TransactionJournal.OP_DELETE) {
+                        added.remove(op.id);
+                        removed.add(op.id);
+                    }
+                    effective.add(op);
+                }
             }
+            return effective;
+        }, imported).size();
+    }
+    
+    /**
+     * 在写锁下执行一次修改：plan 读取当前状态，返回要应用的操作（空列表表示不修改），此时还不能改动存储
+     * （加载分区除外）；操作先放入日志队列，入队成功后才应用到存储，日志和内存不会不一致。
+     * 日志队列已满时放开写锁，等写入线程腾出空位后从头重试，等待期间读取不受影响
+     * @param imported 是否为导入的批次，导入时不按日志长度触发压缩
+     * @return 已应用的操作
+     * @throws IllegalStateException 管理器已关闭
+     */
+    private List<TransactionBatch.Op> commit(Supplier<List<TransactionBatch.Op>> plan, boolean imported) {
+        while (true) {
+            long stamp = writeLock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("交易管理器已关闭");
+                }
+                List<TransactionBatch.Op> ops = plan.get();
+                if (ops.isEmpty()) {
+                    return ops;
+                }
+                if (journalWriter.offerAll(ops)) { // 整批在同一次写入中落盘
+                    for (TransactionBatch.Op op : ops) {
+                        applyOp(op);
+                    }
+                    if (store.needsVacuum()) {
+                        store.vacuum(); // 整批结束后最多整理一次
+                    }
+                    version++;
+                    if (!imported) {
+                        maybeCompact();
+                    }
+                    return ops;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+                trimToBudget();
+            }
+            journalWriter.awaitRoom();
         }
-        return false;
+    }
+    
+    /**
+     * 把一条已入队的操作应用到存储（调用方持有写锁）
+     */
+    private void applyOp(TransactionBatch.Op op) {
+        int row;
+        switch (op.type) {
+            case TransactionJournal.OP_ADD:
+                addRow(op.transaction);
+                break;
+            case TransactionJournal.OP_UPDATE:
+                row = store.indexOf(op.id); // 加载分区可能整理了行号
+                if (row >= 0) {
+                    setRow(row, op.transaction);
+                }
+                break;
+            case TransactionJournal.OP_DELETE:
+                row = store.indexOf(op.id);
+                if (row >= 0) {
+                    removeRow(row); // 只标记删除，不移动其他行
+                }
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * 按ID查找交易记录（哈希索引，常数时间）
+     * @return 交易记录（不可变，直接返回存储的值），不存在时返回null
+     */
+    public Transaction findById(String id) {
+        Transaction found = optimisticRead(() -> {
+            int row = store.indexOf(id);
+            return row >= 0 ? store.get(row) : null;
+        });
+        if (found != null || unloaded.isEmpty()) {
+            return found;
+        }
+        for (YearMonth month : readLocked(() -> locateUnloaded(id))) { // 可能在尚未加载的月份中，只加载可能含有它的月份
+            found = readLoaded(month, month, () -> {
+                int row = store.indexOf(id);
+                return row >= 0 ? store.get(row) : null;
+            });
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 获取最近一次启动加载的统计结果（加载行数、拒绝行数）
+     */
+    public LoadResult getLastLoadResult() {
+        return lastLoadResult;
+    }
+    
+    /**
+     * 获取类别字典的副本，可用于把类别名称转换为稳定的整数编码（与 Transaction.getCategoryCode 一致）
+     */
+    public StringDictionary getCategoryDictionary() {
+        return readLocked(() -> store.categoryDictionary().copy());
     }
     
     /**
      * 获取所有交易记录
+     * 返回当前时刻的只读快照（O(1)，不复制数据），之后的修改不影响已返回的列表
+     * @throws IllegalStateException 全部交易超出堆预算，不能整体加载
+     * @deprecated 账本超出堆预算时不再返回完整列表而是抛出异常；逐月读取全部交易请用 forEachMonth，
+     *             分页读取请用 getPage，需要一致视图且数据量有限时用 snapshot()
      */
+    @Deprecated
     public List<Transaction> getAllTransactions() {
-        return new ArrayList<>(transactions); // 返回副本以保护内部数据
+        return snapshot();
+    }
+    
+    /**
+     * 取得当前全部交易的只读快照，O(1)（首次调用时加载尚未加载的月份）
+     * 快照与存储共享未修改的数据，分析可以在一致的视图上进行，同时不妨碍继续编辑
+     * @throws IllegalStateException 全部交易超出堆预算，不能整体加载
+     */
+    public TransactionSnapshot snapshot() {
+        TransactionSnapshot current = lastSnapshot;
+        if (current != null && current.getVersion() == version) {
+            return current; // 加载或淘汰月份都会提升版本
+        }
+        long stamp = writeLock(); // 创建快照会提升存储的代数，需要与写操作互斥
+        try {
+            NavigableSet<YearMonth> months = pending(null, null);
+            long incoming = 0;
+            for (YearMonth month : months) {
+                incoming += partitions.rows(month);
+            }
+            if (store.size() + incoming > hotBudgetRows) {
+                throw new IllegalStateException("全部交易（约" + (store.size() + incoming) + "行）超出堆预算（"
+                        + hotBudgetRows + "行），请按月读取或分页读取");
+            }
+            loadPartitions(null, null);
+            if (lastSnapshot == null || lastSnapshot.getVersion() != version) {
+                lastSnapshot = new TransactionSnapshot(store.snapshot(), version);
+            }
+            return lastSnapshot;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 按月份升序逐月读取全部交易，每次只在内存中保留一个月份（月内按日期升序）
+     * 已加载的月份在读锁下从存储中取出；未加载的月份直接读取分区文件，不加载到存储、不占用堆预算。
+     * 各月分别在一次读锁内读取，整体不是同一时刻的快照
+     */
+    public void forEachMonth(Consumer<List<Transaction>> action) {
+        for (YearMonth month : optimisticRead(() -> store.cube().months())) {
+            List<Transaction> rows = readLocked(() -> monthRows(month));
+            if (!rows.isEmpty()) {
+                action.accept(rows);
+            }
+        }
     }
     
     /**
-     * 按日期范围筛选交易
+     * 某月份的全部交易（调用方持有锁）：存储中的行，加上未加载月份的分区中存储里没有的行
+     */
+    private List<Transaction> monthRows(YearMonth month) {
+        int first = (int) month.atDay(1).toEpochDay();
+        int last = (int) month.atEndOfMonth().toEpochDay();
+        List<Transaction> rows = new ArrayList<>(store.countInRange(first, last));
+        store.forEachInRange(first, last, row -> rows.add(store.get(row)));
+        if (unloaded.contains(month)) {
+            int appended = rows.size(); // 导入时直接追加到未加载月份的行，比分区中的同ID行新
+            try {
+                partitions.forEachRow(month, t -> {
+                    if (appended == 0 || store.indexOf(t.getId()) < 0) {
+                        rows.add(t);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(new IOException("读取 " + month + " 的交易分区失败: " + e.getMessage(), e));
+            }
+            rows.sort(Comparator.comparing(Transaction::getDate));
+        }
+        return rows;
+    }
+    
+    /**
+     * 交易总笔数（含尚未加载的月份），来自聚合立方体
+     */
+    public int getTransactionCount() {
+        return optimisticRead(() -> store.cube().totalCount(-1, true) + store.cube().totalCount(-1, false));
+    }
+    
+    /**
+     * 各月份的支出（或收入）合计，单位分，来自聚合立方体，含尚未加载的月份；没有交易的月份不列出
+     */
+    public Map<YearMonth, Long> getMonthlyTotalsCents(boolean isExpense) {
+        return readLocked(() -> {
+            Map<YearMonth, Long> totals = new TreeMap<>();
+            MonthCategoryCube cube = store.cube();
+            for (YearMonth month : cube.months()) {
+                if (cube.count(month, -1, isExpense) > 0) {
+                    totals.put(month, cube.sumCents(month, -1, isExpense));
+                }
+            }
+            return totals;
+        });
+    }
+    
+    /**
+     * 各月份各类别的支出（或收入）合计，单位分，来自聚合立方体，含尚未加载的月份
+     */
+    public Map<YearMonth, Map<String, Long>> getMonthlyCategoryTotalsCents(boolean isExpense) {
+        return readLocked(() -> {
+            Map<YearMonth, Map<String, Long>> totals = new TreeMap<>();
+            MonthCategoryCube cube = store.cube();
+            StringDictionary categories = store.categoryDictionary();
+            for (YearMonth month : cube.months()) {
+                Map<String, Long> byCategory = new HashMap<>();
+                for (int code = 0; code < categories.size(); code++) {
+                    if (cube.count(month, code, isExpense) > 0) {
+                        byCategory.put(categories.decode(code), cube.sumCents(month, code, isExpense));
+                    }
+                }
+                if (!byCategory.isEmpty()) {
+                    totals.put(month, byCategory);
+                }
+            }
+            return totals;
+        });
+    }
+    
+    /**
+     * 全部时间各类别的支出（或收入）合计和笔数：类别 -> {金额（分）, 笔数}，来自聚合立方体
+     */
+    public Map<String, long[]> getCategoryTotalsCents(boolean isExpense) {
+        return readLocked(() -> {
+            Map<String, long[]> totals = new HashMap<>();
+            MonthCategoryCube cube = store.cube();
+            StringDictionary categories = store.categoryDictionary();
+            for (int code = 0; code < categories.size(); code++) {
+                int count = cube.totalCount(code, isExpense);
+                if (count > 0) {
+                    totals.put(categories.decode(code), new long[]{cube.totalCents(code, isExpense), count});
+                }
+            }
+            return totals;
+        });
+    }
+    
+    /**
+     * 按日期范围筛选交易（含首尾两天），结果按日期升序
+     * 通过日期索引只读取范围内的行
      */
     public List<Transaction> getTransactionsByDateRange(LocalDate startDate, LocalDate endDate) {
-        return transactions.stream()
-                .filter(t -> !t.getDate().isBefore(startDate) && !t.getDate().isAfter(endDate))
-                .collect(Collectors.toList());
+        int from = (int) startDate.toEpochDay();
+        int to = (int) endDate.toEpochDay();
+        return readLoaded(YearMonth.from(startDate), YearMonth.from(endDate), () -> {
+            List<Transaction> result = new ArrayList<>(store.countInRange(from, to));
+            store.forEachInRange(from, to, row -> result.add(store.get(row)));
+            return result;
+        });
     }
     
     /**
-     * 按类别筛选交易
+     * 获取指定日期（含）之后的全部交易，结果按日期升序
+     */
+    public List<Transaction> getTransactionsSince(LocalDate startDate) {
+        int from = (int) startDate.toEpochDay();
+        return readLoaded(YearMonth.from(startDate), null, () -> {
+            List<Transaction> result = new ArrayList<>(store.countInRange(from, Integer.MAX_VALUE));
+            store.forEachInRange(from, Integer.MAX_VALUE, row -> result.add(store.get(row)));
+            return result;
+        });
+    }
+    
+    /**
+     * 按类别筛选交易（忽略大小写），结果按日期升序
      */
     public List<Transaction> getTransactionsByCategory(String category) {
-        return transactions.stream()
-                .filter(t -> t.getCategory().equalsIgnoreCase(category))
-                .collect(Collectors.toList());
+        return query(TransactionQuery.builder().category(category).build());
     }
     
     /**
      * 获取支出交易
      */
     public List<Transaction> getExpenseTransactions() {
-        return transactions.stream()
-                .filter(Transaction::isExpense)
-                .collect(Collectors.toList());
+        return query(TransactionQuery.builder().expenseOnly().build());
     }
     
     /**
      * 获取收入交易
      */
     public List<Transaction> getIncomeTransactions() {
-        return transactions.stream()
-                .filter(t -> !t.isExpense())
-                .collect(Collectors.toList());
+        return query(TransactionQuery.builder().incomeOnly().build());
+    }
+    
+    /**
+     * 按组合条件查询交易
+     * 先按月份×类别立方体找出可能有结果的月份，只加载这些月份所在的范围；
+     * 再在读锁下选择日期索引或顺序扫描，其余条件在同一次遍历中判断，只物化返回的交易
+     */
+    public List<Transaction> query(TransactionQuery query) {
+        QueryPlan outline = readLocked(() -> QueryPlan.plan(store, query));
+        if (outline.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return readLoaded(outline.firstMonth(), outline.lastMonth(), () -> QueryPlan.plan(store, query).execute());
+    }
+    
+    /**
+     * 按（日期, ID）升序分页读取全部交易
+     * @param token 上一页的续页标记，null 表示第一页
+     */
+    public TransactionPage getPage(String token, int pageSize) {
+        return getPage(TransactionQuery.builder().build(), token, pageSize);
+    }
+    
+    /**
+     * 按（日期, ID）分页读取符合条件的交易，排序方向取自查询条件（只支持按日期排序），忽略其中的偏移和条数
+     * 续页标记记录上一页最后一笔交易的位置，翻页之间的增删不会造成重复或遗漏；
+     * 每次只按月加载并访问续页位置之后的行，内存中不超过一页，翻到多深代价都一样
+     * @param token 上一页的续页标记，null 表示第一页
+     */
+    public TransactionPage getPage(TransactionQuery filter, String token, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("每页条数必须大于0: " + pageSize);
+        }
+        TransactionQuery.Order order = filter.getOrder();
+        if (order != TransactionQuery.Order.DATE_ASC && order != TransactionQuery.Order.DATE_DESC) {
+            throw new IllegalArgumentException("分页只支持按日期排序: " + order);
+        }
+        boolean descending = order == TransactionQuery.Order.DATE_DESC;
+        PageToken after = token != null ? PageToken.decode(token, filter) : null;
+        List<Transaction> page = new ArrayList<>(pageSize + 1); // 多取一条判断是否还有下一页
+        YearMonth from = after != null ? YearMonth.from(LocalDate.ofEpochDay(after.epochDay)) : null;
+        while (page.size() <= pageSize) {
+            YearMonth start = from;
+            YearMonth month = readLocked(() -> QueryPlan.forPaging(store, filter).nextMonth(start, descending));
+            if (month == null) {
+                break;
+            }
+            readLoaded(month, month, () -> {
+                QueryPlan.forPaging(store, filter).collectPage(month, after, descending, pageSize + 1 - page.size(), page);
+                return null;
+            });
+            from = descending ? month.minusMonths(1) : month.plusMonths(1);
+        }
+        if (page.size() <= pageSize) {
+            return new TransactionPage(page, null);
+        }
+        page.remove(pageSize);
+        Transaction last = page.get(pageSize - 1);
+        String next = new PageToken((int) last.getDate().toEpochDay(), last.getId(), filter.conditions().hashCode()).encode();
+        return new TransactionPage(page, next);
+    }
+    
+    /**
+     * 查询将采用的执行计划（访问方式和估计的行数），用于排查慢查询
+     */
+    public String explain(TransactionQuery query) {
+        QueryPlan outline = readLocked(() -> QueryPlan.plan(store, query));
+        if (outline.isEmpty()) {
+            return outline.toString();
+        }
+        return readLoaded(outline.firstMonth(), outline.lastMonth(), () -> QueryPlan.plan(store, query).toString());
     }
     
     /**
      * 计算总支出
      */
     public double getTotalExpense() {
-        return getExpenseTransactions().stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return optimisticRead(() -> store.cube().totalCents(-1, true)) / 100.0;
     }
     
     /**
      * 计算总收入
      */
     public double getTotalIncome() {
-        return getIncomeTransactions().stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return optimisticRead(() -> store.cube().totalCents(-1, false)) / 100.0;
+    }
+    
+    /**
+     * 计算日期范围内（含首尾两天）的总支出，基于按日期的前缀和，O(log n)
+     */
+    public double sumExpenses(LocalDate startDate, LocalDate endDate) {
+        int from = (int) startDate.toEpochDay();
+        int to = (int) endDate.toEpochDay();
+        // 前缀和只覆盖已加载的月份
+        return readLoaded(YearMonth.from(startDate), YearMonth.from(endDate),
+                () -> store.rangeSums().sumCents(true, from, to)) / 100.0;
+    }
+    
+    /**
+     * 计算日期范围内（含首尾两天）某类别的总支出，O(log n)
+     */
+    public double sumExpenses(String category, LocalDate startDate, LocalDate endDate) {
+        int from = (int) startDate.toEpochDay();
+        int to = (int) endDate.toEpochDay();
+        return readLoaded(YearMonth.from(startDate), YearMonth.from(endDate), () -> {
+            int code = store.categoryDictionary().codeOf(category);
+            return code < 0 ? 0L : store.rangeSums().sumExpenseCents(code, from, to);
+        }) / 100.0;
+    }
+    
+    /**
+     * 计算日期范围内（含首尾两天）的总收入，O(log n)
+     */
+    public double sumIncome(LocalDate startDate, LocalDate endDate) {
+        int from = (int) startDate.toEpochDay();
+        int to = (int) endDate.toEpochDay();
+        return readLoaded(YearMonth.from(startDate), YearMonth.from(endDate),
+                () -> store.rangeSums().sumCents(false, from, to)) / 100.0;
     }
     
     /**
      * 从CSV文件导入交易记录
+     * @return 导入的记录数
      */
     public int importFromCSV(String filePath) {
-        int importedCount = 0;
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            // 跳过标题行
-            reader.readLine();
-            while ((line = reader.readLine()) != null) {
-                try {
-                    String[] parts = line.split(",");
-                    if (parts.length >= 6) {
-                        double amount = Double.parseDouble(parts[0]);
-                        LocalDate date = LocalDate.parse(parts[1], DATE_FORMATTER);
-                        String category = parts[2];
-                        String description = parts[3];
-                        boolean isExpense = Boolean.parseBoolean(parts[4]);
-                        String paymentMethod = parts[5];
-                        
-                        Transaction transaction = new Transaction(
-                                amount, date, category, description, isExpense, paymentMethod);
-                        transactions.add(transaction);
-                        importedCount++;
-                    }
-                } catch (Exception e) {
-                    System.err.println("导入行时出错: " + line + ", 错误: " + e.getMessage());
+        return importFromCSV(filePath, null, null).getImportedCount();
+    }
+    
+    /**
+     * 从CSV文件流式导入交易记录，不自动分类
+     */
+    public ImportResult importFromCSV(String filePath, ImportListener listener) {
+        return importFromCSV(filePath, listener, null);
+    }
+    
+    /**
+     * 从CSV文件流式导入交易记录
+     * 读取、解析、分类、去重分别在各自的线程上流水线执行，调用线程只负责提交：
+     * 每批作为一次批量添加提交，内存占用不随文件大小增长；
+     * 已加载的数据超出堆预算时，批次之间等待分区快照写完并把早期月份退回冷层。
+     * 与导入前账本中完全相同的交易跳过不导入。取消或读取出错时已提交的批次保留
+     * @param listener 进度回调（在调用线程上执行），可以为null
+     * @param classifier 为没有分类的行推断分类（在分类线程上执行），为null时不分类
+     * @return 导入结果：导入、拒绝、跳过的行数，文件编码，按原因汇总的错误，各阶段吞吐
+     */
+    public ImportResult importFromCSV(String filePath, ImportListener listener,
+                                      Function<Transaction, String> classifier) {
+        CsvImporter importer = new CsvImporter(ForkJoinPool.commonPool(), classifier, importDeduplicator());
+        ImportResult result = importer.importFile(new File(filePath), rows -> {
+            TransactionBatch batch = new TransactionBatch();
+            rows.forEach(batch::add);
+            apply(batch, true); // 每批只写一次日志
+            relieveMemory();
+        }, listener);
+        long stamp = writeLock();
+        try {
+            maybeCompact(); // 导入期间的日志超过阈值时，导入结束后再压缩
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return result;
+    }
+    
+    /**
+     * 导入的重复检测，使用导入开始时账本指纹过滤器的副本，导入过程中提交的行不影响副本
+     * 首次调用（或添加次数超出容量后）扫描账本建立过滤器：已加载的行在写锁下计入，
+     * 之后的写入随即计入；未加载的月份在锁外直接读取分区文件，不加载到内存，
+     * 读取的行数和耗时记入导入结果
+     */
+    private ImportDeduplicator importDeduplicator() {
+        IntFunction<List<Transaction>> ledgerDay = day -> {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            return getTransactionsByDateRange(date, date);
+        };
+        FingerprintFilter filter;
+        NavigableSet<YearMonth> months;
+        long stamp = writeLock();
+        try {
+            FingerprintFilter current = fingerprints;
+            if (current != null && !current.isSaturated()) {
+                return new ImportDeduplicator(current.copy(), 0, 0, ledgerDay);
+            }
+            months = unloaded;
+            long expected = store.size();
+            for (YearMonth month : months) {
+                expected += partitions.rows(month);
+            }
+            filter = new FingerprintFilter(expected * 2); // 留出增长的余量
+            for (int row = 0; row < store.rowCount(); row++) {
+                if (!store.isDeleted(row)) {
+                    filter.add(FingerprintFilter.fingerprint(store, row));
                 }
             }
-            if (importedCount > 0) {
-                saveTransactions(); // 保存到文件
+            fingerprints = filter;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        long start = System.currentTimeMillis();
+        long[] scanned = new long[1];
+        for (YearMonth month : months) {
+            try {
+                partitions.forEachRow(month, t -> {
+                    filter.add(FingerprintFilter.fingerprint(t));
+                    scanned[0]++;
+                });
+            } catch (IOException | RuntimeException e) {
+                System.err.println("读取 " + month + " 的交易分区时出错: " + e.getMessage());
+                fingerprints = null; // 不完整的过滤器会漏判，下次导入重建
+                break;
             }
-        } catch (IOException e) {
-            System.err.println("导入CSV文件时出错: " + e.getMessage());
         }
-        return importedCount;
+        return new ImportDeduplicator(filter.copy(), scanned[0], System.currentTimeMillis() - start, ledgerDay);
     }
     
     /**
-     * 保存交易记录到CSV文件
+     * 加载的行数超出堆预算时，把早期月份退回冷层；刚修改过的月份要等分区快照写完才能淘汰，
+     * 因此必要时触发压缩并等待（调用方不持有锁）。近期月份始终保留在内存中
      */
-    private void saveTransactions() {
-        File dataDir = new File("data");
-        if (!dataDir.exists()) {
-            dataDir.mkdirs();
+    private void relieveMemory() {
+        long headroom = hotBudgetRows / 2; // 一次腾出一半预算，不必每批都压缩
+        for (int attempt = 0; ; attempt++) {
+            CompletableFuture<Void> written;
+            long stamp = writeLock();
+            try {
+                if (attempt == 0 && store.size() <= hotBudgetRows) {
+                    return;
+                }
+                evictColdMonths(month -> false, headroom);
+                // 正在进行的压缩可能早于最近的修改，最多再压缩一次
+                if (store.size() + headroom <= hotBudgetRows || attempt == 2) {
+                    return;
+                }
+                written = compactor.compact(snapshotTask(), journalWriter::execute);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            try {
+                written.join();
+            } catch (CompletionException e) {
+                return; // 错误已由压缩器输出，本批不再淘汰
+            }
         }
-        
-        try (PrintWriter writer = new PrintWriter(new FileWriter(DEFAULT_DATA_FILE))) {
-            // 写入标题行
-            writer.println("id,amount,date,category,description,isExpense,paymentMethod");
-            
-            // 写入数据行
-            for (Transaction t : transactions) {
-                writer.println(String.format("%s,%.2f,%s,%s,%s,%b,%s",
-                        t.getId(),
-                        t.getAmount(),
-                        t.getDate().format(DATE_FORMATTER),
-                        escapeCsv(t.getCategory()),
-                        escapeCsv(t.getDescription()),
-                        t.isExpense(),
-                        escapeCsv(t.getPaymentMethod())));
+    }
+    
+    /**
+     * 日志超过阈值时触发后台压缩（调用方持有写锁）
+     */
+    private void maybeCompact() {
+        if (compactor.shouldCompact()) {
+            compactor.compact(snapshotTask(), journalWriter::execute);
+        }
+    }
+    
+    /**
+     * 捕获当前数据写分区快照的任务（调用方持有写锁）
+     * 取快照是 O(1) 的，后台线程写快照时前台继续修改；未加载的月份和上次写出后未修改的月份沿用原有分区
+     */
+    private JournalCompactor.Snapshot snapshotTask() {
+        TransactionStore rows = store.snapshot();
+        Set<YearMonth> carried = unloaded;
+        Set<YearMonth> clean = new HashSet<>();
+        for (YearMonth month : partitions.months()) {
+            if (!carried.contains(month) && dirtyMonths.getOrDefault(month, Long.MIN_VALUE) <= persistedVersion) {
+                clean.add(month); // 与已写出的分区一致，不必重写
             }
-        } catch (IOException e) {
-            System.err.println("保存交易记录时出错: " + e.getMessage());
         }
+        long covered = version;
+        return () -> {
+            partitions.write(rows, carried, clean);
+            persistedVersion = covered;
+            File legacy = new File(LEGACY_SNAPSHOT_FILE);
+            if (legacy.exists() && !legacy.delete()) {
+                System.err.println("删除旧版快照时出错: " + legacy);
+            }
+        };
     }
     
     /**
-     * 从CSV文件加载交易记录
+     * 加载交易所在月份的分区（调用方持有写锁）
      */
-    private void loadTransactions() {
-        File file = new File(DEFAULT_DATA_FILE);
-        if (!file.exists()) {
-            return; // 文件不存在，不加载
+    private void loadMonthOf(Transaction transaction) {
+        YearMonth month = YearMonth.from(transaction.getDate());
+        loadPartitions(month, month);
+    }
+    
+    /**
+     * 按ID查找行号；已加载的数据中没有时，按分区的ID过滤器只加载可能含有它的月份（调用方持有写锁）
+     * 多加载的月份在写操作结束后按堆预算淘汰（trimToBudget）
+     */
+    private int indexOfLoading(String id) {
+        int row = store.indexOf(id);
+        if (row >= 0) {
+            return loadMonthOfRow(row) ? store.indexOf(id) : row;
         }
-        
-        transactions.clear();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            // 跳过标题行
-            reader.readLine();
-            while ((line = reader.readLine()) != null) {
-                try {
-                    String[] parts = line.split(",");
-                    if (parts.length >= 7) {
-                        String id = parts[0];
-                        double amount = Double.parseDouble(parts[1]);
-                        LocalDate date = LocalDate.parse(parts[2], DATE_FORMATTER);
-                        String category = parts[3];
-                        String description = parts[4];
-                        boolean isExpense = Boolean.parseBoolean(parts[5]);
-                        String paymentMethod = parts[6];
-                        
-                        Transaction transaction = new Transaction(
-                                id, amount, date, category, description, isExpense, paymentMethod);
-                        transactions.add(transaction);
-                    }
-                } catch (Exception e) {
-                    System.err.println("加载行时出错: " + line + ", 错误: " + e.getMessage());
-                }
+        for (YearMonth month : locateUnloaded(id)) {
+            loadPartitions(month, month);
+            row = store.indexOf(id);
+            if (row >= 0) {
+                return row;
             }
+        }
+        return -1;
+    }
+    
+    /**
+     * 尚未加载的月份中可能含有该ID的月份，新的月份在前（调用方持有锁）
+     */
+    private List<YearMonth> locateUnloaded(String id) {
+        NavigableSet<YearMonth> months = unloaded;
+        if (months.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try {
+            return partitions.locate(id, months.descendingSet());
         } catch (IOException e) {
-            System.err.println("加载交易记录时出错: " + e.getMessage());
+            throw new UncheckedIOException(new IOException("查找交易 " + id + " 所在的分区时出错: " + e.getMessage(), e));
         }
     }
     
     /**
-     * 转义CSV字段中的特殊字符
+     * 写操作为查找记录加载的早期月份使加载的行数超出堆预算时，淘汰最久未访问的早期月份（调用方不持有锁）
      */
-    private String escapeCsv(String field) {
-        if (field == null) {
-            return "";
+    private void trimToBudget() {
+        if (store.size() <= hotBudgetRows) {
+            return; // 不加锁的粗略判断，超出时再在写锁下确认
         }
-        // 如果字段包含逗号、引号或换行符，则用引号包围并转义内部引号
-        if (field.contains(",") || field.contains("\"") || field.contains("\n")) {
-            return "\"" + field.replace("\"", "\"\"") + "\"";
+        long stamp = writeLock();
+        try {
+            evictColdMonths(month -> false, 0);
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        return field;
     }
-
-    public double getCategoryExpenseTotal(String category) {
-        double total = 0.0;
-        for (Transaction transaction : transactions) {
-            if (transaction.isExpense() && transaction.getCategory().equals(category)) {
-                total += transaction.getAmount();
+    
+    /**
+     * 行所在的月份尚未加载（导入时直接追加的行）时先加载该月，修改之后整月一起写出（调用方持有写锁）
+     * @return 是否加载了分区（行号可能已改变）
+     */
+    private boolean loadMonthOfRow(int row) {
+        YearMonth month = YearMonth.from(LocalDate.ofEpochDay(store.epochDay(row)));
+        if (!unloaded.contains(month)) {
+            return false;
+        }
+        loadPartitions(month, month);
+        return true;
+    }
+    
+    /**
+     * 加载批量操作涉及的分区（调用方持有写锁）：新值所在的月份、被更新和删除的记录所在的月份
+     */
+    private void loadPartitionsFor(TransactionBatch batch) {
+        if (unloaded.isEmpty()) {
+            return;
+        }
+        Set<String> added = new HashSet<>();
+        for (TransactionBatch.Op op : batch.ops()) {
+            if (op.type == TransactionJournal.OP_ADD) {
+                added.add(op.id);
+            } else if (!added.contains(op.id)) {
+                indexOfLoading(op.id); // 只加载记录所在的月份
+            }
+            if (op.transaction != null) {
+                loadMonthOf(op.transaction);
             }
         }
-        return total;
+    }
+    
+    /**
+     * 在 [from, to] 内的月份都已加载的状态下读取，null 表示不限
+     * 都已加载时在读锁下读取；否则在写锁下按堆预算淘汰其他月份、加载缺少的月份后读取
+     */
+    private <T> T readLoaded(YearMonth from, YearMonth to, Supplier<T> reader) {
+        touchColdMonths(from, to);
+        awaitWriters();
+        long stamp = lock.readLock();
+        try {
+            if (pending(from, to).isEmpty()) {
+                return reader.get();
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stamp = writeLock();
+        try {
+            NavigableSet<YearMonth> months = pending(from, to);
+            long incoming = 0;
+            for (YearMonth month : months) {
+                incoming += partitions.rows(month);
+            }
+            evictColdMonths(month -> (from == null || !month.isBefore(from)) && (to == null || !month.isAfter(to)),
+                    incoming);
+            loadPartitions(from, to);
+            return reader.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 记录对范围内已加载早期月份的访问，淘汰时最久未访问的先淘汰；不限范围的全量读取不计入
+     */
+    private void touchColdMonths(YearMonth from, YearMonth to) {
+        if (from == null && to == null) {
+            return;
+        }
+        NavigableMap<YearMonth, Long> months = coldAccess;
+        if (from != null) {
+            months = months.tailMap(from, true);
+        }
+        if (to != null) {
+            months = months.headMap(to, true);
+        }
+        if (!months.isEmpty()) {
+            long tick = accessTicks.incrementAndGet();
+            for (YearMonth month : months.keySet()) {
+                coldAccess.replace(month, tick);
+            }
+        }
+    }
+    
+    /**
+     * 加载的行数将超出堆预算时，把最久未访问的早期月份退回冷层（调用方持有写锁）
+     * 只淘汰分区快照与内存一致的月份（已写入分区且之后未修改），keep 选中的月份不淘汰
+     */
+    private void evictColdMonths(Predicate<YearMonth> keep, long incomingRows) {
+        long excess = store.size() + incomingRows - hotBudgetRows;
+        if (excess <= 0 || coldAccess.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<YearMonth, Long>> candidates = new ArrayList<>(coldAccess.entrySet());
+        candidates.sort(Map.Entry.comparingByValue());
+        NavigableSet<YearMonth> remaining = new TreeSet<>(unloaded);
+        for (Map.Entry<YearMonth, Long> candidate : candidates) {
+            if (excess <= 0) {
+                break;
+            }
+            YearMonth month = candidate.getKey();
+            boolean persisted = dirtyMonths.getOrDefault(month, Long.MIN_VALUE) <= persistedVersion;
+            if (keep.test(month) || !persisted || !partitions.contains(month)) {
+                continue;
+            }
+            excess -= unloadMonth(month);
+            remaining.add(month);
+        }
+        unloaded = Collections.unmodifiableNavigableSet(remaining);
+        if (store.needsVacuum()) {
+            store.vacuum();
+        }
+        version++;
+    }
+    
+    /**
+     * 从内存中移除某月份的全部行，改为计入分区清单中的合计
+     * @return 移除的行数
+     */
+    private int unloadMonth(YearMonth month) {
+        int first = (int) month.atDay(1).toEpochDay();
+        int last = (int) month.atEndOfMonth().toEpochDay();
+        int[] rows = new int[store.countInRange(first, last)];
+        int[] n = {0};
+        store.forEachInRange(first, last, row -> rows[n[0]++] = row);
+        for (int row : rows) {
+            store.remove(row); // 内容与分区一致，不计为修改
+        }
+        partitions.seed(month, store);
+        coldAccess.remove(month);
+        dirtyMonths.remove(month);
+        return rows.length;
+    }
+    
+    /**
+     * 以下三个方法修改存储并记下被修改的月份（调用方持有写锁，随后版本加一）
+     */
+    private int addRow(Transaction t) {
+        int row = store.add(t);
+        markDirty(store.epochDay(row));
+        addFingerprint(t);
+        return row;
+    }
+    
+    private void setRow(int row, Transaction t) {
+        markDirty(store.epochDay(row));
+        store.set(row, t);
+        markDirty(store.epochDay(row));
+        addFingerprint(t);
+    }
+    
+    private void addFingerprint(Transaction t) {
+        FingerprintFilter filter = fingerprints;
+        if (filter != null) {
+            filter.add(FingerprintFilter.fingerprint(t));
+        }
+    }
+    
+    private void removeRow(int row) {
+        markDirty(store.epochDay(row));
+        store.remove(row);
+    }
+    
+    private void markDirty(int epochDay) {
+        YearMonth month = YearMonth.from(LocalDate.ofEpochDay(epochDay));
+        dirtyMonths.put(month, version + 1);
+        if (month.isBefore(YearMonth.now().minusMonths(RECENT_MONTHS - 1))) {
+            coldAccess.putIfAbsent(month, accessTicks.incrementAndGet()); // 新出现的早期月份写入分区后也可淘汰
+        }
+    }
+    
+    /**
+     * 加载 [from, to] 内尚未加载的分区（调用方持有写锁）
+     * @throws UncheckedIOException 有月份加载失败；其余月份照常加载，失败的月份仍为未加载
+     */
+    private void loadPartitions(YearMonth from, YearMonth to) {
+        NavigableSet<YearMonth> months = pending(from, to);
+        if (months.isEmpty()) {
+            return;
+        }
+        NavigableSet<YearMonth> remaining = new TreeSet<>(unloaded);
+        YearMonth recent = YearMonth.now().minusMonths(RECENT_MONTHS - 1);
+        IOException failure = null;
+        for (YearMonth month : months) {
+            try {
+                partitions.load(month, store);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("加载 " + month + " 的交易分区时出错: " + e.getMessage());
+                failure = new IOException("加载 " + month + " 的交易分区失败: " + e.getMessage(), e);
+                continue;
+            }
+            remaining.remove(month);
+            if (month.isBefore(recent)) {
+                coldAccess.put(month, accessTicks.incrementAndGet());
+            }
+        }
+        unloaded = Collections.unmodifiableNavigableSet(remaining);
+        if (store.needsVacuum()) {
+            store.vacuum();
+        }
+        version++;
+        if (failure != null) {
+            throw new UncheckedIOException(failure); // 缺少月份的结果不完整，不继续读取
+        }
+    }
+    
+    private NavigableSet<YearMonth> pending(YearMonth from, YearMonth to) {
+        NavigableSet<YearMonth> months = unloaded;
+        if (months.isEmpty() || (from != null && to != null && from.isAfter(to))) {
+            return Collections.emptyNavigableSet();
+        }
+        if (from != null) {
+            months = months.tailSet(from, true);
+        }
+        if (to != null) {
+            months = months.headSet(to, true);
+        }
+        return months;
+    }
+    
+    /**
+     * 导出全部交易记录到CSV文件（与数据文件相同的列布局），按月份升序逐月写出，内存中只保留一个月份
+     */
+    public boolean exportToCSV(String filePath) {
+        File target = new File(filePath);
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(target), StandardCharsets.UTF_8)))) {
+            // 写入标题行
+            writer.println(TransactionCsvCodec.HEADER);
+            
+            // 写入数据行，行缓冲在所有行之间复用；在锁外写文件
+            TransactionCsvCodec codec = new TransactionCsvCodec();
+            StringBuilder line = new StringBuilder(128);
+            forEachMonth(rows -> {
+                for (Transaction t : rows) {
+                    line.setLength(0);
+                    codec.appendRow(line, t);
+                    line.append('\n');
+                    writer.append(line);
+                }
+            });
+            if (writer.checkError()) {
+                throw new IOException("写入CSV文件失败: " + target);
+            }
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("导出CSV文件时出错: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 加载快照（优先使用按月分区，其次是未分区的列式快照，否则并行加载旧版CSV），并在其上重放日志
+     */
+    private void loadTransactions() {
+        store.clear();
+        unloaded = Collections.emptyNavigableSet();
+        File snapshot = new File(LEGACY_SNAPSHOT_FILE);
+        File file = new File(DEFAULT_DATA_FILE);
+        if (partitions.exists()) {
+            long start = System.currentTimeMillis();
+            YearMonth recent = YearMonth.now().minusMonths(RECENT_MONTHS - 1);
+            NavigableSet<YearMonth> months = partitions.months();
+            for (YearMonth month : months) {
+                partitions.seed(month, store); // 先按清单计入合计，加载时再换成明细
+            }
+            unloaded = Collections.unmodifiableNavigableSet(months);
+            try {
+                loadPartitions(recent, null);
+            } catch (UncheckedIOException e) {
+                System.err.println("加载近期交易分区时出错: " + e.getMessage()); // 失败的月份仍按需加载
+            }
+            lastLoadResult = new LoadResult(store.size(), 0, System.currentTimeMillis() - start, unloaded.size());
+        } else if (snapshot.exists()) {
+            long start = System.currentTimeMillis();
+            try (ColumnarTransactionFile columns = ColumnarTransactionFile.open(snapshot)) {
+                store.appendFrom(columns); // 定长列整块拷贝，无需逐行解析
+                lastLoadResult = new LoadResult(store.size(), 0, System.currentTimeMillis() - start);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("加载交易快照时出错: " + e.getMessage());
+            }
+        } else if (file.exists()) {
+            try {
+                List<Transaction> loaded = new ArrayList<>();
+                ParallelTransactionLoader loader = new ParallelTransactionLoader(ForkJoinPool.commonPool());
+                lastLoadResult = loader.load(file, loaded);
+                for (Transaction t : loaded) {
+                    store.add(t);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("加载交易记录时出错: " + e.getMessage());
+            }
+        }
+        
+        if (journal.size() == 0 && !journal.hasRotated()) {
+            return; // 没有待重放的日志，直接使用快照
+        }
+        journal.replay(new TransactionJournal.ReplayTarget() {
+            @Override
+            public void upsert(Transaction t) {
+                loadMonthOf(t);
+                int row = store.indexOf(t.getId());
+                if (row >= 0) {
+                    setRow(row, t);
+                } else {
+                    addRow(t);
+                }
+            }
+            
+            @Override
+            public void update(Transaction t) {
+                indexOfLoading(t.getId()); // 被更新的记录可能在尚未加载的月份中
+                upsert(t);
+            }
+            
+            @Override
+            public void delete(String id) {
+                int row = indexOfLoading(id);
+                if (row >= 0) {
+                    removeRow(row); // 只做标记，重放结束后统一整理
+                }
+            }
+        });
+        store.vacuum();
+        version++; // 重放的修改算作此版本之前的修改，写入分区后对应月份才可淘汰
+    }
+    
+    public double getCategoryExpenseTotal(String category) {
+        return optimisticRead(() -> {
+            int code = store.categoryDictionary().codeOf(category);
+            return code < 0 ? 0L : store.cube().totalCents(code, true);
+        }) / 100.0;
     }
 
 
 
     public double getExpensesByCategory(String category, YearMonth yearMonth) {
-        return transactions.stream()
-                .filter(Transaction::isExpense)
-                .filter(t -> t.getCategory().equals(category))
-                .filter(t -> YearMonth.from(t.getDate()).equals(yearMonth))
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return optimisticRead(() -> {
+            int code = store.categoryDictionary().codeOf(category);
+            return code < 0 ? 0L : store.cube().sumCents(yearMonth, code, true);
+        }) / 100.0;
+    }
+    
+    /**
+     * 获取某月某类别的支出笔数
+     */
+    public int getExpenseCountByCategory(String category, YearMonth yearMonth) {
+        return optimisticRead(() -> {
+            int code = store.categoryDictionary().codeOf(category);
+            return code < 0 ? 0 : store.cube().count(yearMonth, code, true);
+        });
     }
 
     /**
@@ -265,11 +1259,7 @@ public class TransactionManager {
      */
     public double getCurrentMonthExpenses() {
         YearMonth currentMonth = YearMonth.now();
-        return transactions.stream()
-                .filter(Transaction::isExpense)
-                .filter(t -> YearMonth.from(t.getDate()).equals(currentMonth))
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        return optimisticRead(() -> store.cube().sumCents(currentMonth, -1, true)) / 100.0;
     }
 
     /**
@@ -278,13 +1268,79 @@ public class TransactionManager {
      */
     public double getCurrentMonthSavings() {
         YearMonth currentMonth = YearMonth.now();
-        double monthlyIncome = transactions.stream()
-                .filter(t -> !t.isExpense())
-                .filter(t -> YearMonth.from(t.getDate()).equals(currentMonth))
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-        
-        double monthlyExpense = getCurrentMonthExpenses();
-        return monthlyIncome - monthlyExpense;
+        return optimisticRead(() -> {
+            MonthCategoryCube cube = store.cube();
+            long monthlyIncome = cube.sumCents(currentMonth, -1, false);
+            long monthlyExpense = cube.sumCents(currentMonth, -1, true);
+            return monthlyIncome - monthlyExpense;
+        }) / 100.0;
+    }
+    
+    /**
+     * 乐观读：先不加锁读取，读取期间发生过写入（或因并发写入读到不一致的状态而出错）时，
+     * 改为在读锁下重读。只用于代价很小的读取
+     */
+    private <T> T optimisticRead(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // 与写入交错时可能看到中间状态，下面在读锁下重读
+            }
+        }
+        return readLocked(reader);
+    }
+    
+    /**
+     * 在读锁下读取，多个读取可以并行
+     */
+    private <T> T readLocked(Supplier<T> reader) {
+        awaitWriters();
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * 有写操作在等待写锁时挂起，直到它们都取得写锁（写操作优先）
+     */
+    private void awaitWriters() {
+        if (waitingWriters.get() == 0) {
+            return;
+        }
+        writerGate.lock();
+        try {
+            while (waitingWriters.get() > 0) {
+                noWaitingWriters.awaitUninterruptibly();
+            }
+        } finally {
+            writerGate.unlock();
+        }
+    }
+    
+    /**
+     * 获取写锁，等待期间阻止新的读取进入
+     */
+    private long writeLock() {
+        waitingWriters.incrementAndGet();
+        try {
+            return lock.writeLock();
+        } finally {
+            if (waitingWriters.decrementAndGet() == 0) {
+                writerGate.lock(); // 在锁内唤醒，检查计数后才挂起的读取不会错过
+                try {
+                    noWaitingWriters.signalAll();
+                } finally {
+                    writerGate.unlock();
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
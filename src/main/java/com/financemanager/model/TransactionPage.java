@@ -0,0 +1,33 @@
+package com.financemanager.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分页读取的一页交易
+ * 按（日期, ID）排序；还有后续时带有续页标记，把它交给 TransactionManager.getPage 取下一页
+ */
+public final class TransactionPage {
+    private final List<Transaction> transactions;
+    private final String nextToken;
+
+    TransactionPage(List<Transaction> transactions, String nextToken) {
+        this.transactions = Collections.unmodifiableList(transactions);
+        this.nextToken = nextToken;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * 下一页的续页标记，已是最后一页时为null
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasMore() {
+        return nextToken != null;
+    }
+}
@@ -0,0 +1,301 @@
+package com.financemanager.model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 交易查询条件
+ * 日期范围、类别集合、支付方式、金额范围、收支类型、描述包含的文字以及排序、偏移和条数，
+ * 交给 TransactionManager.query 执行：由查询计划选择代价最小的索引，其余条件在一次遍历中同时判断，
+ * 只物化最终返回的交易，不再先取出中间列表再逐个过滤
+ *
+ * 通过 builder() 构造，构造后不可变，可以重复执行、在线程间共享
+ */
+public final class TransactionQuery {
+    /**
+     * 结果顺序；日期相同（或金额相同）时按日期索引中的顺序。
+     * 分页读取（TransactionManager.getPage）只支持按日期排序，同一天内再按ID排序
+     */
+    public enum Order {
+        DATE_ASC, DATE_DESC, AMOUNT_ASC, AMOUNT_DESC
+    }
+
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final Set<String> categories;
+    private final Set<String> paymentMethods;
+    private final long minAmountCents;
+    private final long maxAmountCents;
+    private final Boolean expense;
+    private final String descriptionContains;
+    private final Order order;
+    private final int offset;
+    private final int limit;
+
+    private TransactionQuery(Builder builder) {
+        this.startDate = builder.startDate;
+        this.endDate = builder.endDate;
+        this.categories = Collections.unmodifiableSet(new LinkedHashSet<>(builder.categories));
+        this.paymentMethods = Collections.unmodifiableSet(new LinkedHashSet<>(builder.paymentMethods));
+        this.minAmountCents = builder.minAmountCents;
+        this.maxAmountCents = builder.maxAmountCents;
+        this.expense = builder.expense;
+        this.descriptionContains = builder.descriptionContains;
+        this.order = builder.order;
+        this.offset = builder.offset;
+        this.limit = builder.limit;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 起始日期（含），null 表示不限
+     */
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * 结束日期（含），null 表示不限
+     */
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * 类别（忽略大小写，满足其一即可），为空表示不限
+     */
+    public Set<String> getCategories() {
+        return categories;
+    }
+
+    /**
+     * 支付方式（忽略大小写，满足其一即可），为空表示不限
+     */
+    public Set<String> getPaymentMethods() {
+        return paymentMethods;
+    }
+
+    public long getMinAmountCents() {
+        return minAmountCents;
+    }
+
+    public long getMaxAmountCents() {
+        return maxAmountCents;
+    }
+
+    /**
+     * true 只查支出，false 只查收入，null 不限
+     */
+    public Boolean getExpense() {
+        return expense;
+    }
+
+    /**
+     * 描述中包含的文字（区分大小写），null 表示不限
+     */
+    public String getDescriptionContains() {
+        return descriptionContains;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * 最多返回的条数，-1 表示不限
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    boolean hasAmountRange() {
+        return minAmountCents != Long.MIN_VALUE || maxAmountCents != Long.MAX_VALUE;
+    }
+
+    /**
+     * 筛选条件和排序方向（不含偏移和条数），用于核对续页标记是否属于同一查询
+     */
+    String conditions() {
+        StringBuilder sb = new StringBuilder();
+        if (startDate != null || endDate != null) {
+            sb.append("date=").append(startDate).append("~").append(endDate).append(", ");
+        }
+        if (!categories.isEmpty()) {
+            sb.append("categories=").append(categories).append(", ");
+        }
+        if (!paymentMethods.isEmpty()) {
+            sb.append("paymentMethods=").append(paymentMethods).append(", ");
+        }
+        if (hasAmountRange()) {
+            sb.append("amountCents=").append(minAmountCents).append("~").append(maxAmountCents).append(", ");
+        }
+        if (expense != null) {
+            sb.append("isExpense=").append(expense).append(", ");
+        }
+        if (descriptionContains != null) {
+            sb.append("description~'").append(descriptionContains).append("', ");
+        }
+        return sb.append("order=").append(order).toString();
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionQuery{" + conditions() + ", offset=" + offset + ", limit=" + limit + '}';
+    }
+
+    /**
+     * 查询条件的构造器，各条件之间为“且”的关系；同一条件设置多次时以最后一次为准
+     */
+    public static final class Builder {
+        private LocalDate startDate;
+        private LocalDate endDate;
+        private final Set<String> categories = new LinkedHashSet<>();
+        private final Set<String> paymentMethods = new LinkedHashSet<>();
+        private long minAmountCents = Long.MIN_VALUE;
+        private long maxAmountCents = Long.MAX_VALUE;
+        private Boolean expense;
+        private String descriptionContains;
+        private Order order = Order.DATE_ASC;
+        private int offset;
+        private int limit = -1;
+
+        private Builder() {
+        }
+
+        /**
+         * 日期范围（含首尾两天），任一端为 null 表示该端不限
+         */
+        public Builder between(LocalDate startDate, LocalDate endDate) {
+            this.startDate = startDate;
+            this.endDate = endDate;
+            return this;
+        }
+
+        public Builder since(LocalDate startDate) {
+            this.startDate = startDate;
+            return this;
+        }
+
+        public Builder until(LocalDate endDate) {
+            this.endDate = endDate;
+            return this;
+        }
+
+        public Builder category(String... categories) {
+            return categories(Arrays.asList(categories));
+        }
+
+        /**
+         * 类别集合，满足其一即可
+         */
+        public Builder categories(Collection<String> categories) {
+            this.categories.clear();
+            for (String category : categories) {
+                if (category == null || category.trim().isEmpty()) {
+                    throw new IllegalArgumentException("类别不能为空");
+                }
+                this.categories.add(category);
+            }
+            return this;
+        }
+
+        /**
+         * 支付方式，满足其一即可
+         */
+        public Builder paymentMethod(String... paymentMethods) {
+            this.paymentMethods.clear();
+            for (String paymentMethod : paymentMethods) {
+                if (paymentMethod == null || paymentMethod.trim().isEmpty()) {
+                    throw new IllegalArgumentException("支付方式不能为空");
+                }
+                this.paymentMethods.add(paymentMethod);
+            }
+            return this;
+        }
+
+        /**
+         * 金额范围（元，含两端），四舍五入到分
+         */
+        public Builder amountBetween(double min, double max) {
+            return amountCentsBetween(Transaction.toCents(min), Transaction.toCents(max));
+        }
+
+        /**
+         * 金额范围（分，含两端）
+         */
+        public Builder amountCentsBetween(long minCents, long maxCents) {
+            this.minAmountCents = minCents;
+            this.maxAmountCents = maxCents;
+            return this;
+        }
+
+        public Builder expenseOnly() {
+            this.expense = true;
+            return this;
+        }
+
+        public Builder incomeOnly() {
+            this.expense = false;
+            return this;
+        }
+
+        /**
+         * 描述中包含的文字（区分大小写），null 或空串表示不限
+         */
+        public Builder descriptionContains(String text) {
+            this.descriptionContains = text == null || text.isEmpty() ? null : text;
+            return this;
+        }
+
+        public Builder orderBy(Order order) {
+            if (order == null) {
+                throw new IllegalArgumentException("排序方式不能为空");
+            }
+            this.order = order;
+            return this;
+        }
+
+        /**
+         * 跳过前 offset 条结果
+         */
+        public Builder offset(int offset) {
+            if (offset < 0) {
+                throw new IllegalArgumentException("偏移不能为负: " + offset);
+            }
+            this.offset = offset;
+            return this;
+        }
+
+        /**
+         * 最多返回 limit 条结果
+         */
+        public Builder limit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("条数不能为负: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public TransactionQuery build() {
+            if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+                throw new IllegalArgumentException("起始日期晚于结束日期: " + startDate + " > " + endDate);
+            }
+            if (minAmountCents > maxAmountCents) {
+                throw new IllegalArgumentException("金额下限大于上限: " + minAmountCents + " > " + maxAmountCents);
+            }
+            return new TransactionQuery(this);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.financemanager.model;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 交易记录的只读快照
+ * 反映取得快照那一刻的全部交易，之后的增删改不会影响它；创建快照是 O(1) 的，
+ * 与存储共享未修改的数据，不复制任何行。元素在访问时才物化，每次访问得到新的副本
+ *
+ * 快照不可修改，可以在任意线程中读取
+ */
+public final class TransactionSnapshot extends AbstractList<Transaction> {
+    private final TransactionStore rows;
+    private final long version;
+    private volatile int[] liveRows; // 存在已删除行时，序号 -> 行号，首次随机访问时建立
+
+    TransactionSnapshot(TransactionStore rows, long version) {
+        this.rows = rows;
+        this.version = version;
+    }
+
+    /**
+     * 快照对应的数据版本，每次增删改后版本加一
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    TransactionStore rows() {
+        return rows;
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public Transaction get(int index) {
+        if (index < 0 || index >= rows.size()) {
+            throw new IndexOutOfBoundsException("序号越界: " + index + ", 记录数: " + rows.size());
+        }
+        if (rows.size() == rows.rowCount()) {
+            return rows.get(index); // 没有已删除行，序号就是行号
+        }
+        int[] mapping = liveRows;
+        if (mapping == null) {
+            mapping = new int[rows.size()];
+            int n = 0;
+            for (int row = 0; row < rows.rowCount(); row++) {
+                if (!rows.isDeleted(row)) {
+                    mapping[n++] = row;
+                }
+            }
+            liveRows = mapping;
+        }
+        return rows.get(mapping[index]);
+    }
+
+    /**
+     * 顺序遍历直接跳过已删除行，不需要建立序号映射
+     */
+    @Override
+    public Iterator<Transaction> iterator() {
+        return new Iterator<Transaction>() {
+            private int row = nextLive(0);
+
+            @Override
+            public boolean hasNext() {
+                return row < rows.rowCount();
+            }
+
+            @Override
+            public Transaction next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Transaction t = rows.get(row);
+                row = nextLive(row + 1);
+                return t;
+            }
+        };
+    }
+
+    private int nextLive(int from) {
+        int row = from;
+        while (row < rows.rowCount() && rows.isDeleted(row)) {
+            row++;
+        }
+        return row;
+    }
+}
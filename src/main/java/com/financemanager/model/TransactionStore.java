@@ -0,0 +1,671 @@
+package com.financemanager.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * 列式交易存储
+ * 每个字段单独存放在基本类型数组中：金额为以分为单位的 long[]，日期为 epoch day 的 int[]，
+ * 类别和支付方式为字典编码的 short[]，收支类型为位图，重复的描述共享同一字符串实例；
+ * 只有调用方需要时才物化为 Transaction 对象
+ *
+ * 各列按固定行数切分成行块。snapshot() 只记下当前的行块数组并提升代数，是 O(1) 的；
+ * 之后写入某个行块前，若它属于更早的代数则先复制一份（写时复制），
+ * 因此快照与存储共享所有未修改的行块，快照看到的内容也不会再变化
+ *
+ * ID以二进制形式保存（紧凑ID一个 long，旧版UUID两个 long，见 TransactionIds），读取时才还原为字符串。
+ * 行号从0开始连续分配。按ID的查找通过哈希索引在常数时间内完成，按日期范围的查询
+ * 通过按日期排序的索引只访问范围内的行；
+ * 删除只把行标记为已删除（金额清零、收支位清除，聚合循环无需额外判断），
+ * 不移动数组，已删除行超过一定比例后再由 vacuum 一次性整理。
+ * 月份 × 类别的合计由聚合立方体、任意日期范围的合计由按日期的树状数组随每次变更增量维护
+ */
+final class TransactionStore {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT; // 每个行块4096行
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+    private static final int MIN_VACUUM_ROWS = 1024; // 已删除行少于此数时不整理
+
+    private Chunk[] chunks;
+    private boolean chunksShared; // 行块数组本身被快照引用，替换其中的行块前先复制
+    private int generation; // 当前代数，每次 snapshot() 加一
+    private final boolean readOnly; // 快照视图不允许修改
+    private int size; // 已分配的行数（含已删除行）
+    private int deletedCount;
+    private final IdIndex compactIds = new IdIndex(); // 紧凑ID -> 行号
+    private final IdIndex uuidIds = new IdIndex(); // 旧版UUID -> 行号
+    private final Map<String, Integer> textIdIndex = new HashMap<>(); // 其他形式的ID -> 行号
+    private final DateIndex dateIndex = new DateIndex();
+    private final MonthCategoryCube cube = new MonthCategoryCube();
+    private final DayRangeSums rangeSums = new DayRangeSums();
+    private final StringDictionary categoryDict;
+    private final StringDictionary paymentDict;
+    private final StringInterner descriptionPool = new StringInterner();
+
+    TransactionStore() {
+        this.chunks = new Chunk[0];
+        this.readOnly = false;
+        this.categoryDict = new StringDictionary();
+        this.paymentDict = new StringDictionary();
+    }
+
+    /**
+     * 快照视图：共享行块，不建立索引和聚合，只用于读取
+     */
+    private TransactionStore(Chunk[] chunks, int size, int deletedCount,
+                             StringDictionary categoryDict, StringDictionary paymentDict) {
+        this.chunks = chunks;
+        this.readOnly = true;
+        this.size = size;
+        this.deletedCount = deletedCount;
+        this.categoryDict = categoryDict;
+        this.paymentDict = paymentDict;
+    }
+
+    /**
+     * 返回当前内容的只读快照，O(1)：不拷贝任何行，之后对本存储的修改不影响快照
+     * 快照不含ID索引、日期索引和聚合，只支持按行号读取
+     */
+    TransactionStore snapshot() {
+        if (readOnly) {
+            return this;
+        }
+        generation++;
+        chunksShared = true;
+        // 字典只有类别、支付方式的个数那么大，复制它们避免与后续追加的编码共享数组
+        return new TransactionStore(chunks, size, deletedCount, categoryDict.copy(), paymentDict.copy());
+    }
+
+    /**
+     * 返回不含已删除行的只读副本（按原顺序逐行拷贝，O(n)），没有已删除行时返回快照
+     */
+    TransactionStore compacted() {
+        if (deletedCount == 0) {
+            return snapshot();
+        }
+        Chunk[] live = copyLiveRows(generation);
+        return new TransactionStore(live, size - deletedCount, 0, categoryDict.copy(), paymentDict.copy());
+    }
+
+    /**
+     * 按给定顺序取出若干有效行，组成只读副本（逐行拷贝）
+     */
+    TransactionStore select(int[] rows, int count) {
+        Chunk[] result = newChunks(count, generation);
+        for (int i = 0; i < count; i++) {
+            checkRow(rows[i]);
+            copyRow(rows[i], result[i >>> CHUNK_SHIFT], i & CHUNK_MASK);
+        }
+        return new TransactionStore(result, count, 0, categoryDict.copy(), paymentDict.copy());
+    }
+
+    /**
+     * 有效行数（不含已删除行）
+     */
+    int size() {
+        return size - deletedCount;
+    }
+
+    /**
+     * 已分配的行数（含已删除行），按行号遍历时的上界
+     */
+    int rowCount() {
+        return size;
+    }
+
+    /**
+     * 最大的紧凑ID（含已删除的行），没有紧凑ID时返回-1
+     */
+    long maxCompactId() {
+        long max = -1;
+        for (int row = 0; row < size; row++) {
+            Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+            int i = row & CHUNK_MASK;
+            if (chunk.idKinds[i] == TransactionIds.COMPACT) {
+                max = Math.max(max, chunk.idLows[i]);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 第 row 行是否已被删除
+     */
+    boolean isDeleted(int row) {
+        return chunks[row >>> CHUNK_SHIFT].deleted(row & CHUNK_MASK);
+    }
+
+    void clear() {
+        checkWritable();
+        chunks = new Chunk[0];
+        chunksShared = false;
+        clearIdIndex();
+        dateIndex.clear();
+        cube.clear();
+        rangeSums.clear();
+        descriptionPool.clear();
+        size = 0;
+        deletedCount = 0;
+    }
+
+    private void ensureCapacity(int required) {
+        int needed = (required + CHUNK_MASK) >>> CHUNK_SHIFT;
+        if (needed <= chunks.length) {
+            return;
+        }
+        int capacity = Math.max(needed, chunks.length + (chunks.length >> 1));
+        Chunk[] grown = Arrays.copyOf(chunks, capacity);
+        for (int i = chunks.length; i < capacity; i++) {
+            grown[i] = new Chunk(generation);
+        }
+        chunks = grown;
+        chunksShared = false;
+    }
+
+    /**
+     * 取得第 row 行所在的可写行块：行块属于快照的代数时先复制
+     */
+    private Chunk writable(int row) {
+        int index = row >>> CHUNK_SHIFT;
+        Chunk chunk = chunks[index];
+        if (chunk.generation != generation) {
+            if (chunksShared) {
+                chunks = chunks.clone();
+                chunksShared = false;
+            }
+            chunk = new Chunk(chunk, generation);
+            chunks[index] = chunk;
+        }
+        return chunk;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("快照是只读的");
+        }
+    }
+
+    /**
+     * 追加一行，返回行号
+     * @throws IllegalArgumentException 交易缺少ID或日期，存储不变
+     */
+    int add(Transaction t) {
+        checkWritable();
+        TransactionBatch.validate(t);
+        ensureCapacity(size + 1);
+        int row = size;
+        write(row, t);
+        size++; // 写入成功后才计入，失败时不留下没有索引的行
+        indexId(row);
+        dateIndex.add(epochDay(row), row);
+        addAggregates(row);
+        return row;
+    }
+
+    /**
+     * 用新值覆盖第 row 行（ID不变）
+     * @throws IllegalArgumentException 交易缺少ID或日期，存储不变
+     */
+    void set(int row, Transaction t) {
+        checkWritable();
+        checkRow(row);
+        TransactionBatch.validate(t);
+        int oldDay = epochDay(row);
+        removeAggregates(row);
+        write(row, t);
+        addAggregates(row);
+        if (epochDay(row) != oldDay) {
+            dateIndex.remove(oldDay, row);
+            dateIndex.add(epochDay(row), row);
+        }
+    }
+
+    private void addAggregates(int row) {
+        cube.add(epochDay(row), categoryCode(row), isExpense(row), amountCents(row));
+        rangeSums.add(epochDay(row), categoryCode(row), isExpense(row), amountCents(row));
+    }
+
+    private void removeAggregates(int row) {
+        cube.remove(epochDay(row), categoryCode(row), isExpense(row), amountCents(row));
+        rangeSums.remove(epochDay(row), categoryCode(row), isExpense(row), amountCents(row));
+    }
+
+    private void write(int row, Transaction t) {
+        Chunk chunk = writable(row);
+        int i = row & CHUNK_MASK;
+        chunk.setId(i, t.getId());
+        chunk.amounts[i] = t.getAmountCents();
+        chunk.days[i] = (int) t.getDate().toEpochDay();
+        chunk.categories[i] = categoryDict.encode(t.getCategory());
+        chunk.payments[i] = paymentDict.encode(t.getPaymentMethod());
+        chunk.descriptions[i] = descriptionPool.intern(t.getDescription());
+        chunk.setExpense(i, t.isExpense());
+    }
+
+    /**
+     * 删除第 row 行：只做标记，不移动其他行
+     */
+    void remove(int row) {
+        checkWritable();
+        checkRow(row);
+        unindexId(row);
+        dateIndex.remove(epochDay(row), row);
+        removeAggregates(row);
+        Chunk chunk = writable(row);
+        int i = row & CHUNK_MASK;
+        chunk.setDeleted(i);
+        deletedCount++;
+        chunk.amounts[i] = 0; // 聚合循环不必判断删除标记
+        chunk.days[i] = Integer.MIN_VALUE; // 不落入任何日期范围
+        chunk.setExpense(i, false);
+        chunk.descriptions[i] = null;
+    }
+
+    /**
+     * 已删除行是否多到值得整理
+     */
+    boolean needsVacuum() {
+        return deletedCount >= MIN_VACUUM_ROWS && deletedCount * 4 >= size;
+    }
+
+    /**
+     * 物理移除所有已删除行并重建ID索引和日期索引，之后行号会改变
+     * 整理结果写入新的行块，快照引用的旧行块保持不变
+     */
+    void vacuum() {
+        checkWritable();
+        if (deletedCount == 0) {
+            return;
+        }
+        chunks = copyLiveRows(generation);
+        chunksShared = false;
+        size -= deletedCount;
+        deletedCount = 0;
+        clearIdIndex();
+        dateIndex.clear();
+        descriptionPool.clear(); // 只收录仍在使用的描述，移除的行不再占用池
+        for (int row = 0; row < size; row++) {
+            indexId(row);
+            dateIndex.add(epochDay(row), row);
+            descriptionPool.intern(description(row));
+        }
+    }
+
+    /**
+     * 按原顺序把有效行拷贝到新的行块中
+     */
+    private Chunk[] copyLiveRows(int chunkGeneration) {
+        Chunk[] result = newChunks(size - deletedCount, chunkGeneration);
+        int write = 0;
+        for (int read = 0; read < size; read++) {
+            if (isDeleted(read)) {
+                continue;
+            }
+            copyRow(read, result[write >>> CHUNK_SHIFT], write & CHUNK_MASK);
+            write++;
+        }
+        return result;
+    }
+
+    private static Chunk[] newChunks(int rows, int chunkGeneration) {
+        Chunk[] result = new Chunk[(rows + CHUNK_MASK) >>> CHUNK_SHIFT];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new Chunk(chunkGeneration);
+        }
+        return result;
+    }
+
+    private void copyRow(int row, Chunk to, int w) {
+        Chunk from = chunks[row >>> CHUNK_SHIFT];
+        int r = row & CHUNK_MASK;
+        to.idKinds[w] = from.idKinds[r];
+        to.idHighs[w] = from.idHighs[r];
+        to.idLows[w] = from.idLows[r];
+        if (from.idKinds[r] == TransactionIds.TEXT) {
+            to.setTextId(w, from.textId(r));
+        }
+        to.amounts[w] = from.amounts[r];
+        to.days[w] = from.days[r];
+        to.categories[w] = from.categories[r];
+        to.payments[w] = from.payments[r];
+        to.descriptions[w] = from.descriptions[r];
+        to.setExpense(w, from.expense(r));
+    }
+
+    /**
+     * 按ID查找行号（哈希索引，常数时间），不存在时返回-1
+     */
+    int indexOf(String id) {
+        long compact = TransactionIds.parseCompact(id);
+        if (compact >= 0) {
+            return compactIds.get(0, compact);
+        }
+        if (TransactionIds.isUuid(id)) {
+            return uuidIds.get(TransactionIds.uuidHigh(id), TransactionIds.uuidLow(id));
+        }
+        Integer row = textIdIndex.get(id);
+        return row != null ? row : -1;
+    }
+
+    private void indexId(int row) {
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int i = row & CHUNK_MASK;
+        switch (chunk.idKinds[i]) {
+            case TransactionIds.COMPACT:
+                compactIds.put(0, chunk.idLows[i], row);
+                break;
+            case TransactionIds.UUID_KIND:
+                uuidIds.put(chunk.idHighs[i], chunk.idLows[i], row);
+                break;
+            default:
+                textIdIndex.put(chunk.textId(i), row);
+        }
+    }
+
+    private void unindexId(int row) {
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int i = row & CHUNK_MASK;
+        switch (chunk.idKinds[i]) {
+            case TransactionIds.COMPACT:
+                compactIds.remove(0, chunk.idLows[i], row);
+                break;
+            case TransactionIds.UUID_KIND:
+                uuidIds.remove(chunk.idHighs[i], chunk.idLows[i], row);
+                break;
+            default:
+                textIdIndex.remove(chunk.textId(i), row);
+        }
+    }
+
+    private void clearIdIndex() {
+        compactIds.clear();
+        uuidIds.clear();
+        textIdIndex.clear();
+    }
+
+    /**
+     * 按日期升序访问 [fromDay, toDay] 内的所有有效行
+     */
+    void forEachInRange(int fromDay, int toDay, IntConsumer action) {
+        dateIndex.forEach(fromDay, toDay, action);
+    }
+
+    /**
+     * 按日期升序（descending 时降序）访问 [fromDay, toDay] 内的有效行，action 返回 false 时停止
+     * @return 是否访问完了范围内的全部行
+     */
+    boolean visitInRange(int fromDay, int toDay, boolean descending, IntPredicate action) {
+        return dateIndex.visit(fromDay, toDay, descending, action);
+    }
+
+    /**
+     * [fromDay, toDay] 内的有效行数
+     */
+    int countInRange(int fromDay, int toDay) {
+        return dateIndex.count(fromDay, toDay);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size || isDeleted(row)) {
+            throw new IndexOutOfBoundsException("行号无效: " + row + ", 行数: " + size);
+        }
+    }
+
+    // ---------------------------------------------------------------- 按列读取
+
+    String id(int row) {
+        return chunks[row >>> CHUNK_SHIFT].id(row & CHUNK_MASK);
+    }
+
+    long amountCents(int row) {
+        return chunks[row >>> CHUNK_SHIFT].amounts[row & CHUNK_MASK];
+    }
+
+    int epochDay(int row) {
+        return chunks[row >>> CHUNK_SHIFT].days[row & CHUNK_MASK];
+    }
+
+    short categoryCode(int row) {
+        return chunks[row >>> CHUNK_SHIFT].categories[row & CHUNK_MASK];
+    }
+
+    short paymentCode(int row) {
+        return chunks[row >>> CHUNK_SHIFT].payments[row & CHUNK_MASK];
+    }
+
+    String description(int row) {
+        return chunks[row >>> CHUNK_SHIFT].descriptions[row & CHUNK_MASK];
+    }
+
+    boolean isExpense(int row) {
+        return chunks[row >>> CHUNK_SHIFT].expense(row & CHUNK_MASK);
+    }
+
+    String category(int row) {
+        return categoryDict.decode(categoryCode(row));
+    }
+
+    String paymentMethod(int row) {
+        return paymentDict.decode(paymentCode(row));
+    }
+
+    StringDictionary categoryDictionary() {
+        return categoryDict;
+    }
+
+    StringDictionary paymentDictionary() {
+        return paymentDict;
+    }
+
+    /**
+     * 月份 × 类别的聚合立方体（只读使用）
+     */
+    MonthCategoryCube cube() {
+        return cube;
+    }
+
+    /**
+     * 按日期的前缀和（只读使用）
+     */
+    DayRangeSums rangeSums() {
+        return rangeSums;
+    }
+
+    /**
+     * 把尚未加载明细的月份的合计计入（笔数为负时扣除）聚合立方体
+     */
+    void addMonthTotals(YearMonth month, String category, boolean isExpense, long cents, int count) {
+        checkWritable();
+        cube.addTotals(month, categoryDict.encode(category), isExpense, cents, count);
+    }
+
+    /**
+     * 物化第 row 行为交易记录
+     */
+    Transaction get(int row) {
+        checkRow(row);
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int i = row & CHUNK_MASK;
+        return Transaction.restore(
+                chunk.id(i),
+                chunk.amounts[i],
+                LocalDate.ofEpochDay(chunk.days[i]),
+                categoryDict.decode(chunk.categories[i]),
+                chunk.descriptions[i],
+                chunk.expense(i),
+                paymentDict.decode(chunk.payments[i]),
+                chunk.categories[i]);
+    }
+
+    // ---------------------------------------------------------------- 批量加载
+
+    /**
+     * 从映射的列式文件批量追加全部行：定长列按行块整体拷贝，字典编码经映射表转换
+     * ID已存在的行（日志中较新的版本已先加载）追加为已删除行
+     */
+    void appendFrom(ColumnarTransactionFile file) {
+        checkWritable();
+        int n = file.rowCount();
+        ensureCapacity(size + n);
+        int base = size;
+        for (int done = 0; done < n; ) {
+            int row = base + done;
+            int count = Math.min(n - done, CHUNK_ROWS - (row & CHUNK_MASK));
+            Chunk chunk = writable(row);
+            file.copyAmounts(chunk.amounts, row & CHUNK_MASK, done, count);
+            file.copyDays(chunk.days, row & CHUNK_MASK, done, count);
+            done += count;
+        }
+
+        short[] categoryMap = remap(file.categoryDictionary(), categoryDict);
+        short[] paymentMap = remap(file.paymentDictionary(), paymentDict);
+        for (int i = 0; i < n; i++) {
+            int row = base + i;
+            Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+            int r = row & CHUNK_MASK;
+            chunk.categories[r] = categoryMap[file.categoryCode(i)];
+            chunk.payments[r] = paymentMap[file.paymentCode(i)];
+            String id = file.id(i);
+            chunk.setId(r, id);
+            if (indexOf(id) >= 0) {
+                chunk.setDeleted(r);
+                deletedCount++;
+                chunk.amounts[r] = 0;
+                chunk.days[r] = Integer.MIN_VALUE;
+                chunk.setExpense(r, false);
+                continue;
+            }
+            chunk.descriptions[r] = descriptionPool.intern(file.description(i));
+            chunk.setExpense(r, file.isExpense(i));
+            indexId(row);
+            dateIndex.add(chunk.days[r], row);
+            addAggregates(row);
+        }
+        size = base + n;
+    }
+
+    private static short[] remap(String[] fileDictionary, StringDictionary target) {
+        short[] map = new short[fileDictionary.length];
+        for (int code = 0; code < fileDictionary.length; code++) {
+            map[code] = target.encode(fileDictionary[code]);
+        }
+        return map;
+    }
+
+    /**
+     * 行块：连续 CHUNK_ROWS 行的各列数据，收支类型和删除标记各占一个位图
+     */
+    private static final class Chunk {
+        final byte[] idKinds;
+        final long[] idHighs;
+        final long[] idLows;
+        String[] textIds; // 无法转换为二进制的ID，需要时才分配
+        final long[] amounts;
+        final int[] days;
+        final short[] categories;
+        final short[] payments;
+        final String[] descriptions;
+        final long[] expenseBits;
+        final long[] deletedBits;
+        final int generation;
+
+        Chunk(int generation) {
+            this.idKinds = new byte[CHUNK_ROWS];
+            this.idHighs = new long[CHUNK_ROWS];
+            this.idLows = new long[CHUNK_ROWS];
+            this.amounts = new long[CHUNK_ROWS];
+            this.days = new int[CHUNK_ROWS];
+            this.categories = new short[CHUNK_ROWS];
+            this.payments = new short[CHUNK_ROWS];
+            this.descriptions = new String[CHUNK_ROWS];
+            this.expenseBits = new long[CHUNK_ROWS / 64];
+            this.deletedBits = new long[CHUNK_ROWS / 64];
+            this.generation = generation;
+        }
+
+        /**
+         * 写时复制
+         */
+        Chunk(Chunk other, int generation) {
+            this.idKinds = other.idKinds.clone();
+            this.idHighs = other.idHighs.clone();
+            this.idLows = other.idLows.clone();
+            this.textIds = other.textIds == null ? null : other.textIds.clone();
+            this.amounts = other.amounts.clone();
+            this.days = other.days.clone();
+            this.categories = other.categories.clone();
+            this.payments = other.payments.clone();
+            this.descriptions = other.descriptions.clone();
+            this.expenseBits = other.expenseBits.clone();
+            this.deletedBits = other.deletedBits.clone();
+            this.generation = generation;
+        }
+
+        String id(int i) {
+            switch (idKinds[i]) {
+                case TransactionIds.COMPACT:
+                    return TransactionIds.formatCompact(idLows[i]);
+                case TransactionIds.UUID_KIND:
+                    return TransactionIds.formatUuid(idHighs[i], idLows[i]);
+                default:
+                    return textId(i);
+            }
+        }
+
+        void setId(int i, String id) {
+            long compact = TransactionIds.parseCompact(id);
+            if (compact >= 0) {
+                idKinds[i] = TransactionIds.COMPACT;
+                idLows[i] = compact;
+                setTextId(i, null);
+            } else if (TransactionIds.isUuid(id)) {
+                idKinds[i] = TransactionIds.UUID_KIND;
+                idHighs[i] = TransactionIds.uuidHigh(id);
+                idLows[i] = TransactionIds.uuidLow(id);
+                setTextId(i, null);
+            } else {
+                idKinds[i] = TransactionIds.TEXT;
+                setTextId(i, id);
+            }
+        }
+
+        String textId(int i) {
+            return textIds == null ? null : textIds[i];
+        }
+
+        void setTextId(int i, String id) {
+            if (textIds == null) {
+                if (id == null) {
+                    return;
+                }
+                textIds = new String[CHUNK_ROWS];
+            }
+            textIds[i] = id;
+        }
+
+        boolean expense(int i) {
+            return (expenseBits[i >>> 6] & (1L << i)) != 0;
+        }
+
+        void setExpense(int i, boolean value) {
+            if (value) {
+                expenseBits[i >>> 6] |= 1L << i;
+            } else {
+                expenseBits[i >>> 6] &= ~(1L << i);
+            }
+        }
+
+        boolean deleted(int i) {
+            return (deletedBits[i >>> 6] & (1L << i)) != 0;
+        }
+
+        void setDeleted(int i) {
+            deletedBits[i >>> 6] |= 1L << i;
+        }
+    }
+}
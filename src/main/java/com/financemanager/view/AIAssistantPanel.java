@@ -13,6 +13,7 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
@@ -33,6 +34,7 @@ import javax.swing.border.EmptyBorder;
 import com.financemanager.ai.ExpenseAnalyzer;
 import com.financemanager.model.Transaction;
 import com.financemanager.model.TransactionManager;
+import com.financemanager.model.TransactionQuery;
 
 /**
  * AI助手面板类
@@ -49,6 +51,8 @@ public class AIAssistantPanel extends JPanel {
     // API相关配置
     private static final String CONFIG_FILE = "config.properties";
     private static final String API_ENDPOINT = "https://api.siliconflow.cn/v1/chat/completions";
+    // 附在提示中的明细只取最近几个月，更早的交易由统计信息概括
+    private static final int PROMPT_MONTHS = 3;
     private String apiKey;
     private final HttpClient httpClient;
     
@@ -461,10 +465,7 @@ public class AIAssistantPanel extends JPanel {
      */
     private void processAnalysisRequest(String message) {
         try {
-            // 获取所有交易记录
-            List<Transaction> transactions = transactionManager.getAllTransactions();
-            
-            if (transactions.isEmpty()) {
+            if (transactionManager.getTransactionCount() == 0) {
                 displayMessage("AI助手", "目前还没有任何交易记录。请先添加一些交易记录，我才能为您提供分析和建议。");
                 return;
             }
@@ -476,6 +477,11 @@ public class AIAssistantPanel extends JPanel {
             sendButton.setEnabled(false);
             inputField.setEnabled(false);
             
+            // 最近几个月的交易记录
+            List<Transaction> transactions = transactionManager.query(TransactionQuery.builder()
+                    .since(LocalDate.now().minusMonths(PROMPT_MONTHS))
+                    .build());
+            
             // 将交易记录转换为CSV格式，使用StringBuilder提高性能
             StringBuilder csvData = new StringBuilder(1024);
             csvData.append("ID,金额,日期,类别,描述,类型,支付方式\n");
@@ -492,12 +498,12 @@ public class AIAssistantPanel extends JPanel {
             }
             
             // 使用分析器提供的统计数据增强提示
-            String statistics = analyzer.getBasicStatistics(transactions);
+            String statistics = analyzer.getBasicStatistics(transactionManager);
             
             // 构建更详细的分析提示
             final String analysisPrompt = String.format(
                 "你是一个专业的财务分析助手。请基于以下交易数据和统计信息，以专业且友好的口吻回答用户问题：\n\n" +
-                "交易数据：\n%s\n\n" +
+                "最近" + PROMPT_MONTHS + "个月的交易数据：\n%s\n\n" +
                 "统计信息：\n%s\n\n" +
                 "用户问题：%s\n\n" +
                 "请提供具体的分析和建议，包括支出趋势、预算建议和财务优化方案。",
@@ -13,23 +13,29 @@ import java.time.LocalDate;
 import java.time.Month;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
+import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableModel;
@@ -37,8 +43,14 @@ import javax.swing.table.DefaultTableModel;
 import com.financemanager.ai.ExpenseAnalyzer;
 import com.financemanager.ai.TransactionClassifier;
 import com.financemanager.model.BudgetManager;
+import com.financemanager.model.ImportListener;
+import com.financemanager.model.ImportProgress;
+import com.financemanager.model.ImportResult;
+import com.financemanager.model.StageMetrics;
 import com.financemanager.model.Transaction;
 import com.financemanager.model.TransactionManager;
+import com.financemanager.model.TransactionPage;
+import com.financemanager.model.TransactionQuery;
 
 /**
  * 主窗口类
@@ -59,6 +71,7 @@ public class MainFrame extends JFrame {
     }
     private JTable transactionTable;
     private DefaultTableModel transactionTableModel;
+    private String nextPageToken; // 表格下一页的续页标记，已加载完时为null
     private JComboBox<String> categoryComboBox;
     private JComboBox<String> paymentMethodComboBox;
     private JTextField amountField;
@@ -90,6 +103,10 @@ public class MainFrame extends JFrame {
     };
     
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final int TABLE_PAGE_SIZE = 200; // 表格每次加载的条数，滚动到底部时加载下一页
+    private static final TransactionQuery TABLE_QUERY = TransactionQuery.builder()
+            .orderBy(TransactionQuery.Order.DATE_DESC)
+            .build(); // 最新的交易在前
     
     /**
      * 构造函数
@@ -182,6 +199,13 @@ public class MainFrame extends JFrame {
         // 创建表格
         transactionTable = new JTable(transactionTableModel);
         JScrollPane scrollPane = new JScrollPane(transactionTable);
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            // 接近底部时加载下一页
+            JScrollBar bar = (JScrollBar) e.getAdjustable();
+            if (nextPageToken != null && bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - bar.getVisibleAmount() / 2) {
+                loadNextPage();
+            }
+        });
         panel.add(scrollPane, BorderLayout.CENTER);
         
         // 创建输入面板
@@ -543,16 +567,35 @@ public class MainFrame extends JFrame {
     
     /**
      * 加载交易记录到表格
+     * 按日期从新到旧分页加载，先加载第一页，滚动到底部时再加载后续页
      */
     private void loadTransactions() {
         // 清空表格
         transactionTableModel.setRowCount(0);
-        
-        // 获取所有交易记录
-        List<Transaction> transactions = transactionManager.getAllTransactions();
+        nextPageToken = null;
+        loadPage(null);
+    }
+    
+    /**
+     * 加载下一页到表格末尾
+     */
+    private void loadNextPage() {
+        String token = nextPageToken;
+        nextPageToken = null; // 加载期间不重复触发
+        loadPage(token);
+    }
+    
+    private void loadPage(String token) {
+        TransactionPage page;
+        try {
+            page = transactionManager.getPage(TABLE_QUERY, token, TABLE_PAGE_SIZE);
+        } catch (IllegalArgumentException e) {
+            System.err.println("加载交易记录出错: " + e.getMessage());
+            return;
+        }
         
         // 添加到表格
-        for (Transaction t : transactions) {
+        for (Transaction t : page.getTransactions()) {
             Object[] rowData = {
                     t.getId(),
                     String.format("%.2f", t.getAmount()),
@@ -564,6 +607,7 @@ public class MainFrame extends JFrame {
             };
             transactionTableModel.addRow(rowData);
         }
+        nextPageToken = page.getNextToken();
     }
     
     /**
@@ -640,12 +684,16 @@ public class MainFrame extends JFrame {
      * 删除交易记录
      */
     private void deleteTransaction() {
-        int selectedRow = transactionTable.getSelectedRow();
-        if (selectedRow >= 0) {
-            String id = (String) transactionTableModel.getValueAt(selectedRow, 0);
-            int confirm = JOptionPane.showConfirmDialog(this, "确定要删除选中的交易记录吗？", "确认删除", JOptionPane.YES_NO_OPTION);
+        int[] selectedRows = transactionTable.getSelectedRows();
+        if (selectedRows.length > 0) {
+            List<String> ids = new ArrayList<>(selectedRows.length);
+            for (int selectedRow : selectedRows) {
+                ids.add((String) transactionTableModel.getValueAt(selectedRow, 0));
+            }
+            String prompt = ids.size() == 1 ? "确定要删除选中的交易记录吗？" : "确定要删除选中的" + ids.size() + "条交易记录吗？";
+            int confirm = JOptionPane.showConfirmDialog(this, prompt, "确认删除", JOptionPane.YES_NO_OPTION);
             if (confirm == JOptionPane.YES_OPTION) {
-                transactionManager.removeTransaction(id);
+                transactionManager.removeAll(ids); // 多选删除一次完成，只写一次日志
                 loadTransactions();
             }
         } else {
@@ -660,15 +708,8 @@ public class MainFrame extends JFrame {
         int selectedRow = transactionTable.getSelectedRow();
         if (selectedRow >= 0) {
             String id = (String) transactionTableModel.getValueAt(selectedRow, 0);
-            // 获取选中的交易记录
-            List<Transaction> transactions = transactionManager.getAllTransactions();
-            Transaction selectedTransaction = null;
-            for (Transaction t : transactions) {
-                if (t.getId().equals(id)) {
-                    selectedTransaction = t;
-                    break;
-                }
-            }
+            // 按ID直接获取选中的交易记录
+            Transaction selectedTransaction = transactionManager.findById(id);
             
             if (selectedTransaction != null) {
                 // 显示编辑对话框（简化版，实际应用中可以创建一个更复杂的编辑对话框）
@@ -676,10 +717,9 @@ public class MainFrame extends JFrame {
                     String amountStr = JOptionPane.showInputDialog(this, "金额:", selectedTransaction.getAmount());
                     if (amountStr != null) {
                         double amount = Double.parseDouble(amountStr);
-                        selectedTransaction.setAmount(amount);
                         
-                        // 更新交易记录
-                        transactionManager.updateTransaction(selectedTransaction);
+                        // 更新交易记录：基于最新的值修改金额后整体替换，不改动已显示的对象
+                        transactionManager.updateTransaction(id, current -> current.withAmount(amount));
                         loadTransactions();
                     }
                 } catch (NumberFormatException e) {
@@ -701,9 +741,81 @@ public class MainFrame extends JFrame {
         
         if (result == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
-            int importedCount = transactionManager.importFromCSV(selectedFile.getAbsolutePath());
-            JOptionPane.showMessageDialog(this, "成功导入" + importedCount + "条交易记录", "导入成功", JOptionPane.INFORMATION_MESSAGE);
-            loadTransactions();
+            
+            // 进度对话框，导入在后台线程进行，界面保持响应
+            JDialog progressDialog = new JDialog(this, "正在导入", false);
+            JProgressBar progressBar = new JProgressBar(0, 100);
+            progressBar.setStringPainted(true);
+            JLabel progressLabel = new JLabel("正在读取 " + selectedFile.getName());
+            JButton cancelButton = new JButton("取消");
+            JPanel progressPanel = new JPanel(new BorderLayout(5, 5));
+            progressPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+            progressPanel.add(progressLabel, BorderLayout.NORTH);
+            progressPanel.add(progressBar, BorderLayout.CENTER);
+            progressPanel.add(cancelButton, BorderLayout.SOUTH);
+            progressDialog.add(progressPanel);
+            progressDialog.setSize(360, 140);
+            progressDialog.setLocationRelativeTo(this);
+            AtomicBoolean cancelRequested = new AtomicBoolean(false);
+            
+            SwingWorker<ImportResult, ImportProgress> worker = new SwingWorker<ImportResult, ImportProgress>() {
+                @Override
+                protected ImportResult doInBackground() {
+                    return transactionManager.importFromCSV(selectedFile.getAbsolutePath(), new ImportListener() {
+                        @Override
+                        public void onProgress(ImportProgress progress) {
+                            publish(progress);
+                        }
+                        
+                        @Override
+                        public boolean isCancelled() {
+                            return cancelRequested.get();
+                        }
+                    }, classifier::classifyTransaction);
+                }
+                
+                @Override
+                protected void process(List<ImportProgress> chunks) {
+                    ImportProgress latest = chunks.get(chunks.size() - 1);
+                    progressBar.setValue(latest.getPercent());
+                    progressLabel.setText(latest.toString());
+                }
+                
+                @Override
+                protected void done() {
+                    progressDialog.dispose();
+                    try {
+                        ImportResult importResult = get();
+                        StringBuilder message = new StringBuilder(importResult.toString());
+                        for (String error : importResult.getSampleErrors()) {
+                            message.append("\n").append(error);
+                        }
+                        if (!importResult.getSampleDuplicates().isEmpty()) {
+                            message.append("\n跳过的重复交易:");
+                            for (String duplicate : importResult.getSampleDuplicates()) {
+                                message.append("\n").append(duplicate);
+                            }
+                        }
+                        StageMetrics bottleneck = importResult.getBottleneck();
+                        if (bottleneck != null) {
+                            message.append("\n瓶颈阶段: ").append(bottleneck);
+                        }
+                        int type = importResult.getRejectedCount() > 0 || importResult.getFailure() != null
+                                ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE;
+                        JOptionPane.showMessageDialog(MainFrame.this, message.toString(), "导入完成", type);
+                    } catch (Exception e) {
+                        JOptionPane.showMessageDialog(MainFrame.this, "导入失败: " + e.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+                    }
+                    loadTransactions();
+                }
+            };
+            cancelButton.addActionListener(e -> {
+                cancelRequested.set(true); // 当前批次提交后停止
+                cancelButton.setEnabled(false);
+                progressLabel.setText("正在取消...");
+            });
+            worker.execute();
+            progressDialog.setVisible(true);
         }
     }
     
@@ -754,10 +866,8 @@ public class MainFrame extends JFrame {
      * 生成分析报告
      */
     private void generateAnalysisReport() {
-        // 获取所有交易记录
-        List<Transaction> transactions = transactionManager.getAllTransactions();
-        
-        if (transactions.isEmpty()) {
+        // 报告各项都取自按月聚合或逐月读取，不一次取出全部交易
+        if (transactionManager.getTransactionCount() == 0) {
             JOptionPane.showMessageDialog(this, "没有交易记录可供分析", "提示", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
@@ -790,7 +900,7 @@ public class MainFrame extends JFrame {
         
         // 添加月度支出趋势分析
         reportPanel.add(new JLabel("<html><h2>月度支出趋势</h2></html>"));
-        Map<YearMonth, Double> monthlyTrend = analyzer.analyzeMonthlyTrend(transactions);
+        Map<YearMonth, Double> monthlyTrend = analyzer.analyzeMonthlyTrend(transactionManager);
         // 这里可以添加图表展示，简化版使用文本展示
         StringBuilder trendText = new StringBuilder("<html><ul>");
         for (Map.Entry<YearMonth, Double> entry : monthlyTrend.entrySet()) {
@@ -801,7 +911,7 @@ public class MainFrame extends JFrame {
         
         // 添加类别分布分析
         reportPanel.add(new JLabel("<html><h2>支出类别分布</h2></html>"));
-        Map<String, Double> categoryDistribution = analyzer.analyzeCategoryDistribution(transactions);
+        Map<String, Double> categoryDistribution = analyzer.analyzeCategoryDistribution(transactionManager);
         StringBuilder distributionText = new StringBuilder("<html><ul>");
         for (Map.Entry<String, Double> entry : categoryDistribution.entrySet()) {
             distributionText.append(String.format("<li>%s: %.2f%%</li>", entry.getKey(), entry.getValue()));
@@ -811,7 +921,7 @@ public class MainFrame extends JFrame {
         
         // 添加异常支出分析
         reportPanel.add(new JLabel("<html><h2>异常支出检测</h2></html>"));
-        List<Transaction> abnormalExpenses = analyzer.detectAbnormalExpenses(transactions);
+        List<Transaction> abnormalExpenses = analyzer.detectAbnormalExpenses(transactionManager);
         if (abnormalExpenses.isEmpty()) {
             reportPanel.add(new JLabel("未检测到异常支出"));
         } else {
@@ -826,7 +936,7 @@ public class MainFrame extends JFrame {
         
         // 添加季节性支出分析
         reportPanel.add(new JLabel("<html><h2>季节性支出模式</h2></html>"));
-        Map<Month, List<String>> seasonalPatterns = analyzer.detectSeasonalPatterns(transactions);
+        Map<Month, List<String>> seasonalPatterns = analyzer.detectSeasonalPatterns(transactionManager);
         if (seasonalPatterns.isEmpty()) {
             reportPanel.add(new JLabel("未检测到明显的季节性支出模式"));
         } else {
@@ -841,7 +951,7 @@ public class MainFrame extends JFrame {
         
         // 添加预算建议
         reportPanel.add(new JLabel("<html><h2>预算建议</h2></html>"));
-        Map<String, Double> budgetSuggestions = analyzer.generateBudgetSuggestions(transactions, budgetManager);
+        Map<String, Double> budgetSuggestions = analyzer.generateBudgetSuggestions(transactionManager, budgetManager);
         if (budgetSuggestions.isEmpty()) {
             reportPanel.add(new JLabel("当前预算设置合理，无需调整"));
         } else {
@@ -856,7 +966,7 @@ public class MainFrame extends JFrame {
         
         // 添加节省机会分析
         reportPanel.add(new JLabel("<html><h2>节省机会</h2></html>"));
-        List<Map<String, Object>> savingOpportunities = analyzer.analyzeSavingOpportunities(transactions);
+        List<Map<String, Object>> savingOpportunities = analyzer.analyzeSavingOpportunities(transactionManager);
         if (savingOpportunities.isEmpty()) {
             reportPanel.add(new JLabel("未发现明显的节省机会"));
         } else {
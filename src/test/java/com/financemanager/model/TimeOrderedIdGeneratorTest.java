@@ -0,0 +1,41 @@
+package com.financemanager.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 按时间排序的紧凑ID测试
+ */
+class TimeOrderedIdGeneratorTest {
+
+    /**
+     * 连续生成的ID严格递增，字符串顺序与数值顺序一致，解析后还原为同一个值
+     */
+    @Test
+    void idsIncreaseAndRoundTrip() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator();
+        String previous = generator.nextId();
+        for (int i = 0; i < 10_000; i++) {
+            String id = generator.nextId();
+            assertTrue(id.compareTo(previous) > 0, id + " <= " + previous);
+            assertTrue(TransactionIds.parseCompact(id) > TransactionIds.parseCompact(previous));
+            assertEquals(id, TransactionIds.formatCompact(TransactionIds.parseCompact(id)));
+            previous = id;
+        }
+    }
+
+    /**
+     * 传入比时钟更新的已有ID后，之后的ID都排在它后面（时钟回拨或账本来自时钟更快的机器）
+     */
+    @Test
+    void advancePastSkipsAheadOfStoredIds() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator();
+        long stored = generator.nextValue() + (3_600_000L << TimeOrderedIdGenerator.SEQUENCE_BITS); // 一小时之后
+        generator.advancePast(stored);
+        assertEquals(stored + 1, TransactionIds.parseCompact(generator.nextId()));
+        generator.advancePast(stored - 100); // 更小的值不会让生成器后退
+        assertEquals(stored + 2, generator.nextValue());
+    }
+}
@@ -0,0 +1,75 @@
+package com.financemanager.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 交易CSV编解码器测试
+ */
+class TransactionCsvCodecTest {
+
+    /**
+     * 快速路径和 BigDecimal 回退路径对同一个金额给出相同的分，半分按绝对值进位（负数向远离零的方向）
+     */
+    @Test
+    void halfCentsRoundAwayFromZeroOnBothPaths() {
+        assertEquals(-1, cents("-0.005"));
+        assertEquals(-1, cents("-5e-3"));
+        assertEquals(1, cents("0.005"));
+        assertEquals(1, cents("5E-3"));
+        assertEquals(-101, cents("-1.005"));
+        assertEquals(-101, cents("-1.005e0"));
+        assertEquals(101, cents("1.005")); // 按 double 计算会得到 100
+        assertEquals(101, cents("1.005e0"));
+        assertEquals(0, cents("-0.0049"));
+        assertEquals(0, cents("-4.9e-3"));
+        assertEquals(-1234, cents(" -12.335 "));
+        assertEquals(-1234, cents("-1.2335e1"));
+        assertEquals(1234567890123456701L, cents("12345678901234567.005")); // 超过16位整数走回退路径
+        assertThrows(NumberFormatException.class, () -> cents("1e30"));
+        assertThrows(NumberFormatException.class, () -> cents("abc"));
+    }
+
+    /**
+     * 引号字段里的 \r\n、\n 和单独的 \r 写出再读回保持原样；引号外的三种行尾都结束记录
+     */
+    @Test
+    void lineBreaksInsideQuotedFieldsRoundTrip() throws IOException {
+        Transaction t = Transaction.ofCents(-1234, LocalDate.of(2030, 1, 2), "餐饮",
+                "line1\r\nline2\nline3\r\"quoted\",comma", true, "现金");
+        TransactionCsvCodec codec = new TransactionCsvCodec();
+        StringBuilder text = new StringBuilder();
+        codec.appendRow(text, t);
+        text.append("\r\n");
+        codec.appendRow(text, t);
+        text.append("\n");
+        codec.appendRow(text, t);
+        text.append("\r");
+
+        BufferedReader reader = new BufferedReader(new StringReader(text.toString()), 16); // 小缓冲，记录跨越多次读取
+        for (int n = 0; n < 3; n++) {
+            CharSequence record = codec.readRecord(reader);
+            codec.nextRecord(record, 0, record.length());
+            Transaction back = codec.toTransaction();
+            assertEquals(t.getId(), back.getId());
+            assertEquals(t.getDescription(), back.getDescription());
+            assertEquals(-1234, back.getAmountCents());
+            assertEquals(t.getDate(), back.getDate());
+        }
+        assertNull(codec.readRecord(reader));
+    }
+
+    private static long cents(String field) {
+        TransactionCsvCodec codec = new TransactionCsvCodec();
+        codec.nextRecord(field, 0, field.length());
+        return codec.cents(0);
+    }
+}
@@ -0,0 +1,217 @@
+package com.financemanager.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 交易管理器的并发读写压力测试：乐观读取在写入交错时回退到读锁，有写操作等待时新的读取挂起让写操作先执行
+ * （测试在 target/test-work 下运行，管理器的 data/ 目录每次重建）
+ */
+class TransactionManagerConcurrencyTest {
+    private static final int ROWS = 1000;
+    private static final long CENTS = 10_000;
+
+    private TransactionManager manager;
+    private List<Transaction> seeded;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteRecursively(new File("data").toPath());
+        manager = new TransactionManager();
+        seeded = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < ROWS; i++) {
+            seeded.add(Transaction.ofCents(CENTS, today, i % 2 == 0 ? "餐饮" : "交通", "seed " + i, true, "现金"));
+        }
+        manager.addAll(seeded);
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.close();
+    }
+
+    /**
+     * 写线程在一个批量操作里把金额从一笔交易挪到另一笔，合计和笔数始终不变；
+     * 读线程用乐观读取（合计、笔数）和读锁读取（日期范围合计）不断核对，任何时刻都不能看到批量操作的中间状态
+     */
+    @Test
+    void readsNeverObservePartialBatches() throws Exception {
+        long expectedCents = ROWS * CENTS;
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger reads = new AtomicInteger();
+        AtomicReference<String> mismatch = new AtomicReference<>();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            int writer = w;
+            tasks.add(pool.submit(() -> {
+                int half = ROWS / 2; // 每个写线程只改自己那一半，读-改-写之间不会丢失更新
+                for (int i = 0; !stop.get(); i++) {
+                    String from = seeded.get(writer * half + i % half).getId();
+                    String to = seeded.get(writer * half + (i + 7) % half).getId();
+                    moveCents(from, to, 1 + (i / half) % 100);
+                }
+            }));
+        }
+        LocalDate today = LocalDate.now();
+        for (int r = 0; r < 6; r++) {
+            int reader = r;
+            tasks.add(pool.submit(() -> {
+                while (!stop.get()) {
+                    long total = Math.round(manager.getTotalExpense() * 100);
+                    int count = manager.getTransactionCount();
+                    long ranged = reader % 2 == 0 ? Math.round(manager.sumExpenses(today, today) * 100) : expectedCents;
+                    if (total != expectedCents || count != ROWS || ranged != expectedCents) {
+                        mismatch.compareAndSet(null, "total=" + total + " count=" + count + " ranged=" + ranged);
+                    }
+                    reads.incrementAndGet();
+                }
+            }));
+        }
+        Thread.sleep(2000);
+        stop.set(true);
+        for (Future<?> task : tasks) {
+            task.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(null, mismatch.get());
+        assertTrue(reads.get() > 0);
+        assertEquals(expectedCents, Math.round(manager.getTotalExpense() * 100));
+    }
+
+    /**
+     * 一个写操作持有写锁、另一个写操作在等待时，新来的读取应挂起（不是忙等），
+     * 并且在等待中的写操作完成之后才读取，能看到它写入的交易
+     */
+    @Test
+    void waitingWriterGoesBeforeNewReaders() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String heldId = seeded.get(0).getId();
+        Thread holder = new Thread(() -> manager.updateTransaction(heldId, t -> {
+            holding.countDown();
+            awaitQuietly(release);
+            return t.withDescription("held");
+        }), "holder");
+        holder.start();
+        Transaction late = Transaction.ofCents(1, LocalDate.now(), "购物", "written while readers wait", true, "现金");
+        Thread writer = new Thread(() -> manager.addTransaction(late), "waiting-writer");
+        AtomicReference<List<Transaction>> seen = new AtomicReference<>();
+        AtomicReference<Double> total = new AtomicReference<>();
+        Thread reader = new Thread(() -> seen.set(manager.getTransactionsByCategory("购物")), "reader");
+        Thread optimistic = new Thread(() -> total.set(manager.getTotalExpense()), "optimistic-reader");
+        try {
+            assertTrue(holding.await(10, TimeUnit.SECONDS));
+            writer.start();
+            awaitState(writer, Thread.State.WAITING);
+            reader.start();
+            optimistic.start();
+            awaitState(reader, Thread.State.WAITING);
+            awaitState(optimistic, Thread.State.WAITING);
+        } finally {
+            release.countDown(); // 断言失败时也放开写锁，否则 tearDown 关闭管理器时会一直等待
+        }
+        for (Thread t : new Thread[] {holder, writer, reader, optimistic}) {
+            t.join(10_000);
+            assertTrue(!t.isAlive(), t.getName() + " 未结束");
+        }
+        assertEquals(1, seen.get().size());
+        assertEquals(late.getId(), seen.get().get(0).getId());
+        assertEquals(ROWS * CENTS + 1, Math.round(total.get() * 100));
+        assertEquals("held", manager.findById(heldId).getDescription());
+    }
+
+    /**
+     * 持续不断的读取不能让写操作一直等待
+     */
+    @Test
+    void writersAreNotStarvedByContinuousReaders() throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < 8; r++) {
+            readers.add(pool.submit(() -> {
+                while (!stop.get()) {
+                    manager.query(TransactionQuery.builder().category("餐饮").limit(50).build());
+                    manager.getTotalExpense();
+                }
+            }));
+        }
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+                LocalDate today = LocalDate.now();
+                for (int i = 0; i < 2000; i++) {
+                    manager.addTransaction(Transaction.ofCents(CENTS, today, "娱乐", "write " + i, true, "现金"));
+                }
+            });
+        } finally {
+            stop.set(true);
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+        }
+        assertEquals(ROWS + 2000, manager.getTransactionCount());
+    }
+
+    private void moveCents(String fromId, String toId, long cents) {
+        Transaction from = manager.findById(fromId);
+        Transaction to = manager.findById(toId);
+        manager.batch(batch -> batch
+                .update(from.withAmountCents(from.getAmountCents() - cents))
+                .update(to.withAmountCents(to.getAmountCents() + cents)));
+    }
+
+    private static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (thread.getState() != state) {
+            assertTrue(System.nanoTime() < deadline, thread.getName() + " 应为 " + state + "，实际为 " + thread.getState());
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.financemanager.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 交易管理器的单线程行为测试
+ * （测试在 target/test-work 下运行，管理器的 data/ 目录每次重建）
+ */
+class TransactionManagerTest {
+    private TransactionManager manager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteRecursively(new File("data").toPath());
+        manager = new TransactionManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.close();
+    }
+
+    /**
+     * 关闭之后的修改抛出异常，内存和日志都保持关闭时的状态
+     */
+    @Test
+    void mutationsAfterCloseAreRejected() {
+        Transaction kept = Transaction.ofCents(500, LocalDate.of(2030, 1, 2), "餐饮", "kept", true, "现金");
+        manager.addTransaction(kept);
+        manager.close();
+
+        Transaction late = Transaction.ofCents(700, LocalDate.of(2030, 1, 3), "交通", "late", true, "现金");
+        assertThrows(IllegalStateException.class, () -> manager.addTransaction(late));
+        assertThrows(IllegalStateException.class, () -> manager.removeTransaction(kept.getId()));
+        assertThrows(IllegalStateException.class, () -> manager.updateTransaction(kept.withDescription("changed")));
+        assertThrows(IllegalStateException.class, () -> manager.batch(batch -> batch.add(late)));
+        assertEquals(1, manager.getTransactionCount());
+        assertEquals("kept", manager.findById(kept.getId()).getDescription());
+
+        manager = new TransactionManager(); // 重新从日志加载
+        assertEquals(1, manager.getTransactionCount());
+        assertEquals("kept", manager.findById(kept.getId()).getDescription());
+    }
+
+    /**
+     * 缺少日期的交易在写入日志之前被拒绝，内存和重新加载后的账本都不包含它
+     */
+    @Test
+    void transactionWithoutDateIsRejectedBeforeJournaling() {
+        Transaction kept = Transaction.ofCents(500, LocalDate.of(2030, 1, 2), "餐饮", "kept", true, "现金");
+        manager.addTransaction(kept);
+        Transaction noDate = new Transaction("no-date", 3.0, null, "餐饮", "bad", true, "现金");
+        assertThrows(IllegalArgumentException.class, () -> manager.addTransaction(noDate));
+        assertThrows(IllegalArgumentException.class,
+                () -> manager.updateTransaction(kept.getId(), t -> Transaction.restore(t.getId(), 1, null, "餐饮", "bad", true, "现金")));
+        assertEquals(1, manager.getTransactionCount());
+        assertEquals(1, manager.snapshot().size());
+        assertEquals(500, manager.findById(kept.getId()).getAmountCents());
+
+        manager.close();
+        manager = new TransactionManager();
+        assertEquals(1, manager.getTransactionCount());
+        assertEquals(500, manager.findById(kept.getId()).getAmountCents());
+    }
+
+    /**
+     * 预算内 getAllTransactions 返回完整的只读快照，之后的修改不影响它；
+     * 超出堆预算时抛出 IllegalStateException，forEachMonth 仍能读到全部交易
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    void getAllTransactionsReturnsSnapshotWithinBudgetAndThrowsBeyondIt() {
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < 20; i++) {
+            manager.addTransaction(Transaction.ofCents(100 + i, today, "餐饮", "row " + i, true, "现金"));
+        }
+        List<Transaction> all = manager.getAllTransactions();
+        assertEquals(20, all.size());
+        manager.addTransaction(Transaction.ofCents(1, today, "交通", "after", true, "现金"));
+        assertEquals(20, all.size());
+        assertThrows(UnsupportedOperationException.class, () -> all.remove(0));
+        manager.close();
+
+        long tenRows = 10L * 160 * 8 / 7 + 8; // 热数据预算约10行（八分之一留给冷数据块缓存）
+        manager = new TransactionManager(tenRows);
+        assertEquals(21, manager.getTransactionCount());
+        assertThrows(IllegalStateException.class, () -> manager.getAllTransactions());
+        int[] seen = {0};
+        manager.forEachMonth(rows -> seen[0] += rows.size());
+        assertEquals(21, seen[0]);
+    }
+
+    /**
+     * 重新打开账本时ID生成器从已有的最大紧凑ID之后继续，即使它比当前时钟生成的ID更新
+     */
+    @Test
+    void reopenedLedgerSeedsIdsPastStoredIds() {
+        long now = TransactionIds.parseCompact(Transaction.ofCents(1, LocalDate.of(2030, 1, 1), "餐饮", "", true, "现金").getId());
+        long ahead = now + (86_400_000L << TimeOrderedIdGenerator.SEQUENCE_BITS); // 一天之后的时间戳
+        String storedId = TransactionIds.formatCompact(ahead);
+        manager.addTransaction(Transaction.restore(storedId, 100, LocalDate.of(2030, 1, 1), "餐饮", "ahead", true, "现金"));
+        manager.close();
+
+        manager = new TransactionManager();
+        String next = Transaction.ofCents(1, LocalDate.of(2030, 1, 1), "餐饮", "", true, "现金").getId();
+        assertTrue(next.compareTo(storedId) > 0, next + " <= " + storedId);
+    }
+
+    /**
+     * 按月分区的账本：启动时早期月份（含压缩的冷数据段）不加载，合计、按ID查找、按日期范围查询、
+     * forEachMonth 都能看到它们；修改未加载月份的交易后重新打开仍然保留
+     */
+    @Test
+    void partitionedLedgerServesUnloadedMonths() {
+        LocalDate today = LocalDate.now();
+        List<Transaction> added = new ArrayList<>();
+        for (LocalDate day : List.of(today.minusMonths(18), today.minusMonths(6), today)) {
+            for (int i = 0; i < 5; i++) {
+                added.add(Transaction.ofCents(100 * (i + 1), day.withDayOfMonth(1 + i), "餐饮", "m " + day + " " + i, true, "现金"));
+            }
+        }
+        manager.addAll(added);
+        manager.close();
+        manager = new TransactionManager(); // 首次启动时把日志迁移为按月分区
+        manager.close();
+
+        manager = new TransactionManager();
+        assertTrue(manager.getLastLoadResult().getDeferredMonths() >= 2, "早期月份应延迟加载");
+        assertEquals(15, manager.getTransactionCount());
+        assertEquals(3 * 1500, Math.round(manager.getTotalExpense() * 100));
+        Transaction cold = added.get(2);
+        assertEquals(cold.getDescription(), manager.findById(cold.getId()).getDescription());
+        LocalDate warmMonth = today.minusMonths(6);
+        assertEquals(5, manager.getTransactionsByDateRange(warmMonth.withDayOfMonth(1), warmMonth.withDayOfMonth(28)).size());
+
+        List<String> seen = new ArrayList<>();
+        List<LocalDate> firstDays = new ArrayList<>();
+        manager.forEachMonth(rows -> {
+            firstDays.add(rows.get(0).getDate());
+            rows.forEach(t -> seen.add(t.getId()));
+        });
+        assertEquals(3, firstDays.size());
+        assertTrue(firstDays.get(0).isBefore(firstDays.get(1)) && firstDays.get(1).isBefore(firstDays.get(2)));
+        assertEquals(added.stream().map(Transaction::getId).sorted().collect(Collectors.toList()),
+                seen.stream().sorted().collect(Collectors.toList()));
+
+        manager.close();
+        manager = new TransactionManager();
+        assertTrue(manager.updateTransaction(cold.getId(), t -> t.withDescription("edited")) != null);
+        manager.close();
+        manager = new TransactionManager();
+        assertEquals("edited", manager.findById(cold.getId()).getDescription());
+        assertEquals(15, manager.getTransactionCount());
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.financemanager.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 按（日期, ID）的续页标记分页测试：同一天的交易跨页、降序跨月、翻页之间的删除、标记与查询条件不符
+ * （测试在 target/test-work 下运行，管理器的 data/ 目录每次重建）
+ */
+class TransactionPagingTest {
+    private static final Comparator<Transaction> DATE_ID =
+            Comparator.comparing(Transaction::getDate).thenComparing(Transaction::getId);
+    private static final int MAX_PAGES = 1000; // 续页位置不前进时避免测试一直翻页
+
+    private TransactionManager manager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TransactionManagerTest.deleteRecursively(new File("data").toPath());
+        manager = new TransactionManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.close();
+    }
+
+    /**
+     * 同一天的交易多于一页时按ID继续，不重复、不遗漏
+     */
+    @Test
+    void sameDayTiesContinueAcrossPages() {
+        LocalDate day = LocalDate.of(2030, 6, 15);
+        List<Transaction> added = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            added.add(Transaction.ofCents(100 + i, day, "餐饮", "tie " + i, true, "现金"));
+        }
+        added.add(Transaction.ofCents(1, day.minusDays(1), "餐饮", "before", true, "现金"));
+        added.add(Transaction.ofCents(1, day.plusDays(1), "餐饮", "after", true, "现金"));
+        manager.addAll(added);
+
+        List<List<Transaction>> pages = readAll(TransactionQuery.builder().build(), 10);
+        assertEquals(List.of(10, 10, 7), pages.stream().map(List::size).collect(Collectors.toList()));
+        assertEquals(ids(sorted(added, DATE_ID)), ids(flatten(pages)));
+    }
+
+    /**
+     * 降序分页在月份边界处切页时从上个月的月末继续
+     */
+    @Test
+    void descendingPagesCrossMonthBoundary() {
+        List<Transaction> added = new ArrayList<>();
+        for (LocalDate day : List.of(LocalDate.of(2030, 3, 2), LocalDate.of(2030, 2, 28), LocalDate.of(2030, 2, 28),
+                LocalDate.of(2030, 2, 1), LocalDate.of(2030, 1, 31))) {
+            added.add(Transaction.ofCents(500, day, "交通", "d " + day, true, "现金"));
+            added.add(Transaction.ofCents(700, day, "交通", "d2 " + day, true, "现金"));
+        }
+        manager.addAll(added);
+        TransactionQuery query = TransactionQuery.builder().orderBy(TransactionQuery.Order.DATE_DESC).build();
+
+        TransactionPage first = manager.getPage(query, null, 2); // 正好是三月的两笔
+        assertEquals(LocalDate.of(2030, 3, 2), first.getTransactions().get(1).getDate());
+        List<List<Transaction>> pages = readAll(query, 3);
+        assertEquals(ids(sorted(added, DATE_ID.reversed())), ids(flatten(pages)));
+        for (int size = 1; size <= added.size(); size++) {
+            assertEquals(ids(sorted(added, DATE_ID.reversed())), ids(flatten(readAll(query, size))), "每页" + size + "条");
+        }
+    }
+
+    /**
+     * 翻页之间删除已返回的（包括作为续页位置的那笔）和尚未返回的交易、新增位置之后的交易：
+     * 下一页从续页位置之后继续，不重复，只少了被删除的，新增的照常出现
+     */
+    @Test
+    void deletesBetweenPagesNeitherRepeatNorSkip() {
+        LocalDate day = LocalDate.of(2030, 8, 10);
+        List<Transaction> added = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            added.add(Transaction.ofCents(100, day.plusDays(i % 4), "购物", "row " + i, true, "现金"));
+        }
+        manager.addAll(added);
+        List<Transaction> expected = sorted(added, DATE_ID);
+
+        TransactionPage first = manager.getPage(null, 5);
+        assertEquals(ids(expected.subList(0, 5)), ids(first.getTransactions()));
+        Transaction anchor = expected.get(4);
+        Transaction unseen = expected.get(7);
+        assertTrue(manager.removeTransaction(anchor.getId()));
+        assertTrue(manager.removeTransaction(unseen.getId()));
+        Transaction late = Transaction.ofCents(100, day.plusDays(30), "购物", "late", true, "现金");
+        manager.addTransaction(late);
+
+        List<Transaction> rest = new ArrayList<>();
+        String token = first.getNextToken();
+        while (token != null) {
+            TransactionPage page = manager.getPage(token, 5);
+            rest.addAll(page.getTransactions());
+            assertTrue(rest.size() <= added.size(), "翻页没有结束");
+            token = page.getNextToken();
+        }
+        List<Transaction> remaining = new ArrayList<>(expected.subList(5, expected.size()));
+        remaining.remove(unseen);
+        remaining.add(late);
+        assertEquals(ids(remaining), ids(rest));
+    }
+
+    /**
+     * 续页标记只能用于生成它的查询条件（含排序方向），格式不对的标记同样拒绝
+     */
+    @Test
+    void tokenFromAnotherQueryIsRejected() {
+        LocalDate day = LocalDate.of(2030, 9, 1);
+        List<Transaction> added = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            added.add(Transaction.ofCents(100, day, i % 2 == 0 ? "餐饮" : "交通", "r " + i, true, "现金"));
+        }
+        manager.addAll(added);
+        TransactionQuery food = TransactionQuery.builder().category("餐饮").build();
+        TransactionPage first = manager.getPage(food, null, 2);
+        assertTrue(first.hasMore());
+        String token = first.getNextToken();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> manager.getPage(TransactionQuery.builder().category("交通").build(), token, 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> manager.getPage(TransactionQuery.builder().category("餐饮").orderBy(TransactionQuery.Order.DATE_DESC).build(), token, 2));
+        assertThrows(IllegalArgumentException.class, () -> manager.getPage(food, "not a token", 2));
+
+        TransactionPage second = manager.getPage(TransactionQuery.builder().category("餐饮").build(), token, 2);
+        assertEquals(1, second.getTransactions().size());
+        assertFalse(second.hasMore());
+        assertNull(second.getNextToken());
+    }
+
+    private List<List<Transaction>> readAll(TransactionQuery query, int pageSize) {
+        List<List<Transaction>> pages = new ArrayList<>();
+        String token = null;
+        do {
+            TransactionPage page = manager.getPage(query, token, pageSize);
+            assertTrue(page.getTransactions().size() <= pageSize);
+            pages.add(page.getTransactions());
+            assertTrue(pages.size() <= MAX_PAGES, "翻页没有结束");
+            token = page.getNextToken();
+        } while (token != null);
+        return pages;
+    }
+
+    private static List<Transaction> flatten(List<List<Transaction>> pages) {
+        return pages.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    private static List<Transaction> sorted(List<Transaction> rows, Comparator<Transaction> order) {
+        List<Transaction> copy = new ArrayList<>(rows);
+        copy.sort(order);
+        return copy;
+    }
+
+    private static List<String> ids(List<Transaction> rows) {
+        return rows.stream().map(Transaction::getId).collect(Collectors.toList());
+    }
+}
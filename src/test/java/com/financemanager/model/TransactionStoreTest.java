@@ -0,0 +1,52 @@
+package com.financemanager.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 列式交易存储测试
+ */
+class TransactionStoreTest {
+    private static final LocalDate DAY = LocalDate.of(2030, 3, 4);
+
+    /**
+     * 缺少日期的交易在改动存储之前被拒绝，不留下没有索引和聚合的行
+     */
+    @Test
+    void addWithoutDateLeavesStoreUnchanged() {
+        TransactionStore store = new TransactionStore();
+        store.add(Transaction.ofCents(100, DAY, "餐饮", "a", true, "现金"));
+
+        Transaction noDate = new Transaction("bad-id", 2.0, null, "餐饮", "b", true, "现金");
+        assertThrows(IllegalArgumentException.class, () -> store.add(noDate));
+        assertEquals(1, store.size());
+        assertEquals(-1, store.indexOf("bad-id"));
+
+        Transaction next = Transaction.ofCents(300, DAY, "交通", "c", true, "现金");
+        int row = store.add(next);
+        assertEquals(1, row);
+        assertEquals(2, store.size());
+        assertEquals(2, store.countInRange((int) DAY.toEpochDay(), (int) DAY.toEpochDay()));
+        assertEquals(next.getId(), store.get(store.indexOf(next.getId())).getId());
+    }
+
+    /**
+     * 用缺少日期的值覆盖时存储不变，原值和聚合都保留
+     */
+    @Test
+    void setWithoutDateLeavesRowUnchanged() {
+        TransactionStore store = new TransactionStore();
+        Transaction original = Transaction.ofCents(100, DAY, "餐饮", "a", true, "现金");
+        store.add(original);
+
+        Transaction noDate = Transaction.restore(original.getId(), 999, null, "餐饮", "a", true, "现金");
+        assertThrows(IllegalArgumentException.class, () -> store.set(0, noDate));
+        assertEquals(100, store.get(0).getAmountCents());
+        assertEquals(DAY, store.get(0).getDate());
+        assertEquals(1, store.countInRange((int) DAY.toEpochDay(), (int) DAY.toEpochDay()));
+    }
+}
@@ -0,0 +1,32 @@
+package com.financemanager.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 交易记录的校验测试
+ */
+class TransactionTest {
+    private static final LocalDate DAY = LocalDate.of(2030, 5, 6);
+
+    /**
+     * 以分和以元新建交易的校验规则相同
+     */
+    @Test
+    void newTransactionsAreValidated() {
+        assertThrows(IllegalArgumentException.class, () -> Transaction.ofCents(1, null, "餐饮", "", true, "现金"));
+        assertThrows(IllegalArgumentException.class, () -> Transaction.ofCents(1, DAY, " ", "", true, "现金"));
+        assertThrows(IllegalArgumentException.class, () -> Transaction.ofCents(1, DAY, "餐饮", "", true, null));
+        assertThrows(IllegalArgumentException.class, () -> new Transaction(0.01, null, "餐饮", "", true, "现金"));
+        assertThrows(IllegalArgumentException.class, () -> new Transaction(0.01, DAY, null, "", true, "现金"));
+        assertThrows(IllegalArgumentException.class, () -> new Transaction(0.01, DAY, "餐饮", "", true, ""));
+
+        assertEquals("", Transaction.ofCents(1, DAY, "餐饮", null, true, "现金").getDescription());
+        assertEquals("", new Transaction(0.01, DAY, "餐饮", null, true, "现金").getDescription());
+        assertEquals(1, new Transaction(0.01, DAY, "餐饮", null, true, "现金").getAmountCents());
+    }
+}